@@ -0,0 +1,285 @@
+package net.soko;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class writes synthetic Genbank Flat Files for benchmarks, from a few KB to many GB.
+ * <p> The output only depends on the settings and the seed, so the same settings always give the same file.
+ * The number of references per entry, authors per reference, distinct authors, FEATURES lines and ORIGIN bases can be set,
+ * to measure how the parser and the queries scale with each of them. Files whose name ends with ".gz" are gzip compressed.
+ * <p> Authors are drawn from a pool of {@link #setAuthorPool(int)} names, {@link #author(int)} returns the name of an author
+ * of the pool so benchmarks can query authors that are present. Titles are made of {@link #WORDS}.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankGenerator generator = new GenbankGenerator(42);
+ *         generator.setTargetSize(GenbankGenerator.parseSize("64MB"));
+ *         generator.write(new File("synthetic.gbff.gz"));
+ *         }
+ *         </pre>
+ * <p> From the command line: {@code ./gradlew generateGenbank -PgeneratorArgs="build/genbank/1GB.gbff 1GB 42"}
+ *
+ * @see ParserBenchmark
+ * @see QueryBenchmark
+ */
+public class GenbankGenerator {
+    private static final String[] SURNAMES = {"Smith", "Jones", "Reilly", "Thayer", "Doe", "Nguyen", "Garcia", "Muller",
+            "Kim", "Chen", "Ivanov", "Rossi", "Tanaka", "Okafor", "Silva", "Novak"};
+    /**
+     * Words that titles and definitions are made of.
+     */
+    public static final String[] WORDS = {"kinase", "genome", "sequence", "analysis", "protein", "bacterial", "complete",
+            "structure", "human", "mouse", "regulation", "expression", "novel", "gene", "cloning", "receptor", "binding",
+            "domain", "evolution", "plasmid"};
+    private static final char[] BASES = {'a', 'c', 'g', 't'};
+    /**
+     * Column at which values start, and the width of values after which they continue on the next line.
+     */
+    private static final int VALUE_COLUMN = 12;
+    private static final int VALUE_WIDTH = 68;
+
+    private final long seed;
+    private int entries = 1000;
+    private long targetSize;
+    private int referencesPerEntry = 4;
+    private int authorsPerReference = 8;
+    private int authorPool = 5000;
+    private int featureLines = 4;
+    private int originLength = 600;
+
+    public GenbankGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of entries to write, ignored when a target size is set.
+     */
+    public void setEntries(int entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Sets the size in bytes of the uncompressed file, entries are written until it is reached.
+     */
+    public void setTargetSize(long targetSize) {
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Sets the maximum number of references of an entry, every entry has between 1 and this many.
+     */
+    public void setReferencesPerEntry(int referencesPerEntry) {
+        this.referencesPerEntry = referencesPerEntry;
+    }
+
+    /**
+     * Sets the maximum number of authors of a reference, every reference has between 1 and this many.
+     */
+    public void setAuthorsPerReference(int authorsPerReference) {
+        this.authorsPerReference = authorsPerReference;
+    }
+
+    /**
+     * Sets the number of distinct authors.
+     */
+    public void setAuthorPool(int authorPool) {
+        this.authorPool = authorPool;
+    }
+
+    /**
+     * Sets the number of lines of the FEATURES block of every entry, next to the source feature.
+     */
+    public void setFeatureLines(int featureLines) {
+        this.featureLines = featureLines;
+    }
+
+    /**
+     * Sets the maximum number of bases of the ORIGIN block of an entry, every entry has between 1 and this many.
+     */
+    public void setOriginLength(int originLength) {
+        this.originLength = originLength;
+    }
+
+    /**
+     * Returns the name of an author of the pool, such as "Reilly,C.", which is the same for every seed.
+     *
+     * @param id The index of the author in the pool.
+     * @return the name of the author.
+     */
+    public static String author(int id) {
+        int initials = id / SURNAMES.length;
+        String name = SURNAMES[id % SURNAMES.length] + "," + (char) ('A' + initials % 26) + ".";
+        if (initials >= 26) {
+            name += (char) ('A' + (initials / 26 - 1) % 26) + ".";
+        }
+        return name;
+    }
+
+    /**
+     * Parses a size such as "512KB", "64MB" or "2GB", a number without unit is a number of bytes.
+     *
+     * @param size The size.
+     * @return the size in bytes.
+     */
+    public static long parseSize(String size) {
+        String upper = size.trim().toUpperCase();
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1L << 10;
+        } else if (upper.endsWith("MB")) {
+            unit = 1L << 20;
+        } else if (upper.endsWith("GB")) {
+            unit = 1L << 30;
+        }
+        return Long.parseLong(unit == 1 ? upper : upper.substring(0, upper.length() - 2).trim()) * unit;
+    }
+
+    /**
+     * Writes the file, a file that already exists is overwritten.
+     *
+     * @param file The file to write, compressed if its name ends with ".gz".
+     * @return the number of entries written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int write(File file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, GenbankInput.BUFFER_SIZE);
+        }
+        int written = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), GenbankInput.BUFFER_SIZE)) {
+            StringBuilder record = new StringBuilder(8192);
+            long size = 0;
+            while (targetSize > 0 ? size < targetSize : written < entries) {
+                record.setLength(0);
+                writeEntry(record, written, random);
+                writer.append(record);
+                size += record.length();
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private void writeEntry(StringBuilder out, int id, SplittableRandom random) {
+        String locus = String.format("NC_%07d", id);
+        int length = 1 + random.nextInt(Math.max(originLength, 1));
+        out.append(String.format("%-12s%-16s%12d bp    DNA     linear   CON 01-JAN-2020\n", "LOCUS", locus, length));
+        writeValue(out, "DEFINITION", words(random, 3, 20) + ".");
+        writeValue(out, "ACCESSION", locus);
+        writeValue(out, "VERSION", locus + ".1");
+        int references = 1 + random.nextInt(Math.max(referencesPerEntry, 1));
+        for (int r = 1; r <= references; r++) {
+            writeValue(out, "REFERENCE", r + "  (bases 1 to " + length + ")");
+            int authors = 1 + random.nextInt(Math.max(authorsPerReference, 1));
+            StringBuilder names = new StringBuilder();
+            for (int a = 0; a < authors; a++) {
+                if (a > 0) {
+                    names.append(a == authors - 1 ? " and " : ", ");
+                }
+                names.append(author(random.nextInt(authorPool)));
+            }
+            writeValue(out, "  AUTHORS", names.toString());
+            String title = words(random, 2, 15);
+            writeValue(out, "  TITLE", Character.toUpperCase(title.charAt(0)) + title.substring(1));
+            int year = 1990 + random.nextInt(33);
+            if (random.nextBoolean()) {
+                writeValue(out, "  JOURNAL", "Nature " + (1 + random.nextInt(500)) + " (" + (1 + random.nextInt(20)) + "), "
+                        + (1 + random.nextInt(900)) + "-" + (901 + random.nextInt(99)) + " (" + year + ")");
+                writeValue(out, "   PUBMED", String.valueOf(1_000_000 + random.nextInt(9_000_000)));
+            } else {
+                writeValue(out, "  JOURNAL", "Submitted (" + (10 + random.nextInt(19)) + "-JAN-" + year + ") Some Institute, Street, City");
+            }
+        }
+        out.append("FEATURES             Location/Qualifiers\n");
+        out.append("     source          1..").append(length).append('\n');
+        out.append("                     /organism=\"synthetic\"\n");
+        for (int f = 0; f < featureLines; f++) {
+            if (f % 2 == 0) {
+                out.append("     gene            1..").append(length).append('\n');
+            } else {
+                out.append("                     /gene=\"g").append(id).append('_').append(f).append("\"\n");
+            }
+        }
+        out.append("ORIGIN      \n");
+        for (int p = 0; p < length; p += 60) {
+            out.append(String.format("%9d", p + 1));
+            for (int b = p; b < Math.min(p + 60, length); b++) {
+                if ((b - p) % 10 == 0) {
+                    out.append(' ');
+                }
+                out.append(BASES[random.nextInt(4)]);
+            }
+            out.append('\n');
+        }
+        out.append("//\n");
+    }
+
+    private static String words(SplittableRandom random, int min, int max) {
+        int count = min + random.nextInt(max - min + 1);
+        StringBuilder words = new StringBuilder();
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    /**
+     * Writes a keyword and its value, the value continues on indented lines once it is wider than a Genbank line.
+     */
+    private static void writeValue(StringBuilder out, String keyword, String value) {
+        int lineStart = out.length();
+        out.append(keyword);
+        while (out.length() - lineStart < VALUE_COLUMN) {
+            out.append(' ');
+        }
+        int width = 0;
+        for (String word : value.split(" ")) {
+            if (width > 0 && width + 1 + word.length() > VALUE_WIDTH) {
+                out.append('\n');
+                out.append(" ".repeat(VALUE_COLUMN));
+                width = 0;
+            } else if (width > 0) {
+                out.append(' ');
+                width++;
+            }
+            out.append(word);
+            width += word.length();
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Writes a synthetic file from the command line.
+     *
+     * @param args The file to write, its size such as "64MB" and optionally the seed, which defaults to 1.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: GenbankGenerator <file> <size> [seed]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        GenbankGenerator generator = new GenbankGenerator(args.length > 2 ? Long.parseLong(args[2]) : 1);
+        generator.setTargetSize(parseSize(args[1]));
+        System.out.println("Wrote " + generator.write(file) + " entries to " + file);
+    }
+}
@@ -0,0 +1,118 @@
+package net.soko;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link GenbankParser} on synthetic files written by {@link GenbankGenerator}.
+ * <p> Every combination of parameters writes its files once, before the measurements.
+ * Run with {@code ./gradlew jmh}, or {@code ./gradlew jmh -PjmhIncludes=ParserBenchmark} for these benchmarks only.
+ *
+ * @see GenbankGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark {
+    /**
+     * Size of the uncompressed file.
+     */
+    @Param({"1MB", "32MB"})
+    private String size;
+
+    /**
+     * Maximum number of ORIGIN bases of an entry, which the parser skips.
+     */
+    @Param({"600", "20000"})
+    private int originLength;
+
+    private File directory;
+    private File file;
+    private File compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("genbank-benchmark").toFile();
+        file = new File(directory, "synthetic.gbff");
+        compressed = new File(directory, "synthetic.gbff.gz");
+        for (File target : List.of(file, compressed)) {
+            GenbankGenerator generator = new GenbankGenerator(42);
+            generator.setTargetSize(GenbankGenerator.parseSize(size));
+            generator.setOriginLength(originLength);
+            generator.write(target);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        compressed.delete();
+        directory.delete();
+    }
+
+    /**
+     * Parses into a list of entries.
+     */
+    @Benchmark
+    public List<GenbankEntry> parseFile() {
+        return GenbankParser.parseGenbankFile(file);
+    }
+
+    /**
+     * Parses without keeping the entries, which measures the parser alone.
+     */
+    @Benchmark
+    public void parseFileStreaming(Blackhole blackhole) throws IOException {
+        parse(file, blackhole::consume);
+    }
+
+    /**
+     * Parses a gzip compressed file, which is decompressed while it is parsed.
+     */
+    @Benchmark
+    public void parseCompressedStreaming(Blackhole blackhole) throws IOException {
+        parse(compressed, blackhole::consume);
+    }
+
+    /**
+     * Decompresses a gzip compressed file to a temporary file.
+     */
+    @Benchmark
+    public long gUnzip() {
+        File unzipped = GenbankParser.gUnzip(compressed);
+        long length = unzipped.length();
+        unzipped.delete();
+        return length;
+    }
+
+    /**
+     * Parses into a compact store.
+     */
+    @Benchmark
+    public GenbankStore parseStore() throws IOException {
+        GenbankStore store = new GenbankStore();
+        parse(file, store);
+        return store;
+    }
+
+    private static void parse(File file, GenbankRecordListener listener) throws IOException {
+        try (InputStream in = GenbankInput.open(file)) {
+            GenbankParser.parseGenbankStream(file, 0, in, listener, null);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package net.soko;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the query modes of {@link GenbankExplorer} on a synthetic file written by {@link GenbankGenerator}.
+ * <p> Every mode is measured on the two paths of {@link GenbankExplorer#call()}: evaluated while the file is parsed,
+ * without the cache, and collected from an index that is built once before the measurements.
+ * Printing the results is not measured.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=QueryBenchmark}.
+ *
+ * @see GenbankQuery
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryBenchmark {
+    /**
+     * Author and title text that are present in the synthetic files.
+     */
+    private static final String AUTHOR = GenbankGenerator.author(0);
+    private static final String TITLE = "kinase binding";
+
+    /**
+     * Option of the explorer that selects the query.
+     */
+    @Param({"-a", "-p", "-ba", "-bp", "-ag", "-pg"})
+    private String mode;
+
+    @Param({"32MB"})
+    private String size;
+
+    private File directory;
+    private File file;
+    private GenbankIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("genbank-benchmark").toFile();
+        file = new File(directory, "synthetic.gbff");
+        GenbankGenerator generator = new GenbankGenerator(42);
+        generator.setTargetSize(GenbankGenerator.parseSize(size));
+        generator.write(file);
+        index = new GenbankIndex(GenbankLoader.loadStore(List.of(file), 1, null, null, null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        directory.delete();
+    }
+
+    private GenbankQuery query() {
+        return switch (mode) {
+            case "-a" -> new GenbankQuery.Authors();
+            case "-p" -> new GenbankQuery.Publications();
+            case "-ba" -> new GenbankQuery.ByAuthor(AUTHOR);
+            case "-bp" -> new GenbankQuery.ByPublication(TITLE);
+            case "-ag" -> new GenbankQuery.AuthorGenomes(AUTHOR);
+            case "-pg" -> new GenbankQuery.PublicationGenomes(TITLE);
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        };
+    }
+
+    /**
+     * Parses the file and evaluates the query while parsing.
+     */
+    @Benchmark
+    public List<String> stream() {
+        GenbankQuery query = query();
+        for (GenbankQuery partial : GenbankLoader.stream(List.of(file), 1, query::copy, null, null, null)) {
+            query.merge(partial);
+        }
+        return query.results();
+    }
+
+    /**
+     * Collects the results of the query from the index.
+     */
+    @Benchmark
+    public List<String> index() {
+        GenbankQuery query = query();
+        query.collect(index);
+        return query.results();
+    }
+}
@@ -0,0 +1,307 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Search engine over the distinct author names of the Genbank files, for users who do not know the exact spelling of a name.
+ * <p> Names are compared in a normalized form: lower case, without spaces and dots, so "Reilly, L.P." and "reilly,lp" are equal.
+ * A search uses two sorted dictionaries:
+ * <ul>
+ *     <li> the sorted normalized names, in which all names starting with the query form one range that is found with a
+ *     binary search, </li>
+ *     <li> the sorted distinct surnames, the part of a name before the comma, which are walked as a trie to find all surnames
+ *     within a few edits of the surname of the query. Surnames are skipped by whole prefixes, so only a small part of them
+ *     is compared to the query. </li>
+ * </ul>
+ * The comma is sorted before all other characters, so the names of a surname follow each other in the first dictionary
+ * and both are in the same order.
+ * Names starting with the query rank first, followed by names with a surname within {@link #MAX_DISTANCE} edits, closest first.
+ * If the query has initials, they have to match the start of the initials of a name within the remaining edits.
+ * Names at the same distance are ranked by their number of references.
+ * <p> The dictionaries are not modified after they are built and can be shared between threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         AuthorSearch search = new AuthorSearch(List.of("Reilly,L.P.", "Reilly,K.R.", "Riley,L."), new int[]{3, 1, 2});
+ *         for (AuthorSearch.Match match : search.search("Reily", 10)) {
+ *             System.out.println(match.author());
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankIndex#authorSearch()
+ * @see GenbankQuery.FindAuthor
+ */
+public final class AuthorSearch {
+    /**
+     * Maximum number of edits between the query and a name, short surnames allow fewer edits, see {@link #maxDistance(int)}.
+     */
+    public static final int MAX_DISTANCE = 2;
+    /**
+     * Replaces the comma between surname and initials in normalized names, it sorts before every other character.
+     */
+    private static final char SEPARATOR = '\0';
+
+    private final List<String> authors;
+    private final int[] references;
+    private final String[] keys;
+    /**
+     * Author ids sorted by their normalized name.
+     */
+    private final int[] byKey;
+    /**
+     * The distinct normalized surnames in sorted order, concatenated. Surname s runs from surnameOffset[s] to surnameOffset[s + 1],
+     * shares its first sharedPrefix[s] characters with surname s - 1, and its authors are byKey[surnameStart[s]] up to byKey[surnameStart[s + 1]].
+     */
+    private final char[] surnameChars;
+    private final int[] surnameOffset;
+    private final int[] sharedPrefix;
+    private final int[] surnameStart;
+    private final int longestSurname;
+
+    /**
+     * Builds the dictionaries over a list of authors.
+     *
+     * @param authors    The distinct author names, the index of a name is its id.
+     * @param references The number of references of every author, used to rank names at the same distance.
+     */
+    public AuthorSearch(List<String> authors, int[] references) {
+        this.authors = authors;
+        this.references = references;
+        int count = authors.size();
+        keys = new String[count];
+        for (int a = 0; a < count; a++) {
+            keys[a] = normalize(authors.get(a)).replace(',', SEPARATOR);
+        }
+        byKey = IntStream.range(0, count).boxed()
+                .sorted(Comparator.comparing((Integer a) -> keys[a]))
+                .mapToInt(Integer::intValue).toArray();
+
+        // Group the sorted authors by surname.
+        StringBuilder chars = new StringBuilder();
+        IntList offsets = new IntList();
+        IntList shared = new IntList();
+        IntList starts = new IntList();
+        String previous = null;
+        int longest = 0;
+        for (int i = 0; i < count; i++) {
+            String surname = surname(keys[byKey[i]]);
+            if (!surname.equals(previous)) {
+                offsets.add(chars.length());
+                shared.add(previous == null ? 0 : commonPrefix(previous, surname));
+                starts.add(i);
+                chars.append(surname);
+                longest = Math.max(longest, surname.length());
+                previous = surname;
+            }
+        }
+        offsets.add(chars.length());
+        starts.add(count);
+        surnameChars = chars.toString().toCharArray();
+        surnameOffset = offsets.toArray();
+        sharedPrefix = shared.toArray();
+        surnameStart = starts.toArray();
+        longestSurname = longest;
+    }
+
+    /**
+     * Finds the authors whose name starts with the query or is within a few edits of it.
+     *
+     * @param query The name to look for, in any case and with or without spaces and dots, for example "reilly" or "Reily,L".
+     * @param limit The maximum number of matches to return.
+     * @return the matches, best first.
+     */
+    public List<Match> search(String query, int limit) {
+        String key = normalize(query).replace(',', SEPARATOR);
+        if (key.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Integer> distances = new HashMap<>();
+        for (int i = lowerBound(key); i < byKey.length && keys[byKey[i]].startsWith(key); i++) {
+            distances.put(byKey[i], 0);
+        }
+        String surname = surname(key);
+        String initials = initials(key);
+        int max = maxDistance(surname.length());
+        similarSurnames(surname, max, (s, distance) -> {
+            for (int i = surnameStart[s]; i < surnameStart[s + 1]; i++) {
+                int author = byKey[i];
+                int total = distance;
+                if (key.length() > surname.length()) {
+                    // Initials of the query only need to match the start of the initials of the name.
+                    String candidate = initials(keys[author]);
+                    total += distance(initials, candidate.substring(0, Math.min(candidate.length(), initials.length())));
+                }
+                if (total <= max) {
+                    distances.merge(author, total, Math::min);
+                }
+            }
+        });
+        List<Match> matches = new ArrayList<>(distances.size());
+        distances.forEach((author, distance) -> matches.add(new Match(authors.get(author), distance, references[author])));
+        matches.sort(Comparator.comparingInt(Match::distance)
+                .thenComparing(Comparator.comparingInt(Match::references).reversed())
+                .thenComparing(Match::author));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Finds the surnames within max edits of the query, by walking the sorted surnames as a trie.
+     * <p> Row d of the edit distance table of a surname only depends on its first d characters, so the rows of the prefix
+     * a surname shares with the previous one are reused. Once every value of a row exceeds max, no surname with that prefix
+     * can be within max of the query, and all of them are skipped at once.
+     */
+    private void similarSurnames(String query, int max, SurnameConsumer consumer) {
+        int[][] rows = new int[longestSurname + 1][query.length() + 1];
+        for (int j = 0; j <= query.length(); j++) {
+            rows[0][j] = j;
+        }
+        int count = surnameStart.length - 1;
+        int s = 0;
+        while (s < count) {
+            int start = surnameOffset[s];
+            int length = surnameOffset[s + 1] - start;
+            // The rows are valid for the prefix shared with the previous surname, also when the previous one was pruned.
+            int depth = sharedPrefix[s];
+            boolean pruned = false;
+            while (depth < length && !pruned) {
+                depth++;
+                pruned = nextRow(rows[depth - 1], rows[depth], surnameChars[start + depth - 1], query) > max;
+            }
+            if (pruned) {
+                s++;
+                while (s < count && sharedPrefix[s] >= depth) {
+                    s++;
+                }
+                continue;
+            }
+            int distance = rows[length][query.length()];
+            if (distance <= max) {
+                consumer.accept(s, distance);
+            }
+            s++;
+        }
+    }
+
+    private interface SurnameConsumer {
+        void accept(int surname, int distance);
+    }
+
+    /**
+     * Computes the next row of the edit distance table, for one more character of the surname.
+     *
+     * @return the minimum of the row.
+     */
+    private static int nextRow(int[] previous, int[] row, char c, String query) {
+        row[0] = previous[0] + 1;
+        int minimum = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int replace = previous[j - 1] + (c == query.charAt(j - 1) ? 0 : 1);
+            row[j] = Math.min(replace, Math.min(previous[j], row[j - 1]) + 1);
+            minimum = Math.min(minimum, row[j]);
+        }
+        return minimum;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = byKey.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[byKey[middle]].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of edits allowed for a surname of a given length, so short queries do not match every short name.
+     *
+     * @param length The length of the normalized surname of the query.
+     * @return the maximum distance, at most {@link #MAX_DISTANCE}.
+     */
+    static int maxDistance(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : MAX_DISTANCE;
+    }
+
+    /**
+     * Normalizes a name for comparison: lower case, without whitespace and dots.
+     *
+     * @param name The name as written in a file or typed by a user.
+     * @return the normalized name.
+     */
+    static String normalize(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '.' && !Character.isWhitespace(c)) {
+                key.append(c);
+            }
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static String surname(String key) {
+        int separator = key.indexOf(SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    private static String initials(String key) {
+        int separator = key.indexOf(SEPARATOR);
+        return separator < 0 ? "" : key.substring(separator + 1);
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings: the number of inserted, deleted and replaced characters.
+     *
+     * @return the edit distance.
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int replace = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * An author found by a search.
+     *
+     * @param author     The name of the author as written in the files.
+     * @param distance   The number of edits to the query, 0 for names that start with the query.
+     * @param references The number of references of the author.
+     */
+    public record Match(String author, int distance, int references) {
+    }
+}
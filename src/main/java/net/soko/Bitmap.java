@@ -0,0 +1,545 @@
+package net.soko;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, used for postings of reference ids that are combined with set operations.
+ * <p> The layout follows Roaring bitmaps: the ids are split by their upper 16 bits into chunks of 65536 ids, and every
+ * non-empty chunk is stored in a container of its own, sorted by key. A chunk with at most {@link #ARRAY_LIMIT} ids is a
+ * sorted array of their lower 16 bits, two bytes per id. A denser chunk is a bitmap of 1024 longs, one bit per id.
+ * <p> {@link #and(Bitmap)}, {@link #or(Bitmap)} and {@link #andNot(Bitmap)} walk the keys of both bitmaps in order and only
+ * combine containers with the same key. Two bitmap containers are combined a long at a time, 64 ids per operation, an array
+ * container is merged with another array or looked up in a bitmap. Results are new bitmaps, the operands are not modified.
+ * <p> A bitmap is not modified once it is shared, and can then be read by several threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         Bitmap reilly = Bitmap.of(index.referencesByAuthor("Reilly,L.P."));
+ *         Bitmap thayer = Bitmap.of(index.referencesByAuthor("Thayer,G."));
+ *         Bitmap both = reilly.and(thayer);
+ *         both.forEach(reference -> System.out.println(reference));
+ *         }
+ *         </pre>
+ *
+ * @see ReferenceBitmaps
+ */
+public final class Bitmap {
+    /**
+     * Maximum number of ids of an array container, above which a bitmap container takes less memory.
+     */
+    static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1 << 16 >>> 6;
+
+    /**
+     * Upper 16 bits of the ids of every container, in increasing order.
+     */
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public Bitmap() {
+        // Most postings are short, so bitmaps start with room for a single container.
+        keys = new char[1];
+        containers = new Container[1];
+    }
+
+    /**
+     * Creates a bitmap of the ids of a list.
+     *
+     * @param ids The ids, in any order.
+     * @return the bitmap.
+     */
+    public static Bitmap of(IntList ids) {
+        Bitmap bitmap = new Bitmap();
+        for (int i = 0; i < ids.size(); i++) {
+            bitmap.add(ids.get(i));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the ids that are in any of the bitmaps.
+     * <p> The containers with the same key are combined into one array of words, so the cost does not grow with the number
+     * of bitmaps times the size of the result, as pairwise {@link #or(Bitmap)} would.
+     *
+     * @param bitmaps The bitmaps to combine.
+     * @return a new bitmap.
+     */
+    public static Bitmap union(List<Bitmap> bitmaps) {
+        long[][] chunks = new long[1 << 16][];
+        int high = -1;
+        for (Bitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.size; i++) {
+                int key = bitmap.keys[i];
+                if (chunks[key] == null) {
+                    chunks[key] = new long[WORDS];
+                }
+                bitmap.containers[i].orInto(chunks[key]);
+                high = Math.max(high, key);
+            }
+        }
+        Bitmap result = new Bitmap();
+        for (int key = 0; key <= high; key++) {
+            if (chunks[key] != null) {
+                result.append((char) key, BitmapContainer.of(chunks[key]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a bitmap of all ids from 0 up to an end.
+     *
+     * @param end The first id that is not in the bitmap.
+     * @return the bitmap.
+     */
+    public static Bitmap range(int end) {
+        Bitmap bitmap = new Bitmap();
+        for (int start = 0; start < end; start += 1 << 16) {
+            int count = Math.min(end - start, 1 << 16);
+            Container container;
+            if (count <= ARRAY_LIMIT) {
+                char[] values = new char[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = (char) i;
+                }
+                container = new ArrayContainer(values, count);
+            } else {
+                long[] words = new long[WORDS];
+                Arrays.fill(words, 0, count >>> 6, -1L);
+                if ((count & 63) != 0) {
+                    words[count >>> 6] = (1L << count) - 1;
+                }
+                container = new BitmapContainer(words, count);
+            }
+            bitmap.append((char) (start >>> 16), container);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds an id. Adding ids in increasing order only appends to the last container.
+     *
+     * @param id The id to add, not negative.
+     */
+    public void add(int id) {
+        char key = (char) (id >>> 16);
+        int index = size > 0 && keys[size - 1] == key ? size - 1 : find(key);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, key, new ArrayContainer(new char[4], 0));
+        }
+        containers[index] = containers[index].add((char) id);
+    }
+
+    public boolean contains(int id) {
+        int index = find((char) (id >>> 16));
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    /**
+     * Returns the number of ids in the bitmap.
+     *
+     * @return the number of ids.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the ids that are in both bitmaps.
+     *
+     * @param other The other bitmap.
+     * @return a new bitmap.
+     */
+    public Bitmap and(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids that are in either bitmap.
+     *
+     * @param other The other bitmap.
+     * @return a new bitmap.
+     */
+    public Bitmap or(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids that are in this bitmap and not in the other.
+     *
+     * @param other The ids to leave out.
+     * @return a new bitmap.
+     */
+    public Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i] ? containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Passes every id to an action, in increasing order.
+     *
+     * @param action Receives the ids.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int[] next = new int[1];
+        forEach(id -> ids[next[0]++] = id);
+        return ids;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * The lower 16 bits of the ids of one chunk.
+     */
+    private abstract static class Container {
+        /**
+         * Adds a value, the container may be replaced by a denser one.
+         *
+         * @return the container holding the value.
+         */
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container copy();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        /**
+         * Sets the bits of the values in an array of words.
+         */
+        abstract void orInto(long[] words);
+    }
+
+    /**
+     * Sorted array of the values of a sparse chunk.
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = cardinality > 0 && values[cardinality - 1] < value ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(cardinality * 2, 4), ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        BitmapContainer toBitmap() {
+            long[] words = new long[WORDS];
+            orInto(words);
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            ArrayContainer union = new ArrayContainer(result, count);
+            return count > ARRAY_LIMIT ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+    }
+
+    /**
+     * One bit for every value of a dense chunk.
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Creates the container of a result of word operations, as an array if it became sparse.
+         */
+        static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int w = 0; w < words.length; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    values[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] others = ((BitmapContainer) other).words;
+            long[] result = new long[WORDS];
+            for (int w = 0; w < WORDS; w++) {
+                result[w] = words[w] & others[w];
+            }
+            return of(result);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            other.orInto(result);
+            return of(result);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            } else {
+                long[] others = ((BitmapContainer) other).words;
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] &= ~others[w];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int w = 0; w < WORDS; w++) {
+                words[w] |= this.words[w];
+            }
+        }
+    }
+}
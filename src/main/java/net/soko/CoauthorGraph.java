@@ -0,0 +1,264 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Co-authorship graph over the authors of a {@link GenbankIndex}: two authors are connected if they share a publication.
+ * <p> The graph is stored in compressed sparse row form over the author ids of the store, in three int arrays:
+ * the neighbors of author a are neighbors[offsets[a]] up to neighbors[offsets[a + 1]], sorted by id, and weights holds the
+ * number of distinct publications, by title, the two authors share. There is no object per author or per edge.
+ * <p> The edges are collected per title as pairs of ids packed into longs, which are sorted and counted, so building the
+ * graph takes a sort of the co-author pairs and no hashing of strings.
+ * <p> The graph is not modified after it is built and can be shared between threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         CoauthorGraph graph = index.coauthorGraph();
+ *         List<CoauthorGraph.Neighbor> coauthors = graph.neighbors("Reilly,L.P.");
+ *         List<String> path = graph.shortestPath("Reilly,L.P.", "Thayer,G.");
+ *         }
+ *         </pre>
+ *
+ * @see GenbankIndex#coauthorGraph()
+ */
+public final class CoauthorGraph {
+    private final StringDictionary authors;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int[] weights;
+
+    /**
+     * Builds the graph of all references in an index.
+     *
+     * @param index The index of the references.
+     */
+    public CoauthorGraph(GenbankIndex index) {
+        GenbankStore store = index.getStore();
+        authors = store.authors();
+        int count = authors.size();
+
+        // Every pair of co-authors once per title, the lower id in the upper half.
+        long[] pairs = new long[64];
+        int size = 0;
+        for (int t = 0; t < store.titles().size(); t++) {
+            IntList references = index.referencesByTitle(t);
+            // A single reference lists every author once, only titles of several references can repeat a pair.
+            LongSet seen = references.size() > 1 ? new LongSet() : null;
+            for (int r = 0; r < references.size(); r++) {
+                int reference = references.get(r);
+                for (int i = store.authorStart(reference); i < store.authorEnd(reference); i++) {
+                    for (int j = i + 1; j < store.authorEnd(reference); j++) {
+                        int a = store.author(i);
+                        int b = store.author(j);
+                        long pair = LongSet.pair(Math.min(a, b), Math.max(a, b));
+                        if (a != b && (seen == null || seen.add(pair))) {
+                            if (size == pairs.length) {
+                                pairs = Arrays.copyOf(pairs, size * 2);
+                            }
+                            pairs[size++] = pair;
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, size);
+
+        int[] degree = new int[count];
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                degree[LongSet.first(pairs[i])]++;
+                degree[LongSet.second(pairs[i])]++;
+            }
+        }
+        offsets = new int[count + 1];
+        for (int a = 0; a < count; a++) {
+            offsets[a + 1] = offsets[a] + degree[a];
+        }
+        neighbors = new int[offsets[count]];
+        weights = new int[offsets[count]];
+        // Pairs are sorted by their lower id, so every row is filled in increasing order of neighbor.
+        int[] next = Arrays.copyOf(offsets, count);
+        for (int i = 0; i < size; ) {
+            int end = i + 1;
+            while (end < size && pairs[end] == pairs[i]) {
+                end++;
+            }
+            int a = LongSet.first(pairs[i]);
+            int b = LongSet.second(pairs[i]);
+            neighbors[next[a]] = b;
+            weights[next[a]++] = end - i;
+            neighbors[next[b]] = a;
+            weights[next[b]++] = end - i;
+            i = end;
+        }
+    }
+
+    public int authorCount() {
+        return authors.size();
+    }
+
+    /**
+     * Returns the number of distinct pairs of co-authors.
+     */
+    public int edgeCount() {
+        return neighbors.length / 2;
+    }
+
+    /**
+     * Returns the co-authors of an author.
+     *
+     * @param author The exact name of the author.
+     * @return the co-authors, most shared publications first and then by name, empty if the author is unknown.
+     */
+    public List<Neighbor> neighbors(String author) {
+        int id = authors.find(author);
+        List<Neighbor> result = new ArrayList<>();
+        if (id < 0) {
+            return result;
+        }
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            result.add(new Neighbor(authors.get(neighbors[i]), weights[i]));
+        }
+        result.sort(Comparator.comparingInt(Neighbor::publications).reversed().thenComparing(Neighbor::author));
+        return result;
+    }
+
+    /**
+     * Finds a shortest chain of co-authors between two authors, with a breadth-first search from both ends.
+     * <p> The side with the smaller frontier expands a whole level at a time. Once a level reaches an author found from the
+     * other side, the shortest of the meetings in that level is a shortest path.
+     *
+     * @param from The exact name of the first author.
+     * @param to   The exact name of the last author.
+     * @return the authors on the path from first to last, or an empty list if either author is unknown or they are not connected.
+     */
+    public List<String> shortestPath(String from, String to) {
+        int source = authors.find(from);
+        int target = authors.find(to);
+        if (source < 0 || target < 0) {
+            return new ArrayList<>();
+        }
+        if (source == target) {
+            return new ArrayList<>(List.of(from));
+        }
+        // Side 1 is searched from the source and side 2 from the target, 0 is not visited yet.
+        byte[] side = new byte[authors.size()];
+        int[] parent = new int[authors.size()];
+        int[] depth = new int[authors.size()];
+        side[source] = 1;
+        side[target] = 2;
+        parent[source] = -1;
+        parent[target] = -1;
+        IntList[] frontier = {null, IntList.of(source), IntList.of(target)};
+        int best = Integer.MAX_VALUE;
+        int meetFrom = -1;
+        int meetTo = -1;
+        while (best == Integer.MAX_VALUE && !frontier[1].isEmpty() && !frontier[2].isEmpty()) {
+            byte expand = (byte) (frontier[1].size() <= frontier[2].size() ? 1 : 2);
+            IntList level = frontier[expand];
+            IntList nextLevel = new IntList();
+            for (int i = 0; i < level.size(); i++) {
+                int u = level.get(i);
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = neighbors[e];
+                    if (side[v] == 0) {
+                        side[v] = expand;
+                        parent[v] = u;
+                        depth[v] = depth[u] + 1;
+                        nextLevel.add(v);
+                    } else if (side[v] != expand && depth[u] + 1 + depth[v] < best) {
+                        best = depth[u] + 1 + depth[v];
+                        meetFrom = expand == 1 ? u : v;
+                        meetTo = expand == 1 ? v : u;
+                    }
+                }
+            }
+            frontier[expand] = nextLevel;
+        }
+        List<String> path = new ArrayList<>();
+        if (best == Integer.MAX_VALUE) {
+            return path;
+        }
+        for (int a = meetFrom; a >= 0; a = parent[a]) {
+            path.add(authors.get(a));
+        }
+        Collections.reverse(path);
+        for (int a = meetTo; a >= 0; a = parent[a]) {
+            path.add(authors.get(a));
+        }
+        return path;
+    }
+
+    /**
+     * Finds the connected components of the graph with a breadth-first search from every author that has no component yet.
+     *
+     * @return the sizes of the components.
+     */
+    public Components components() {
+        int count = authors.size();
+        boolean[] visited = new boolean[count];
+        int[] queue = new int[count];
+        IntList sizes = new IntList();
+        int isolated = 0;
+        for (int start = 0; start < count; start++) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (!visited[neighbors[e]]) {
+                        visited[neighbors[e]] = true;
+                        queue[tail++] = neighbors[e];
+                    }
+                }
+            }
+            sizes.add(tail);
+            isolated += tail == 1 ? 1 : 0;
+        }
+        int[] sorted = sizes.toArray();
+        Arrays.sort(sorted);
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            int swap = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = swap;
+        }
+        return new Components(count, edgeCount(), sorted, isolated);
+    }
+
+    /**
+     * A co-author of an author.
+     *
+     * @param author       The name of the co-author.
+     * @param publications The number of distinct publications, by title, the two authors share.
+     */
+    public record Neighbor(String author, int publications) {
+    }
+
+    /**
+     * Connected component statistics of the graph.
+     *
+     * @param authors  The number of authors.
+     * @param edges    The number of distinct pairs of co-authors.
+     * @param sizes    The number of authors of every component, largest first.
+     * @param isolated The number of authors without co-authors.
+     */
+    public record Components(int authors, int edges, int[] sizes, int isolated) {
+        public int count() {
+            return sizes.length;
+        }
+
+        public int largest() {
+            return sizes.length == 0 ? 0 : sizes[0];
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package net.soko;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Sorted set of strings that keeps at most a given amount of memory, for distinct values that do not fit in the heap,
+ * such as all authors or titles of a large corpus.
+ * <p> Values are collected in a HashSet until its estimated size exceeds the memory budget. The set is then sorted and
+ * written to a run file, and a new set is started, so every run is sorted and free of duplicates. Reading the values merges
+ * the runs and the values still in memory with a priority queue, skipping values that appear in several runs.
+ * At most {@link #FAN_IN} runs are merged at once, larger numbers of runs are first merged into longer runs, so memory use
+ * does not depend on the number of values either.
+ * <p> Values are sorted with {@link String#compareTo(String)}, which gives the same order as sorting them in memory.
+ * Adding values is synchronized, so the parse tasks of a run can share a set. The run files are deleted on {@link #close()}.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         try (ExternalSortedSet authors = new ExternalSortedSet(new File("/tmp"), 256L << 20)) {
+ *             authors.add("Reilly,L.P.");
+ *             authors.forEach(System.out::println);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankQuery.DistinctQuery
+ */
+public final class ExternalSortedSet implements AutoCloseable {
+    /**
+     * Maximum number of runs that are merged at once, every run that is read needs its own buffer.
+     */
+    static final int FAN_IN = 64;
+    /**
+     * Estimated bytes of a value in the set besides its characters: the String, its byte array and the entry of the HashSet.
+     */
+    private static final int VALUE_OVERHEAD = 88;
+
+    private final File directory;
+    private final long memory;
+    private Set<String> values = new HashSet<>();
+    private long used;
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * Creates an empty set.
+     *
+     * @param directory The directory to write the runs to.
+     * @param memory    The number of bytes the values in memory may take, before they are written to a run.
+     */
+    public ExternalSortedSet(File directory, long memory) {
+        this.directory = directory;
+        this.memory = memory;
+    }
+
+    /**
+     * Adds a value, writing the values in memory to a run once they exceed the memory budget.
+     *
+     * @param value The value to add.
+     */
+    public synchronized void add(String value) {
+        if (values.add(value)) {
+            used += VALUE_OVERHEAD + value.length();
+            if (used > memory) {
+                spill();
+            }
+        }
+    }
+
+    public synchronized void addAll(Collection<String> values) {
+        for (String value : values) {
+            add(value);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return values.isEmpty() && runs.isEmpty();
+    }
+
+    /**
+     * Returns the number of runs written so far.
+     *
+     * @return the number of run files.
+     */
+    public synchronized int runCount() {
+        return runs.size();
+    }
+
+    /**
+     * Passes every distinct value to an action, in sorted order.
+     *
+     * @param action Receives the values.
+     * @throws IOException if a run cannot be read or written, or the action fails.
+     */
+    public synchronized void forEach(Action action) throws IOException {
+        String[] sorted = values.toArray(new String[0]);
+        Arrays.sort(sorted);
+        // Merge runs until the remaining runs and the values in memory can be merged at once.
+        while (runs.size() + 1 > FAN_IN) {
+            List<File> group = new ArrayList<>(runs.subList(0, FAN_IN));
+            File merged = newRun();
+            try (DataOutputStream out = openRun(merged)) {
+                merge(group, new String[0], value -> write(out, value));
+            }
+            for (File run : group) {
+                Files.delete(run.toPath());
+            }
+            runs.removeAll(group);
+            runs.add(merged);
+        }
+        merge(runs, sorted, action);
+    }
+
+    /**
+     * Deletes the run files.
+     *
+     * @throws IOException if a run cannot be deleted.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (File run : runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        runs.clear();
+        values = new HashSet<>();
+        used = 0;
+    }
+
+    /**
+     * Writes the values in memory to a new run in sorted order, and starts with an empty set.
+     */
+    private void spill() {
+        String[] sorted = values.toArray(new String[0]);
+        // A new set, as clearing a set keeps its table.
+        values = new HashSet<>();
+        used = 0;
+        Arrays.sort(sorted);
+        try {
+            File run = newRun();
+            try (DataOutputStream out = openRun(run)) {
+                for (String value : sorted) {
+                    write(out, value);
+                }
+            }
+            runs.add(run);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Merges sorted runs and a sorted array into one sorted sequence without duplicates.
+     */
+    private static void merge(List<File> runs, String[] sorted, Action action) throws IOException {
+        PriorityQueue<Source> queue = new PriorityQueue<>(runs.size() + 1, (a, b) -> a.value.compareTo(b.value));
+        List<Source> sources = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                sources.add(new Source(run, null));
+            }
+            sources.add(new Source(null, sorted));
+            for (Source source : sources) {
+                if (source.next()) {
+                    queue.add(source);
+                }
+            }
+            String last = null;
+            while (!queue.isEmpty()) {
+                Source source = queue.poll();
+                if (!source.value.equals(last)) {
+                    last = source.value;
+                    action.accept(last);
+                }
+                if (source.next()) {
+                    queue.add(source);
+                }
+            }
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private File newRun() throws IOException {
+        File run = Files.createTempFile(directory.toPath(), "genbank-sort-", ".run").toFile();
+        run.deleteOnExit();
+        return run;
+    }
+
+    private static DataOutputStream openRun(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.toPath()), GenbankInput.BUFFER_SIZE));
+    }
+
+    private static void write(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Receives the values of the set.
+     */
+    public interface Action {
+        void accept(String value) throws IOException;
+    }
+
+    /**
+     * The next value of a run file or of the sorted values in memory.
+     */
+    private static final class Source {
+        private final DataInputStream in;
+        private final String[] sorted;
+        private int index;
+        private String value;
+
+        private Source(File run, String[] sorted) throws IOException {
+            this.in = run == null ? null : new DataInputStream(new BufferedInputStream(Files.newInputStream(run.toPath()), GenbankInput.BUFFER_SIZE));
+            this.sorted = sorted;
+        }
+
+        /**
+         * Advances to the next value.
+         *
+         * @return false if there are no more values.
+         */
+        private boolean next() throws IOException {
+            if (in == null) {
+                value = index < sorted.length ? sorted[index++] : null;
+                return value != null;
+            }
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            value = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+            return true;
+        }
+
+        private void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
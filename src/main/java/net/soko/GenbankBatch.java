@@ -0,0 +1,385 @@
+package net.soko;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * This class evaluates many queries of the {@link GenbankExplorer} in one pass over the entries, or one probe of a {@link GenbankIndex}.
+ * <p> Queries are read from a file with one query per line, an option of the explorer followed by its argument, for example:
+ * <pre>
+ *     # Comments and empty lines are ignored.
+ *     -ba Reilly,L.P.
+ *     -bp kinase
+ *     -ag Thayer,G.
+ *     -pg complete genome
+ *     -fa reily
+ *     -ta 10 co-authors
+ *     -path Reilly,L.P. Thayer,G.
+ *     -fetch NC_000913 U00096
+ *     -s author:"Reilly,L.P." AND NOT title~kinase
+ *     </pre>
+ * The dashes are optional and the long option names can be used as well. -a, -p and -components take no argument, -ta takes
+ * the number of authors optionally followed by what to rank them by, -path takes two authors separated by a space and
+ * -fetch takes one or more LOCUS names or accessions separated by spaces. -s takes the rest of the line as a search expression.
+ * <p> Instead of every query looking at every reference, the batch looks up the authors of a reference in a map of the
+ * queried authors, and runs the title of a reference once through a {@link PatternMatcher} over all queried titles.
+ * The cost of a reference therefore does not grow with the number of queries, only with the number of matches.
+ * <p> Like a {@link GenbankQuery}, a batch is copied for every parse task and the copies are merged in file order.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankBatch batch = GenbankBatch.read(new File("queries.txt"));
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, batch, null);
+ *         }
+ *         try (GenbankOutput output = GenbankOutput.toStdout(false)) {
+ *             batch.write(output);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankQuery.MatchListener
+ */
+public class GenbankBatch implements GenbankRecordListener {
+    /**
+     * Up to this many queried titles, the index looks up every title in its trigram index instead of matching all distinct titles.
+     */
+    private static final int TRIGRAM_LOOKUPS = 8;
+
+    /**
+     * All queries, in the order of the query file.
+     */
+    private final List<GenbankQuery> queries;
+    /**
+     * Queries that look at every entry: the queries without an argument, the author searches and aggregations, the graph
+     * queries, the search expressions and the record fetches.
+     */
+    private final IntList scanning;
+    /**
+     * The queries of an author or a title, which are told about matching references, in the order of the query file.
+     */
+    private final List<GenbankQuery.MatchListener<?>> listeners;
+    /**
+     * The index into the queries of every listener. Shared between copies.
+     */
+    private final IntList listenerQueries;
+    /**
+     * Listeners of every queried author and title, as indexes into the listeners. Shared between copies.
+     */
+    private final Map<String, IntList> authorQueries;
+    private final String[] patterns;
+    private final IntList[] patternQueries;
+    /**
+     * Matcher over the queried titles, the index of a pattern is the index into patternQueries. Null without title queries.
+     */
+    private final PatternMatcher matcher;
+
+    /**
+     * Per pattern, the value of stamp when it was last reported, so a pattern is handled once per title.
+     */
+    private final int[] seen;
+    private int stamp;
+    private GenbankEntry currentEntry;
+    private GenbankReference currentReference;
+    private final IntConsumer onTitleMatch = this::onTitleMatch;
+
+    private GenbankBatch(List<GenbankQuery> queries, IntList scanning, List<GenbankQuery.MatchListener<?>> listeners, IntList listenerQueries,
+                         Map<String, IntList> authorQueries, String[] patterns, IntList[] patternQueries, PatternMatcher matcher) {
+        this.queries = queries;
+        this.scanning = scanning;
+        this.listeners = listeners;
+        this.listenerQueries = listenerQueries;
+        this.authorQueries = authorQueries;
+        this.patterns = patterns;
+        this.patternQueries = patternQueries;
+        this.matcher = matcher;
+        this.seen = new int[patternQueries.length];
+    }
+
+    /**
+     * Reads a query file.
+     *
+     * @param file The file with one query per line.
+     * @return the batch of queries.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not a valid query.
+     */
+    public static GenbankBatch read(File file) throws IOException {
+        return parse(Files.readAllLines(file.toPath()));
+    }
+
+    /**
+     * Parses the lines of a query file, see the class documentation for the format.
+     *
+     * @param lines The lines with one query each.
+     * @return the batch of queries.
+     * @throws IllegalArgumentException if a line is not a valid query.
+     */
+    public static GenbankBatch parse(List<String> lines) {
+        List<GenbankQuery> queries = new ArrayList<>();
+        IntList scanning = new IntList();
+        List<GenbankQuery.MatchListener<?>> listeners = new ArrayList<>();
+        IntList listenerQueries = new IntList();
+        Map<String, IntList> authorQueries = new LinkedHashMap<>();
+        Map<String, IntList> titleQueries = new LinkedHashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            String option = parts[0].replaceFirst("^-{1,2}", "");
+            String argument = parts.length > 1 ? parts[1].trim() : "";
+            boolean needsArgument = !option.equals("a") && !option.equals("authors") && !option.equals("p") && !option.equals("publications")
+                    && !option.equals("components");
+            if (needsArgument == argument.isEmpty()) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + (needsArgument ? "missing" : "unexpected") + " argument for " + parts[0]);
+            }
+            int id = queries.size();
+            switch (option) {
+                case "a", "authors" -> {
+                    queries.add(new GenbankQuery.Authors());
+                    scanning.add(id);
+                }
+                case "p", "publications" -> {
+                    queries.add(new GenbankQuery.Publications());
+                    scanning.add(id);
+                }
+                case "ba", "by-author" -> {
+                    add(new GenbankQuery.ByAuthor(argument), queries, listeners, listenerQueries);
+                    authorQueries.computeIfAbsent(argument, key -> new IntList(1)).add(listeners.size() - 1);
+                }
+                case "ag", "auth-genome" -> {
+                    add(new GenbankQuery.AuthorGenomes(argument), queries, listeners, listenerQueries);
+                    authorQueries.computeIfAbsent(argument, key -> new IntList(1)).add(listeners.size() - 1);
+                }
+                case "bp", "by-publication" -> {
+                    add(new GenbankQuery.ByPublication(argument), queries, listeners, listenerQueries);
+                    titleQueries.computeIfAbsent(argument, key -> new IntList(1)).add(listeners.size() - 1);
+                }
+                case "pg", "pub-genome" -> {
+                    add(new GenbankQuery.PublicationGenomes(argument), queries, listeners, listenerQueries);
+                    titleQueries.computeIfAbsent(argument, key -> new IntList(1)).add(listeners.size() - 1);
+                }
+                case "fa", "find-author" -> {
+                    queries.add(new GenbankQuery.FindAuthor(argument));
+                    scanning.add(id);
+                }
+                case "ca", "coauthors" -> {
+                    queries.add(new GenbankQuery.Coauthors(argument));
+                    scanning.add(id);
+                }
+                case "path" -> {
+                    String[] authors = argument.split("\\s+");
+                    if (authors.length != 2) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": expected two authors for " + parts[0]);
+                    }
+                    queries.add(new GenbankQuery.CollaborationPath(authors[0], authors[1]));
+                    scanning.add(id);
+                }
+                case "components" -> {
+                    queries.add(new GenbankQuery.Components());
+                    scanning.add(id);
+                }
+                case "s", "search" -> {
+                    try {
+                        queries.add(new GenbankQuery.Search(argument));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+                    }
+                    scanning.add(id);
+                }
+                case "fetch" -> {
+                    queries.add(new GenbankQuery.Fetch(List.of(argument.split("\\s+"))));
+                    scanning.add(id);
+                }
+                case "ta", "top-authors" -> {
+                    try {
+                        queries.add(GenbankQuery.TopAuthors.parse(argument));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+                    }
+                    scanning.add(id);
+                }
+                default -> throw new IllegalArgumentException("Line " + (i + 1) + ": unknown query " + parts[0]);
+            }
+        }
+        String[] patterns = titleQueries.keySet().toArray(new String[0]);
+        PatternMatcher matcher = patterns.length == 0 ? null : new PatternMatcher(List.of(patterns));
+        return new GenbankBatch(queries, scanning, listeners, listenerQueries, authorQueries, patterns, titleQueries.values().toArray(new IntList[0]), matcher);
+    }
+
+    /**
+     * Adds a query of an author or a title, which is both a query and a listener of its matching references.
+     */
+    private static <Q extends GenbankQuery & GenbankQuery.MatchListener<Q>> void add(Q query, List<GenbankQuery> queries,
+                                                                                     List<GenbankQuery.MatchListener<?>> listeners, IntList listenerQueries) {
+        listenerQueries.add(queries.size());
+        queries.add(query);
+        listeners.add(query);
+    }
+
+    /**
+     * Copies a listener, the copy takes the place of the listener in the copied queries as well.
+     */
+    private static <Q extends GenbankQuery & GenbankQuery.MatchListener<Q>> void copy(GenbankQuery.MatchListener<Q> listener, int id, List<GenbankQuery> queries,
+                                                                                      List<GenbankQuery.MatchListener<?>> listeners) {
+        Q copy = listener.copy();
+        queries.set(id, copy);
+        listeners.add(copy);
+    }
+
+    /**
+     * Creates an empty batch with the same queries, used to evaluate the batch on part of the files.
+     *
+     * @return a batch that has not seen any entries.
+     */
+    public GenbankBatch copy() {
+        // Every query is either scanning or a listener.
+        List<GenbankQuery> copies = new ArrayList<>(queries);
+        for (int i = 0; i < scanning.size(); i++) {
+            copies.set(scanning.get(i), queries.get(scanning.get(i)).copy());
+        }
+        List<GenbankQuery.MatchListener<?>> listenerCopies = new ArrayList<>(listeners.size());
+        for (int i = 0; i < listeners.size(); i++) {
+            copy(listeners.get(i), listenerQueries.get(i), copies, listenerCopies);
+        }
+        return new GenbankBatch(copies, scanning, listenerCopies, listenerQueries, authorQueries, patterns, patternQueries, matcher);
+    }
+
+    /**
+     * Adds the results of a copy of this batch, that was fed the entries following the ones this batch has seen.
+     *
+     * @param other A copy of this batch.
+     */
+    public void merge(GenbankBatch other) {
+        for (int i = 0; i < queries.size(); i++) {
+            queries.get(i).merge(other.queries.get(i));
+        }
+    }
+
+    @Override
+    public void onEntry(GenbankEntry entry) {
+        for (int i = 0; i < scanning.size(); i++) {
+            queries.get(scanning.get(i)).onEntry(entry);
+        }
+        if (authorQueries.isEmpty() && matcher == null) {
+            return;
+        }
+        currentEntry = entry;
+        for (GenbankReference reference : entry.getReferences()) {
+            for (String author : reference.getAuthors()) {
+                IntList matching = authorQueries.get(author);
+                if (matching != null) {
+                    notify(matching, entry, reference);
+                }
+            }
+            if (matcher != null) {
+                currentReference = reference;
+                stamp++;
+                matcher.match(reference.getTitle(), onTitleMatch);
+            }
+        }
+        currentEntry = null;
+        currentReference = null;
+    }
+
+    private void onTitleMatch(int pattern) {
+        if (seen[pattern] != stamp) {
+            seen[pattern] = stamp;
+            notify(patternQueries[pattern], currentEntry, currentReference);
+        }
+    }
+
+    private void notify(IntList matching, GenbankEntry entry, GenbankReference reference) {
+        for (int i = 0; i < matching.size(); i++) {
+            listeners.get(matching.get(i)).onMatch(entry, reference);
+        }
+    }
+
+    /**
+     * Evaluates the batch against an index instead of the parsed entries.
+     * <p> Authors are looked up in the postings of the index. A few queried titles are looked up in the trigram index of
+     * the titles, for more every distinct title is run through the matcher once. The references of the matching titles
+     * are handed to the queries in file order.
+     *
+     * @param index The index of all entries.
+     */
+    public void collect(GenbankIndex index) {
+        GenbankStore store = index.getStore();
+        for (int i = 0; i < scanning.size(); i++) {
+            queries.get(scanning.get(i)).collect(index);
+        }
+        for (Map.Entry<String, IntList> author : authorQueries.entrySet()) {
+            IntList references = index.referencesByAuthor(author.getKey());
+            for (int i = 0; i < references.size(); i++) {
+                int reference = references.get(i);
+                notify(author.getValue(), store.entry(store.referenceEntry(reference)), store.reference(reference));
+            }
+        }
+        if (matcher == null) {
+            return;
+        }
+        IntList[] patternTitles = new IntList[patterns.length];
+        if (patterns.length <= TRIGRAM_LOOKUPS) {
+            for (int p = 0; p < patterns.length; p++) {
+                patternTitles[p] = index.titlesContaining(patterns[p]);
+            }
+        } else {
+            for (int p = 0; p < patterns.length; p++) {
+                patternTitles[p] = new IntList(4);
+            }
+            List<String> titles = index.titles();
+            for (int t = 0; t < titles.size(); t++) {
+                int title = t;
+                stamp++;
+                matcher.match(titles.get(t), pattern -> {
+                    if (seen[pattern] != stamp) {
+                        seen[pattern] = stamp;
+                        patternTitles[pattern].add(title);
+                    }
+                });
+            }
+        }
+        for (int p = 0; p < patternTitles.length; p++) {
+            IntList references = new IntList();
+            for (int i = 0; i < patternTitles[p].size(); i++) {
+                IntList postings = index.referencesByTitle(patternTitles[p].get(i));
+                for (int j = 0; j < postings.size(); j++) {
+                    references.add(postings.get(j));
+                }
+            }
+            int[] sorted = references.toArray();
+            Arrays.sort(sorted);
+            for (int reference : sorted) {
+                notify(patternQueries[p], store.entry(store.referenceEntry(reference)), store.reference(reference));
+            }
+        }
+    }
+
+    /**
+     * Writes the results of all queries in the order of the query file, every query starts with its header line.
+     * A query without results writes its message for empty results instead, if it has one.
+     *
+     * @param output The output to write to.
+     * @throws IOException if the output cannot be written.
+     */
+    public void write(GenbankOutput output) throws IOException {
+        for (GenbankQuery query : queries) {
+            if (query.emptyMessage() != null && query.isEmpty()) {
+                output.writeLine(query.emptyMessage());
+                continue;
+            }
+            output.writeLine(query.header());
+            query.writeResults(output);
+        }
+    }
+}
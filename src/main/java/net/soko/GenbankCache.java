@@ -0,0 +1,558 @@
+package net.soko;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * This class keeps a compact binary snapshot of the parsed entries of every Genbank file, so repeated runs can skip parsing
+ * files that have not changed.
+ * <p> Every source file gets its own snapshot file in the cache directory, which starts with the key of the source file:
+ * its path, size, modification time and a CRC32C hash of its contents. A snapshot is used when the size and modification time
+ * still match, or when only the modification time changed but the contents hash to the same value.
+ * <p> The hash of a parsed file is computed from the bytes that are read for parsing, see {@link ContentHash}, so writing a
+ * snapshot does not read the file a second time. The hashes of the chunks of a split file are combined into the hash of the file.
+ * <p> A snapshot consists of one or more segments, one for every parse task of the file, so large files that are parsed in
+ * chunks can write their segments in parallel. Each segment stores its entries as int references into its own table of
+ * distinct strings, which keeps repeated author names and journals small, and the byte range of the record of every entry
+ * in the source file. Segments are memory-mapped when they are read.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankCache cache = new GenbankCache(new File("path/to/directory/.genbank_cache"), false);
+ *         List<GenbankQuery> partials = GenbankLoader.stream(files, 4, query::copy, cache, null, null);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankLoader
+ */
+public class GenbankCache {
+    /**
+     * Name of the default cache directory, created inside the directory with the Genbank files.
+     */
+    public static final String DEFAULT_DIRECTORY = ".genbank_cache";
+    private static final int MAGIC = 0x47424331; // "GBC1"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".gbc";
+
+    /**
+     * Reversed CRC32C polynomial, used to combine the hashes of consecutive parts of a file.
+     */
+    private static final long CRC32C_POLYNOMIAL = 0x82F63B78L;
+
+    private final File directory;
+    private final boolean rebuild;
+    /**
+     * Hashes of the segments that were written but not yet committed, by segment file. Segments are written in parallel.
+     */
+    private final Map<File, ContentHash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache in the given directory, the directory is created if it does not exist.
+     *
+     * @param directory The directory to store the snapshots in.
+     * @param rebuild   Whether to ignore existing snapshots and rebuild all of them.
+     * @throws IOException if the directory cannot be created.
+     */
+    public GenbankCache(File directory, boolean rebuild) throws IOException {
+        this.directory = directory;
+        this.rebuild = rebuild;
+        Files.createDirectories(directory.toPath());
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Checks whether a usable snapshot of a source file exists.
+     * <p> When only the modification time of the source changed and its contents still hash to the stored value,
+     * the snapshot is updated with the new time and is considered valid.
+     *
+     * @param source The Genbank file.
+     * @return true if the snapshot can be read instead of parsing the file.
+     */
+    public boolean isValid(File source) {
+        File snapshot = snapshotFile(source);
+        if (rebuild || !snapshot.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Header header = Header.read(channel);
+            if (header == null || !header.path.equals(source.getAbsolutePath()) || header.size != source.length()) {
+                return false;
+            }
+            if (header.modified == source.lastModified()) {
+                return true;
+            }
+            if (header.hash != hash(source)) {
+                return false;
+            }
+            header.modified = source.lastModified();
+            header.write(channel);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // An unreadable snapshot is rebuilt.
+            return false;
+        }
+    }
+
+    /**
+     * Reads the snapshot of a source file and hands its entries to a listener, in file order.
+     *
+     * @param source   The Genbank file, whose snapshot must be valid.
+     * @param listener Receives the entries.
+     */
+    public void read(File source, GenbankRecordListener listener) {
+        try (FileChannel channel = FileChannel.open(snapshotFile(source).toPath(), StandardOpenOption.READ)) {
+            Header header = Header.read(channel);
+            if (header == null) {
+                throw new IOException("Invalid cache snapshot for " + source);
+            }
+            long position = header.length();
+            ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+            for (int i = 0; i < header.segments; i++) {
+                length.clear();
+                channel.read(length, position);
+                long segmentLength = length.flip().getLong();
+                readSegment(channel.map(FileChannel.MapMode.READ_ONLY, position + Long.BYTES, segmentLength), source, listener);
+                position += Long.BYTES + segmentLength;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a writer for one segment of the snapshot of a source file.
+     * The segment only becomes part of the snapshot once {@link #commit(File, int)} is called for the file.
+     *
+     * @param source  The Genbank file that is being parsed.
+     * @param segment The index of the segment, in file order.
+     * @param hash    The hash of the raw bytes of the segment, updated while the segment is parsed, or null if unknown.
+     * @return the writer, to be closed once the segment is complete.
+     * @throws IOException if the segment cannot be created.
+     */
+    public SegmentWriter segment(File source, int segment, ContentHash hash) throws IOException {
+        File file = segmentFile(source, segment);
+        if (hash != null) {
+            hashes.put(file, hash);
+        } else {
+            hashes.remove(file);
+        }
+        return new SegmentWriter(file);
+    }
+
+    /**
+     * Combines the written segments of a source file into its snapshot, replacing the previous snapshot.
+     *
+     * @param source   The Genbank file that was parsed.
+     * @param segments The number of segments that were written.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void commit(File source, int segments) throws IOException {
+        Header header = new Header(source.getAbsolutePath(), source.length(), source.lastModified(), combine(source, segments), segments);
+        Path temporary = new File(directory, snapshotFile(source).getName() + ".tmp").toPath();
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            header.write(out);
+            out.position(header.length());
+            ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+            for (int i = 0; i < segments; i++) {
+                File segment = segmentFile(source, i);
+                try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+                    out.write(length.clear().putLong(in.size()).flip());
+                    long transferred = 0;
+                    while (transferred < in.size()) {
+                        transferred += in.transferTo(transferred, in.size() - transferred, out);
+                    }
+                }
+                Files.delete(segment.toPath());
+            }
+        }
+        Files.move(temporary, snapshotFile(source).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes snapshots of files in a directory that are no longer among the given source files.
+     * <p> Only snapshots whose source lies in the directory are removed, so snapshots of other data directories that
+     * share the cache directory are kept. The sources must be all Genbank files of the directory.
+     *
+     * @param scanned The directory whose Genbank files are given.
+     * @param sources All Genbank files that are currently present in the directory.
+     */
+    public void prune(File scanned, List<File> sources) {
+        Path parent = scanned.getAbsoluteFile().toPath().normalize();
+        List<String> names = new ArrayList<>();
+        for (File source : sources) {
+            names.add(snapshotFile(source).getName());
+        }
+        File[] snapshots = directory.listFiles((dir, name) -> name.endsWith(SUFFIX) && !names.contains(name));
+        if (snapshots == null) {
+            return;
+        }
+        for (File snapshot : snapshots) {
+            Header header;
+            try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+                header = Header.read(channel);
+            } catch (IOException e) {
+                continue;
+            }
+            // Snapshots that cannot be read are rebuilt or replaced when their source is parsed, and are kept here.
+            if (header == null || !parent.equals(Path.of(header.path).normalize().getParent())) {
+                continue;
+            }
+            if (!snapshot.delete()) {
+                System.err.println("Could not remove stale cache file " + snapshot);
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC32C hash of the raw contents of a file.
+     *
+     * @param file The file to hash.
+     * @return the hash.
+     * @throws IOException if the file cannot be read.
+     */
+    static long hash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[GenbankInput.BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Combines the hashes of the segments of a source file into the hash of the file.
+     * <p> The file is only read again if a segment has no hash, or if the segments did not read all bytes of the file,
+     * for example when the parser stopped early.
+     *
+     * @param source   The Genbank file that was parsed.
+     * @param segments The number of segments that were written.
+     * @return the CRC32C hash of the raw contents of the file.
+     * @throws IOException if the file has to be read and cannot be.
+     */
+    private long combine(File source, int segments) throws IOException {
+        long crc = 0;
+        long length = 0;
+        boolean complete = true;
+        for (int i = 0; i < segments; i++) {
+            ContentHash hash = hashes.remove(segmentFile(source, i));
+            if (hash == null) {
+                complete = false;
+                continue;
+            }
+            crc = combine(crc, hash.getValue(), hash.length());
+            length += hash.length();
+        }
+        return complete && length == source.length() ? crc : hash(source);
+    }
+
+    /**
+     * Computes the CRC32C of two consecutive byte ranges from the CRC32C of each range, without their bytes, as zlib's
+     * crc32_combine does: the first hash is shifted over the length of the second range by repeated squaring of the
+     * matrix that feeds one zero bit through the CRC register.
+     *
+     * @param first   The hash of the first range.
+     * @param second  The hash of the second range.
+     * @param length2 The number of bytes of the second range.
+     * @return the hash of both ranges together.
+     */
+    static long combine(long first, long second, long length2) {
+        if (length2 <= 0) {
+            return first;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // The operator for one zero bit, followed by those of two and four zero bits.
+        odd[0] = CRC32C_POLYNOMIAL;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = 1L << n - 1;
+        }
+        square(even, odd);
+        square(odd, even);
+        // Apply the operators of the set bits of the length in bytes, starting at one byte.
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                first = times(even, first);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                first = times(odd, first);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return first ^ second;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private File snapshotFile(File source) {
+        // The hash of the path keeps names unique when one cache directory is shared between data directories.
+        return new File(directory, source.getName() + "." + Integer.toHexString(source.getAbsolutePath().hashCode()) + SUFFIX);
+    }
+
+    private File segmentFile(File source, int segment) {
+        return new File(directory, snapshotFile(source).getName() + "." + segment + ".part");
+    }
+
+    /**
+     * Decodes the entries of one segment: the entries section, followed by the string table and a footer with the
+     * offset of the string table and the number of entries. The entries get the source file as the file of their record.
+     */
+    private static void readSegment(MappedByteBuffer buffer, File source, GenbankRecordListener listener) {
+        int footer = buffer.limit() - Long.BYTES - Integer.BYTES;
+        long tableOffset = buffer.getLong(footer);
+        int entries = buffer.getInt(footer + Long.BYTES);
+        buffer.position((int) tableOffset);
+        String[] strings = new String[buffer.getInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        buffer.position(0);
+        for (int i = 0; i < entries; i++) {
+            GenbankEntry entry = new GenbankEntry();
+            entry.setLocus(strings[buffer.getInt()]);
+            entry.setAccession(strings[buffer.getInt()]);
+            entry.setDefinition(strings[buffer.getInt()]);
+            entry.setFile(source);
+            entry.setOffset(buffer.getLong());
+            entry.setLength(buffer.getLong());
+            int references = buffer.getInt();
+            for (int r = 0; r < references; r++) {
+                GenbankReference reference = new GenbankReference();
+                reference.setTitle(strings[buffer.getInt()]);
+                reference.setJournal(strings[buffer.getInt()]);
+                reference.setPubmedId(buffer.getInt());
+                int authors = buffer.getInt();
+                for (int a = 0; a < authors; a++) {
+                    reference.addAuthor(strings[buffer.getInt()]);
+                }
+                entry.getReferences().add(reference);
+            }
+            listener.onEntry(entry);
+        }
+    }
+
+    /**
+     * The CRC32C hash of the raw bytes of a file, or of a chunk of it, updated while the bytes are read for parsing.
+     * It also counts the bytes, so {@link #commit(File, int)} can tell whether the whole file was read.
+     *
+     * <p> <strong> Example usage</strong> :
+     * <pre>
+     *         {@code
+     *         GenbankCache.ContentHash hash = new GenbankCache.ContentHash();
+     *         try (InputStream in = GenbankInput.open(file, hash);
+     *              GenbankCache.SegmentWriter writer = cache.segment(file, 0, hash)) {
+     *             GenbankParser.parseGenbankStream(file, 0, in, writer, null);
+     *         }
+     *         cache.commit(file, 1);
+     *         }
+     *         </pre>
+     */
+    public static final class ContentHash implements Checksum {
+        private final CRC32C crc = new CRC32C();
+        private long length;
+
+        @Override
+        public void update(int b) {
+            crc.update(b);
+            length++;
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public long getValue() {
+            return crc.getValue();
+        }
+
+        @Override
+        public void reset() {
+            crc.reset();
+            length = 0;
+        }
+
+        /**
+         * Returns the number of bytes that were hashed.
+         *
+         * @return the number of bytes.
+         */
+        public long length() {
+            return length;
+        }
+    }
+
+    /**
+     * Writes the entries of one parse task to a segment file, it can be used as a listener while parsing.
+     */
+    public static class SegmentWriter implements GenbankRecordListener, AutoCloseable {
+        private final DataOutputStream out;
+        /**
+         * Ids of the distinct strings of the segment, in order of first appearance.
+         */
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private int entries;
+
+        private SegmentWriter(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath()), GenbankInput.BUFFER_SIZE));
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            try {
+                out.writeInt(id(entry.getLocus()));
+                out.writeInt(id(entry.getAccession()));
+                out.writeInt(id(entry.getDefinition()));
+                out.writeLong(entry.getOffset());
+                out.writeLong(entry.getLength());
+                out.writeInt(entry.getReferences().size());
+                for (GenbankReference reference : entry.getReferences()) {
+                    out.writeInt(id(reference.getTitle()));
+                    out.writeInt(id(reference.getJournal()));
+                    out.writeInt(reference.getPubmedId());
+                    out.writeInt(reference.getAuthors().size());
+                    for (String author : reference.getAuthors()) {
+                        out.writeInt(id(author));
+                    }
+                }
+                entries++;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private int id(String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(string);
+            }
+            return id;
+        }
+
+        /**
+         * Writes the string table and footer and closes the segment file.
+         *
+         * @throws IOException if the segment cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            long tableOffset = out.size();
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeLong(tableOffset);
+            out.writeInt(entries);
+            out.close();
+        }
+    }
+
+    /**
+     * The key of a snapshot and the number of segments in it.
+     */
+    private static final class Header {
+        private final String path;
+        private final long size;
+        private long modified;
+        private final long hash;
+        private final int segments;
+
+        private Header(String path, long size, long modified, long hash, int segments) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.segments = segments;
+        }
+
+        private int length() {
+            return 2 * Integer.BYTES + Integer.BYTES + path.getBytes(StandardCharsets.UTF_8).length + 3 * Long.BYTES + Integer.BYTES;
+        }
+
+        private void write(FileChannel channel) throws IOException {
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(length());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(pathBytes.length).put(pathBytes)
+                    .putLong(size).putLong(modified).putLong(hash).putInt(segments);
+            channel.write(buffer.flip(), 0);
+        }
+
+        /**
+         * Reads the header at the start of a snapshot.
+         *
+         * @return the header, or null if the file is not a snapshot of the current version.
+         */
+        private static Header read(FileChannel channel) throws IOException {
+            ByteBuffer start = ByteBuffer.allocate(3 * Integer.BYTES);
+            if (channel.read(start, 0) < start.capacity() || start.getInt(0) != MAGIC || start.getInt(4) != VERSION) {
+                return null;
+            }
+            int pathLength = start.getInt(8);
+            ByteBuffer rest = ByteBuffer.allocate(pathLength + 3 * Long.BYTES + Integer.BYTES);
+            if (channel.read(rest, start.capacity()) < rest.capacity()) {
+                return null;
+            }
+            rest.flip();
+            byte[] pathBytes = new byte[pathLength];
+            rest.get(pathBytes);
+            return new Header(new String(pathBytes, StandardCharsets.UTF_8), rest.getLong(), rest.getLong(), rest.getLong(), rest.getInt());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.soko;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +19,7 @@ import java.util.List;
  * }
  * <p> <strong>Limitations:</strong>  Due to record classes being immutable and this class having mutable fields, this class is not a record class.
  * @see GenbankReference
+ * @see GenbankStore
  */
 public class GenbankEntry {
     /**
@@ -33,9 +35,16 @@ public class GenbankEntry {
      */
     private String definition = "unknown";
     /**
-     * The list of references of this entry.
+     * The list of references of this entry, created when it is first used so views in a {@link GenbankStore} do not allocate it.
      */
-    private List<GenbankReference> references = new ArrayList<>();
+    private List<GenbankReference> references;
+    /**
+     * The file this entry was parsed from and the byte range of its record in the uncompressed contents of the file,
+     * from its LOCUS line up to the next record. Null and -1 if the entry was not parsed from a file.
+     */
+    private File file;
+    private long offset = -1;
+    private long length;
 
     /*
     Getters and setters for the fields.
@@ -69,6 +78,9 @@ public class GenbankEntry {
     }
 
     public List<GenbankReference> getReferences() {
+        if (references == null) {
+            references = new ArrayList<>();
+        }
         return references;
     }
 
@@ -77,4 +89,28 @@ public class GenbankEntry {
         this.references = references;
     }
 
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
 }
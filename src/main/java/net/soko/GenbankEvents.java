@@ -0,0 +1,89 @@
+package net.soko;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class holds the JDK Flight Recorder events of the {@link GenbankExplorer}, recorded in the "Genbank" category.
+ * <p> Events are only recorded while a recording is running, for example when the program is started with
+ * {@code java -XX:StartFlightRecording=filename=genbank.jfr -jar genbank_explorer.jar ...}, and cost next to nothing otherwise.
+ *
+ * @see GenbankStats
+ */
+public final class GenbankEvents {
+    private GenbankEvents() {
+    }
+
+    /**
+     * A file, or a chunk of a file, that was parsed or read from the cache. The duration is the time of the parse task.
+     */
+    @Name("net.soko.FileParsed")
+    @Label("Genbank File Parsed")
+    @Category("Genbank")
+    @Description("A Genbank file or chunk of a file that was parsed or read from the cache")
+    public static final class FileParsed extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Cached")
+        @Description("Whether the entries were read from the cache instead of parsed")
+        boolean cached;
+
+        @Label("Bytes Read")
+        @Description("Uncompressed bytes read by the parser")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Records")
+        long records;
+
+        @Label("References")
+        long references;
+
+        @Label("Read Time")
+        @Description("Time spent reading and decompressing the input")
+        @Timespan
+        long readTime;
+
+        @Label("Listener Time")
+        @Description("Time spent handing entries to the query, store or cache")
+        @Timespan
+        long listenerTime;
+    }
+
+    /**
+     * An update of the index after files in a watched directory changed. The duration is the time of the update.
+     */
+    @Name("net.soko.WatchUpdate")
+    @Label("Genbank Watch Update")
+    @Category("Genbank")
+    @Description("Files of a watched directory that were loaded again or removed, and the index rebuilt from them")
+    public static final class Update extends Event {
+        @Label("Files Loaded")
+        int filesLoaded;
+
+        @Label("Files Removed")
+        int filesRemoved;
+
+        @Label("Entries")
+        @Description("Entries of all files after the update")
+        long entries;
+    }
+
+    /**
+     * A phase of a run of the explorer, such as ingest, query or write.
+     */
+    @Name("net.soko.Phase")
+    @Label("Genbank Phase")
+    @Category("Genbank")
+    @Description("A phase of a run of the Genbank explorer")
+    public static final class Phase extends Event {
+        @Label("Name")
+        String name;
+    }
+}
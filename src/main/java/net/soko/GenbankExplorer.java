@@ -6,10 +6,12 @@ import picocli.CommandLine;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 
 import static picocli.CommandLine.*;
 
@@ -17,7 +19,8 @@ import static picocli.CommandLine.*;
  * This class is the main class of the GenbankExplorer program used to explore Genbank Flat Files.
  * <p> More detailed information about how the Command Line Interface works can be found in the {@link CommandLine} documentation.
  * or on the <a href="https://picocli.info/">picocli website</a>.
- * <p> Makes use of the {@link GenbankParser} class to parse the Genbank Flat Files.
+ * <p> Makes use of the {@link GenbankParser} class to parse the Genbank Flat Files, through {@link GenbankLoader} when parsing in parallel.
+ * The selected option is evaluated as a {@link GenbankQuery} while the files are parsed, so memory use does not grow with the number of entries.
  *
  * <p> <strong> Example usage</strong>:
  * <pre>
@@ -32,10 +35,39 @@ import static picocli.CommandLine.*;
  *         <li> <strong>-p, --publications</strong>: Display all publications in listed files. </li>
  *         <li> <strong>-ba, --by-author</strong>: Enter an author to display all publications by that author. <p><em>Needs an exact match.</li>
  *         <li> <strong>-bp, --by-publication</strong>: Enter a publication to display all authors of that publication. <p><em>Can parse partial names.</li>
+ *         <li> <strong>-fa, --find-author</strong>: Enter part of an author's name to list the authors whose name starts with it or is spelled similarly. <p><em>Best matches first, with their number of references.</li>
+ *         <li> <strong>-ta, --top-authors</strong>: Enter a number k to display the k authors with the most publications. <p><em>Every author is listed with its number of publications, genomes and co-authors.</li>
+ *         <li> <strong>--rank-by</strong>: Rank --top-authors by publications, genomes or co-authors. <p><em>Defaults to publications.</li>
+ *         <li> <strong>-ca, --coauthors</strong>: Enter an author to display the co-authors of that author. <p><em>Needs an exact match, most shared publications first.</li>
+ *         <li> <strong>--path</strong>: Enter two authors to display a shortest chain of co-authors between them. <p><em>Needs exact matches.</li>
+ *         <li> <strong>--components</strong>: Display the number and sizes of the groups of authors connected by shared publications. </li>
+ *         <li> <strong>-s, --search</strong>: Enter an expression such as 'author:"Reilly,L.P." AND title~kinase AND NOT journal~Unpublished' to display the matching references. <p><em>Terms match a field exactly with ':' or by containing a text with '~', years by range such as year:2015..2020, see {@link GenbankExpression}.</li>
+ *         <li> <strong>--fetch</strong>: Enter one or more LOCUS names or accessions to display the full records of those entries. <p><em>The records are copied from the files, see {@link GenbankRecords}.</li>
+ *         <li> <strong>--motif</strong>: Enter one or more motifs of IUPAC codes, such as GAATTC or GANTC, to display where they occur in the sequences of the entries. <p><em>The ORIGIN blocks are packed at two bits per base and searched with a k-mer index, see {@link SequenceStore} and {@link KmerIndex}.</li>
+ *         <li> <strong>-q, --queries</strong>: Enter a file with one query per line, such as '-ba Reilly,L.P.', to evaluate all of them in one pass. <p><em>The results of every query start with its header.</li>
+ *         <li> <strong>--repl</strong>: Keep the files in memory and answer queries typed on std-in, in the format of a query file. </li>
+ *         <li> <strong>--serve</strong>: Keep the files in memory and answer queries sent to a port on localhost. <p><em>Every answer ends with an empty line.</li>
+ *         <li> <strong>--shard</strong>: Enter a file to parse the Genbank files, or those of --part, into a partial index written to that file. <p><em>Shards of the parts can be written by several processes or machines, see {@link GenbankShard}.</li>
+ *         <li> <strong>--merge</strong>: Enter a file to combine the shards ('.gbshard' files) in the directory into one shard written to that file. </li>
+ *         <li> <strong>--watch</strong>: With --repl or --serve, load files that are added or changed in the directory and drop removed files. <p><em>Only the changed files are parsed, see {@link GenbankWatcher}.</li>
  *         <li> <strong>-o, --output</strong>: The output file to write the results to. <p><em>Will create a new file in directory in case file is not found.</li>
+ *         <li> <strong>-z, --gzip</strong>: Gzip compress the results, also when writing to std-out. <p><em>Output files ending with '.gz' are always compressed.</li>
+ *         <li> <strong>--sort-memory</strong>: With -a or -p, keep at most this many megabytes of results in memory and sort the rest on disk. <p><em>Memory use no longer grows with the number of distinct results, see {@link ExternalSortedSet}.</li>
+ *         <li> <strong>--sort-dir</strong>: The directory to write the sorted runs of --sort-memory to. <p><em>Defaults to the temporary directory of the system.</li>
+ *         <li> <strong>--part</strong>: Enter k/n to only use part k of n parts of the Genbank files, e.g. 2/4. <p><em>The files are divided by size, the same way by every process.</li>
+ *         <li> <strong>-t, --threads</strong>: The number of files to parse in parallel. <p><em>Defaults to 1, which parses the files one after another.</li>
+ *         <li> <strong>--cache-dir</strong>: The directory to cache parsed files in. <p><em>Defaults to a '.genbank_cache' directory next to the Genbank files.</li>
+ *         <li> <strong>--rebuild-cache</strong>: Reparse all files and rebuild the cache. </li>
+ *         <li> <strong>--no-cache</strong>: Do not read or write the cache of parsed files. </li>
+ *         <li> <strong>--index</strong>: Build author, title and locus indexes while parsing and answer the query from them. </li>
+ *         <li> <strong>--pipeline</strong>: Read and decompress the files on background threads while they are parsed. <p><em>BGZF files are inflated in parallel.</li>
+ *         <li> <strong>--stats</strong>: Print bytes read, records, references, throughput and time per phase to std-err. </li>
+ *         <li> <strong>--stats-json</strong>: Write the same statistics as JSON to a file. <p><em>Runs also emit {@link GenbankEvents} for the JDK Flight Recorder.</li>
  *         <li> <strong>-h, --help</strong>: Display the help menu. </li>
  *         </ul>
- * <p><strong>  Limitations</strong> : The program does not support looking for multiple authors or publications at the same time.
+ * <p> Multiple authors and publications can be looked up at the same time with a query file, see {@link GenbankBatch}.
+ * <p> A directory with shards and no Genbank files is queried from its shards, so the partial indexes written by --shard
+ * can be queried without parsing the files again. Shards next to Genbank files are not read, as they hold the same entries.
  *
  * @see GenbankParser
  * @see CommandLine
@@ -43,7 +75,10 @@ import static picocli.CommandLine.*;
 @Command(name = "genbank_explorer", mixinStandardHelpOptions = true, version = "genbank_explorer 1.0",
         description = "Explore Genbank files")
 public class GenbankExplorer implements Callable<Integer> {
-
+    /**
+     * Number of blocks of {@link GenbankPipeline#BLOCK_SIZE} queued between the stages of --pipeline.
+     */
+    private static final int PIPELINE_DEPTH = 4;
 
     /**
      * Mandatory CL parameter: The directory with the Genbank files to explore.
@@ -84,14 +119,209 @@ public class GenbankExplorer implements Callable<Integer> {
         // Enter a publication to display all genomes that are associated with that publication.
         @Option(names = {"-pg", "--pub-genome"}, description = "Enter a publication to display all genomes that are associated with that publication.", required = true)
         private String pubGenome;
+
+        // Enter part of an author's name to list the authors whose name starts with it or is spelled similarly.
+        @Option(names = {"-fa", "--find-author"}, description = "Enter part of an author's name, e.g. 'Reily', to list the authors whose name starts with it or is spelled similarly.", required = true)
+        private String findAuthor;
+
+        // Enter a number to display the authors with the most publications, genomes or co-authors.
+        @Option(names = {"-ta", "--top-authors"}, paramLabel = "<k>", description = "Enter a number to display the authors with the most publications, see --rank-by.", required = true)
+        private Integer topAuthors;
+
+        // Enter an author to display all co-authors of that author.
+        @Option(names = {"-ca", "--coauthors"}, description = "Enter an author to display the co-authors of that author, with the number of shared publications.", required = true)
+        private String coauthors;
+
+        // Enter two authors to display a shortest chain of co-authors between them.
+        @Option(names = {"--path"}, arity = "2", paramLabel = "<author>", description = "Enter two authors to display a shortest chain of co-authors from the first to the second.", required = true)
+        private String[] path;
+
+        // Display statistics of the connected components of the co-authorship graph.
+        @Option(names = {"--components"}, description = "Display the number and sizes of the groups of authors connected by shared publications.", required = true)
+        private boolean components;
+
+        // Enter a search expression over the authors, titles, journals and loci of the references.
+        @Option(names = {"-s", "--search"}, paramLabel = "<expression>", description = "Enter an expression such as 'author:Reilly,L.P. AND title~kinase AND NOT journal~Unpublished' to display the matching references.", required = true)
+        private String search;
+
+        // Enter LOCUS names or accessions to display the full records of those entries.
+        @Option(names = {"--fetch"}, arity = "1..*", paramLabel = "<id>", description = "Enter one or more LOCUS names or accessions to display the full records of those entries.", required = true)
+        private String[] fetch;
+
+        // Enter motifs to display where they occur in the sequences of the entries.
+        @Option(names = {"--motif"}, arity = "1..*", paramLabel = "<motif>", description = "Enter one or more motifs of IUPAC codes, e.g. GAATTC or GANTC, to display where they occur in the sequences of the entries.", required = true)
+        private String[] motif;
+
+        // Enter a file with one query per line to evaluate all of them in one pass over the files.
+        @Option(names = {"-q", "--queries"}, description = "Enter a file with one query per line, e.g. '-ba Reilly,L.P.', to evaluate all of them in one pass.", required = true)
+        private File queries;
+
+        // Keep the files in memory and answer queries typed on std-in.
+        @Option(names = {"--repl"}, description = "Keep the files in memory and answer queries typed on std-in, e.g. '-ba Reilly,L.P.'.", required = true)
+        private boolean repl;
+
+        // Keep the files in memory and answer queries sent to a local port.
+        @Option(names = {"--serve"}, paramLabel = "<port>", description = "Keep the files in memory and answer queries sent to this port on localhost, one per line.", required = true)
+        private Integer port;
+
+        // Parse the files into a partial index written to a file.
+        @Option(names = {"--shard"}, paramLabel = "<file>", description = "Parse the files, or those of --part, into a partial index written to this file, e.g. part1" + GenbankShard.SUFFIX + ".", required = true)
+        private File shard;
+
+        // Combine the partial indexes in the directory into one.
+        @Option(names = {"--merge"}, paramLabel = "<file>", description = "Combine the shards (" + GenbankShard.SUFFIX + " files) in the directory into one shard written to this file.", required = true)
+        private File merge;
+
+        /**
+         * Creates the query for the selected option.
+         *
+         * @param rankBy What the top authors are ranked by.
+         * @param sorted The set to sort all authors or publications in, or null to sort them in memory.
+         * @return the query, or null if no option is selected.
+         */
+        GenbankQuery toQuery(GenbankQuery.TopAuthors.Measure rankBy, ExternalSortedSet sorted) {
+            if (authors) {
+                return new GenbankQuery.Authors(sorted);
+            } else if (publications) {
+                return new GenbankQuery.Publications(sorted);
+            } else if (byAuthor != null) {
+                return new GenbankQuery.ByAuthor(byAuthor);
+            } else if (byPublication != null) {
+                return new GenbankQuery.ByPublication(byPublication);
+            } else if (authGenome != null) {
+                return new GenbankQuery.AuthorGenomes(authGenome);
+            } else if (pubGenome != null) {
+                return new GenbankQuery.PublicationGenomes(pubGenome);
+            } else if (findAuthor != null) {
+                return new GenbankQuery.FindAuthor(findAuthor);
+            } else if (topAuthors != null) {
+                return new GenbankQuery.TopAuthors(topAuthors, rankBy);
+            } else if (coauthors != null) {
+                return new GenbankQuery.Coauthors(coauthors);
+            } else if (path != null) {
+                return new GenbankQuery.CollaborationPath(path[0], path[1]);
+            } else if (components) {
+                return new GenbankQuery.Components();
+            } else if (search != null) {
+                return new GenbankQuery.Search(search);
+            } else if (fetch != null) {
+                return new GenbankQuery.Fetch(List.of(fetch));
+            }
+            return null;
+        }
     }
 
+    /**
+     * Optional CL parameter: Keep the files of --repl and --serve up to date with the directory.
+     */
+    @Option(names = {"--watch"}, description = "With --repl or --serve, load files that are added or changed in the directory and drop removed files.")
+    private boolean watch;
+
+    /**
+     * Optional CL parameter: What --top-authors ranks the authors by.
+     */
+    @Option(names = {"--rank-by"}, paramLabel = "<measure>", description = "Rank --top-authors by publications, genomes or co-authors (default: ${DEFAULT-VALUE}).", defaultValue = "publications")
+    private GenbankQuery.TopAuthors.Measure rankBy;
+
     /**
      * Optional CL parameter: Write to a file instead of std-out.
      */
     @Option(names = {"-o", "--output"}, description = "Write to a file instead of std-out.")
     private File output;
 
+    /**
+     * Optional CL parameter: Gzip compress the results, output files ending with ".gz" are always compressed.
+     */
+    @Option(names = {"-z", "--gzip"}, description = "Gzip compress the results, also to std-out. Output files ending with .gz are always compressed.")
+    private boolean gzip;
+
+    /**
+     * Optional CL parameter: Sort the results of -a and -p on disk, keeping at most this many megabytes of them in memory.
+     */
+    @Option(names = {"--sort-memory"}, paramLabel = "<MB>", description = "With -a or -p, keep at most this many megabytes of results in memory and sort the rest on disk.")
+    private Integer sortMemory;
+
+    /**
+     * Optional CL parameter: Directory for the sorted runs of --sort-memory, defaults to the temporary directory of the system.
+     */
+    @Option(names = {"--sort-dir"}, description = "Directory to write the sorted runs of --sort-memory to (default: the system temporary directory).")
+    private File sortDirectory;
+
+    /**
+     * Optional CL parameter: Only use one part of the Genbank files, such as 2/4, to parse the files with several processes.
+     */
+    @Option(names = {"--part"}, paramLabel = "<k>/<n>", description = "Only use part k of n parts of the Genbank files, e.g. 2/4 with --shard. The files are divided by size.")
+    private String part;
+
+    /**
+     * Shards in the directory, read instead of Genbank files if the directory has none.
+     */
+    private final List<File> shards = new ArrayList<>();
+
+    /**
+     * Optional CL parameter: The number of files to parse at the same time.
+     * <p> The default of 1 parses the files one after another, results are the same for any number of threads.
+     */
+    @Option(names = {"-t", "--threads"}, description = "Number of files to parse in parallel (default: ${DEFAULT-VALUE}).", defaultValue = "1")
+    private int threads;
+
+    /**
+     * Optional CL parameter: Directory in which parsed files are cached, defaults to a hidden directory next to the Genbank files.
+     */
+    @Option(names = {"--cache-dir"}, description = "Directory to cache parsed files in (default: <directory>/" + GenbankCache.DEFAULT_DIRECTORY + ").")
+    private File cacheDirectory;
+
+    /**
+     * Optional CL parameter: Ignore and rebuild the cache of parsed files.
+     */
+    @Option(names = {"--rebuild-cache"}, description = "Reparse all files and rebuild the cache.")
+    private boolean rebuildCache;
+
+    /**
+     * Optional CL parameter: Build inverted indexes while parsing and answer the query from them, gives the same results.
+     */
+    @Option(names = {"--index"}, description = "Build author, title and locus indexes while parsing and answer the query from them.")
+    private boolean useIndex;
+
+    /**
+     * Optional CL parameter: Do not read or write the cache of parsed files.
+     */
+    @Option(names = {"--no-cache"}, description = "Do not read or write the cache of parsed files.")
+    private boolean noCache;
+
+    /**
+     * Optional CL parameter: Read and decompress the files in pipelined stages on background threads, gives the same results.
+     */
+    @Option(names = {"--pipeline"}, description = "Read and decompress the files on background threads while they are parsed.")
+    private boolean usePipeline;
+
+    /**
+     * Reads the files with --pipeline, null otherwise.
+     */
+    private GenbankPipeline pipeline;
+
+    /**
+     * Optional CL parameter: Print statistics of the files and the phases of the run to std-err.
+     */
+    @Option(names = {"--stats"}, description = "Print bytes, records, throughput and time per phase to std-err.")
+    private boolean printStats;
+
+    /**
+     * Optional CL parameter: Write the statistics of the run as JSON to a file.
+     */
+    @Option(names = {"--stats-json"}, paramLabel = "<file>", description = "Write bytes, records, throughput and time per phase as JSON to a file.")
+    private File statsJson;
+
+    /**
+     * Sorts the results of -a and -p with --sort-memory, null otherwise.
+     */
+    private ExternalSortedSet sorted;
+
+    /**
+     * Statistics of the run, also recorded as JDK Flight Recorder events.
+     */
+    private final GenbankStats stats = new GenbankStats();
+
     /**
      * Main method of the program.
      * <p> Parses the command line arguments and runs the program.
@@ -99,6 +329,13 @@ public class GenbankExplorer implements Callable<Integer> {
      * @throws Exception if unable to compute a result as per {@link Callable#call()}
      */
     public Integer call() throws Exception {
+        // Compressed results on std-out must not be preceded by plain text.
+        if (!gzip || output != null) {
+            System.out.println(System.getProperty("user.dir"));
+        }
+        if (usePipeline) {
+            pipeline = new GenbankPipeline(Runtime.getRuntime().availableProcessors(), PIPELINE_DEPTH);
+        }
         try {
             // Get all files in the directory and check if the directory exists / are valid
             if (!directory.exists()) {
@@ -110,184 +347,450 @@ public class GenbankExplorer implements Callable<Integer> {
                 System.err.println("Directory " + directory + " is not a directory");
                 return 1;
             }
-            ArrayList<GenbankEntry> entries = new ArrayList<>();
+            ArrayList<File> files = new ArrayList<>();
+            // The cache may be inside the directory, also when it is set with --cache-dir.
+            Path cacheDir = cacheDirectory().getAbsoluteFile().toPath().normalize();
             for (File file : contents) {
-                // Check if the file is a Genbank Flat File
-                if (file.getName().endsWith(".gbff")) {
-                    entries.addAll(GenbankParser.parseGenbankFile(file));
-                } else if (file.getName().endsWith(".gz")) {
-                    entries.addAll(GenbankParser.parseGenbankFile(GenbankParser.gUnzip(file)));
-                } else {
+                // Check if the file is a Genbank Flat File, compressed files are decompressed while they are parsed.
+                if (file.isDirectory() && file.getAbsoluteFile().toPath().normalize().equals(cacheDir)) {
+                    continue;
+                } else if (GenbankInput.isGenbankFile(file)) {
+                    files.add(file);
+                } else if (!GenbankShard.isShardFile(file) && !file.getName().endsWith(GenbankShard.SUFFIX + ".tmp")) {
                     System.err.println("File " + file + " is not a Genbank Flat File");
                 }
             }
-
-            // Give results based on the CL exclusive parameters.
-            // Display authors
-            if (exclusive.authors) {
-                // HashSet to store all unique authors from entries and ArrayList to sort them alphabetically.
-                HashSet<String> authors = new HashSet<>();
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        authors.addAll(reference.getAuthors());
-                    }
-                }
-                ArrayList<String> authorsList = new ArrayList<>(authors);
-                authorsList.sort(String::compareTo);
-                String outputString = output == null ? "Authors found:" : "Writing to file " + output;
-                System.out.println(outputString);
-                // Write to file if output is not null, otherwise print to std-out. This pattern is used for all other CL parameters as well.
-                for (String author : authorsList) {
-                    if (output != null) {
-                        writeToFile(output, author);
-                    } else {
-                        System.out.println(author);
-                    }
-                }
-                // Display publications
-            } else if (exclusive.publications) {
-                HashSet<String> publications = new HashSet<>();
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        publications.add(reference.getTitle());
-                    }
+            for (File shard : GenbankShard.list(directory)) {
+                // The shard that is being written is not an input.
+                if (!isTarget(shard)) {
+                    shards.add(shard);
                 }
-                ArrayList<String> publicationsList = new ArrayList<>(publications);
-                publicationsList.sort(String::compareTo);
-                String outputString = output == null ? "Publications found:" : "Writing to file " + output;
-                System.out.println(outputString);
-                for (String publication : publicationsList) {
-                    if (output != null) {
-                        writeToFile(output, publication);
-                    } else {
-                        System.out.println(publication);
-                    }
+            }
+            if (!files.isEmpty() && !shards.isEmpty() && exclusive.merge == null) {
+                // Shards written into the directory of their Genbank files would count every entry twice.
+                if (exclusive.shard == null) {
+                    System.err.println("Directory " + directory + " has both Genbank files and shards, the " + shards.size()
+                            + " shards are not read. Keep shards in a directory of their own.");
                 }
-                // Display publications by author
-            } else if (exclusive.byAuthor != null) {
-                HashSet<String> publications = new HashSet<>();
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        if (reference.getAuthors().contains(exclusive.byAuthor)) {
-                            publications.add(reference.getTitle());
-                        }
-                    }
+                shards.clear();
+            }
+            if (part != null) {
+                try {
+                    String[] parts = part.split("/", 2);
+                    files = new ArrayList<>(GenbankShard.part(files, Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[parts.length - 1].trim())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid --part " + part + ", expected k/n such as 2/4");
+                    return 1;
                 }
-                if (publications.isEmpty()) {
-                    System.out.println("No publications found for " + exclusive.byAuthor);
-                    System.out.println("Please type an exact match for the author's name. For example, \"Reilly,L.P.\" instead of \"Reilly\".");
-                } else {
-                    ArrayList<String> publicationsList = new ArrayList<>(publications);
-                    publicationsList.sort(String::compareTo);
-                    String outputString = output == null ? "Publications by " + exclusive.byAuthor + ":" : "Writing to file " + output;
-                    System.out.println(outputString);
-                    for (String publication : publicationsList) {
-                        if (output != null) {
-                            writeToFile(output, publication);
-                        } else {
-                            System.out.println(publication);
-                        }
-                    }
+            }
+            if (watch && !exclusive.repl && exclusive.port == null) {
+                System.err.println("--watch can only be used with --repl or --serve");
+                return 1;
+            }
+            if (watch && (part != null || !shards.isEmpty())) {
+                System.err.println("--watch cannot be used with --part or with shards in the directory");
+                return 1;
+            }
+            if (exclusive.shard != null) {
+                return runShard(files);
+            } else if (exclusive.merge != null) {
+                return runMerge();
+            } else if (exclusive.motif != null) {
+                return runMotif(files);
+            } else if (exclusive.queries != null) {
+                return runBatch(files);
+            } else if (exclusive.repl || exclusive.port != null) {
+                return runServer(files);
+            }
+            if (sortMemory != null && sortMemory <= 0) {
+                System.err.println("--sort-memory must be positive: " + sortMemory);
+                return 1;
+            }
+            if (sortMemory != null && (exclusive.authors || exclusive.publications)) {
+                File sortDir = sortDirectory != null ? sortDirectory : new File(System.getProperty("java.io.tmpdir"));
+                if (!sortDir.isDirectory()) {
+                    System.err.println("Directory " + sortDir + " is not a directory");
+                    return 1;
                 }
-                // Display authors by publication
-            } else if (exclusive.byPublication != null) {
-                HashSet<String> authors = new HashSet<>();
-                out:
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        if (reference.getTitle().contains(exclusive.byPublication)) {
-                            authors.addAll(reference.getAuthors());
-                            // Atari
-                            break out;
-                        }
-                    }
+                sorted = new ExternalSortedSet(sortDir, (long) sortMemory << 20);
+            }
+            GenbankQuery query;
+            try {
+                query = exclusive.toQuery(rankBy, sorted);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return 1;
+            }
+            if (query == null) {
+                // If no options are selected, print error message.
+                System.err.println("No options selected.\n" +
+                        "Use -h or --help for help.");
+                return 1;
+            }
+            return runQuery(files, query);
+        } catch (Exception e) {
+            throw new Exception(e);
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            if (sorted != null) {
+                sorted.close();
+            }
+        }
+    }
+
+    /**
+     * Evaluates a query of the exclusive parameters, while the files are parsed or from an index of them, and writes its results.
+     *
+     * @param files The Genbank files to explore.
+     * @param query The query to evaluate.
+     * @return the exit code.
+     * @throws IOException if a shard cannot be read or the results cannot be written.
+     */
+    private int runQuery(List<File> files, GenbankQuery query) throws IOException {
+        if (useIndex) {
+            // The entries are loaded into a compact store, which is indexed once all files are parsed.
+            GenbankStore store = stats.time("ingest", () -> loadStore(files));
+            GenbankIndex index = stats.time("index", () -> new GenbankIndex(store));
+            stats.time("query", () -> query.collect(index));
+        } else {
+            // The query is evaluated while the files are parsed, so entries are never kept in memory.
+            // Each parse task feeds its own copy of the query, the copies are merged in file order.
+            List<GenbankQuery> partials = stats.time("ingest", () -> stream(files, query::copy));
+            stats.time("query", () -> {
+                for (GenbankQuery partial : partials) {
+                    query.merge(partial);
                 }
-                if (authors.isEmpty()) {
-                    System.out.println("No authors found for " + exclusive.byPublication);
+            });
+        }
+
+        // Give results based on the CL exclusive parameters.
+        stats.time("write", () -> {
+            boolean empty = query.emptyMessage() != null && query.isEmpty();
+            if (empty && output != null) {
+                // Nothing is written to the output file, the message is meant for the user.
+                System.out.println(query.emptyMessage());
+                return;
+            }
+            // Write to file if output is not null, otherwise print to std-out. The output is opened once and buffered.
+            if (output != null) {
+                System.out.println("Writing to file " + output);
+            }
+            try (GenbankOutput sink = output != null ? GenbankOutput.toFile(output, compressOutput()) : GenbankOutput.toStdout(gzip)) {
+                // On std-out the message goes through the sink, so it is compressed like the results.
+                if (empty) {
+                    sink.writeLine(query.emptyMessage());
                 } else {
-                    ArrayList<String> authorsList = new ArrayList<>(authors);
-                    authorsList.sort(String::compareTo);
-                    String outputString = output == null ? "Authors of " + exclusive.byPublication + ":" : "Writing to file " + output;
-                    System.out.println(outputString);
-                    for (String author : authorsList) {
-                        if (output != null) {
-                            System.out.println("Output written to file: " + output.getName());
-                            writeToFile(output, author);
-                        } else {
-                            System.out.println(author);
-                        }
+                    if (output == null) {
+                        sink.writeLine(query.header());
                     }
+                    query.writeResults(sink);
                 }
-                // Display genomes by author
-            } else if (exclusive.authGenome != null) {
-                HashSet<String> locus = new HashSet<>();
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        if (reference.getAuthors().contains(exclusive.authGenome)) {
-                            locus.add(entry.getLocus());
-                        }
-                    }
-                }
-                if (locus.isEmpty()) {
-                    System.out.println("No genomes found for " + exclusive.authGenome);
-                    System.out.println("Please type an exact match for the author's name. For example, \"Reilly,L.P.\" instead of \"Reilly\".");
-                } else {
-                    ArrayList<String> locusList = new ArrayList<>(locus);
-                    locusList.sort(String::compareTo);
-                    String outputString = output == null ? "Genomes by " + exclusive.authGenome + ":" : "Writing to file " + output;
-                    System.out.println(outputString);
-                    for (String locusName : locusList) {
-                        if (output != null) {
-                            writeToFile(output, locusName);
-                        } else {
-                            System.out.println(locusName);
-                        }
+            }
+        });
+        reportStats();
+        return 0;
+    }
+
+    /**
+     * Parses the files into a store.
+     * <p> A directory with only shards, such as the output of --merge, is read without the file loader.
+     *
+     * @param files The Genbank files to parse.
+     * @return the store with the entries of the files or shards.
+     * @throws IOException if a shard cannot be read.
+     */
+    private GenbankStore loadStore(List<File> files) throws IOException {
+        if (files.isEmpty()) {
+            return GenbankShard.merge(shards);
+        }
+        GenbankCache cache = openCache();
+        GenbankStore store = GenbankLoader.loadStore(files, threads, cache, stats, pipeline);
+        pruneCache(cache, files);
+        return store;
+    }
+
+    /**
+     * Streams the files into listeners, and the entries of every shard in the directory into a listener of its own.
+     *
+     * @param files    The Genbank files to parse.
+     * @param listener Creates a listener for every parse task and shard.
+     * @return the listeners, files first and shards last.
+     * @throws IOException if a shard cannot be read.
+     */
+    private <L extends GenbankRecordListener> List<L> stream(List<File> files, Supplier<L> listener) throws IOException {
+        GenbankCache cache = openCache();
+        List<L> partials = new ArrayList<>(GenbankLoader.stream(files, threads, listener, cache, stats, pipeline));
+        pruneCache(cache, files);
+        for (File shard : shards) {
+            L partial = listener.get();
+            for (GenbankEntry entry : GenbankShard.merge(List.of(shard)).entries()) {
+                partial.onEntry(entry);
+            }
+            partials.add(partial);
+        }
+        return partials;
+    }
+
+    /**
+     * Parses the files into a store and writes it to the shard file of --shard.
+     *
+     * @param files The Genbank files of the shard.
+     * @return the exit code.
+     * @throws IOException if the shard cannot be written.
+     * @see GenbankShard
+     */
+    private int runShard(List<File> files) throws IOException {
+        GenbankCache cache = openCache();
+        GenbankStore store = stats.time("ingest", () -> GenbankLoader.loadStore(files, threads, cache, stats, pipeline));
+        pruneCache(cache, files);
+        System.out.println("Writing " + store.entryCount() + " entries of " + files.size() + " files to " + exclusive.shard);
+        stats.time("write", () -> GenbankShard.write(store, exclusive.shard));
+        reportStats();
+        return 0;
+    }
+
+    /**
+     * Combines the shards in the directory into one store and writes it to the shard file of --merge.
+     *
+     * @return the exit code.
+     * @throws IOException if a shard cannot be read or written.
+     * @see GenbankShard
+     */
+    private int runMerge() throws IOException {
+        if (shards.isEmpty()) {
+            System.err.println("Directory " + directory + " has no " + GenbankShard.SUFFIX + " files to merge");
+            return 1;
+        }
+        GenbankStore store = stats.time("merge", () -> GenbankShard.merge(shards));
+        System.out.println("Writing " + store.entryCount() + " entries of " + shards.size() + " shards to " + exclusive.merge);
+        stats.time("write", () -> GenbankShard.write(store, exclusive.merge));
+        reportStats();
+        return 0;
+    }
+
+    /**
+     * Parses the sequences of the files into a packed store, indexes their k-mers and writes the occurrences of every motif
+     * of --motif, as the LOCUS name of the entry and the position of the first base of the occurrence.
+     *
+     * @param files The Genbank files to search.
+     * @return the exit code.
+     * @throws IOException if the results cannot be written.
+     * @see KmerIndex
+     */
+    private int runMotif(List<File> files) throws IOException {
+        List<KmerIndex.Motif> motifs = new ArrayList<>();
+        try {
+            for (String motif : exclusive.motif) {
+                motifs.add(KmerIndex.Motif.parse(motif));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        if (!shards.isEmpty()) {
+            System.err.println("Shards do not hold sequences, the " + shards.size() + " shards in " + directory + " are not searched");
+        }
+        SequenceStore sequences = stats.time("ingest", () -> {
+            // The snapshots of the cache do not hold sequences, so the files are always parsed.
+            List<SequenceStore> parts = GenbankLoader.stream(files, threads, SequenceStore::new, null, stats, pipeline);
+            SequenceStore store = parts.isEmpty() ? new SequenceStore() : parts.get(0);
+            for (SequenceStore part : parts.subList(Math.min(1, parts.size()), parts.size())) {
+                store.merge(part);
+            }
+            return store;
+        });
+        KmerIndex index = stats.time("index", () -> new KmerIndex(sequences));
+        System.err.println("Loaded " + sequences.count() + " sequences of " + sequences.size() + " bases into " + (sequences.memory() >> 10)
+                + " KB, k-mer index of " + (index.memory() >> 10) + " KB");
+        List<long[]> matches = new ArrayList<>();
+        stats.time("query", () -> {
+            for (KmerIndex.Motif motif : motifs) {
+                matches.add(index.find(motif));
+            }
+        });
+        if (output != null) {
+            System.out.println("Writing to file " + output);
+        }
+        stats.time("write", () -> {
+            try (GenbankOutput sink = output != null ? GenbankOutput.toFile(output, compressOutput()) : GenbankOutput.toStdout(gzip)) {
+                for (int m = 0; m < motifs.size(); m++) {
+                    long[] positions = matches.get(m);
+                    if (positions.length == 0) {
+                        sink.writeLine("No occurrences of motif " + motifs.get(m) + " found");
+                        continue;
                     }
-                }
-                // Display genomes by publication
-            } else if (exclusive.pubGenome != null) {
-                HashSet<String> locus = new HashSet<>();
-                for (GenbankEntry entry : entries) {
-                    for (GenbankReference reference : entry.getReferences()) {
-                        if (reference.getTitle().contains(exclusive.pubGenome)) {
-                            locus.add(entry.getLocus());
+                    sink.writeLine("Occurrences of motif " + motifs.get(m) + ":");
+                    int sequence = 0;
+                    for (long position : positions) {
+                        // Positions are sorted, so the sequence only moves forward.
+                        while (sequences.end(sequence) <= position) {
+                            sequence++;
                         }
+                        sink.writeLine(sequences.locus(sequence) + ":" + (position - sequences.start(sequence) + 1));
                     }
                 }
-                if (locus.isEmpty()) {
-                    System.out.println("No genomes found for " + exclusive.pubGenome);
-                } else {
-                    ArrayList<String> locusList = new ArrayList<>(locus);
-                    locusList.sort(String::compareTo);
-                    String outputString = output == null ? "Genomes of " + exclusive.pubGenome + ":" : "Writing to file " + output;
-                    System.out.println(outputString);
-                    for (String locusName : locusList) {
-                        if (output != null) {
-                            writeToFile(output, locusName);
-                        } else {
-                            System.out.println(locusName);
-                        }
-                    }
+            }
+        });
+        reportStats();
+        return 0;
+    }
+
+    /**
+     * Checks whether a file is the shard written by --shard or --merge.
+     *
+     * @param file A file in the directory.
+     * @return true if it is the output of this run.
+     */
+    private boolean isTarget(File file) {
+        File target = exclusive.shard != null ? exclusive.shard : exclusive.merge;
+        return target != null && target.getAbsoluteFile().toPath().normalize().equals(file.getAbsoluteFile().toPath().normalize());
+    }
+
+    /**
+     * Opens the cache of parsed files, unless it is disabled.
+     * <p> If the cache directory cannot be created, a warning is printed and the files are parsed without a cache.
+     *
+     * @return the cache, or null if no cache is used.
+     */
+    private GenbankCache openCache() {
+        if (noCache) {
+            return null;
+        }
+        File cacheDir = cacheDirectory();
+        try {
+            return new GenbankCache(cacheDir, rebuildCache);
+        } catch (IOException e) {
+            System.err.println("Cache directory " + cacheDir + " cannot be used, parsing without cache");
+            return null;
+        }
+    }
+
+    /**
+     * Returns the directory of the cache of parsed files, the one of --cache-dir or the default inside the directory.
+     *
+     * @return the cache directory, which may not exist yet.
+     */
+    private File cacheDirectory() {
+        return cacheDirectory != null ? cacheDirectory : new File(directory, GenbankCache.DEFAULT_DIRECTORY);
+    }
+
+    /**
+     * Removes the snapshots of files that are no longer in the directory from the cache, once the files are loaded.
+     * <p> With --part, the files of the other parts are not loaded and their snapshots may be in use by other processes,
+     * so nothing is removed.
+     *
+     * @param cache The cache the files were loaded with, or null.
+     * @param files The Genbank files that were loaded.
+     */
+    private void pruneCache(GenbankCache cache, List<File> files) {
+        if (cache != null && part == null) {
+            cache.prune(directory, files);
+        }
+    }
+
+    /**
+     * Evaluates all queries of the query file in one pass over the files, or one probe of the indexes, and writes the
+     * results of every query to the output.
+     *
+     * @param files The Genbank files to explore.
+     * @return the exit code.
+     * @throws IOException if the results cannot be written.
+     * @see GenbankBatch
+     */
+    private int runBatch(List<File> files) throws IOException {
+        GenbankBatch batch;
+        try {
+            batch = GenbankBatch.read(exclusive.queries);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Unable to read queries from " + exclusive.queries + ": " + e.getMessage());
+            return 1;
+        }
+        if (useIndex) {
+            GenbankStore store = stats.time("ingest", () -> loadStore(files));
+            GenbankIndex index = stats.time("index", () -> new GenbankIndex(store));
+            stats.time("query", () -> batch.collect(index));
+        } else {
+            List<GenbankBatch> partials = stats.time("ingest", () -> stream(files, batch::copy));
+            stats.time("query", () -> {
+                for (GenbankBatch partial : partials) {
+                    batch.merge(partial);
                 }
-                // If no options are selected, print error message.
+            });
+        }
+        if (output != null) {
+            System.out.println("Writing to file " + output);
+        }
+        stats.time("write", () -> {
+            try (GenbankOutput sink = output != null ? GenbankOutput.toFile(output, compressOutput()) : GenbankOutput.toStdout(gzip)) {
+                batch.write(sink);
+            }
+        });
+        reportStats();
+        return 0;
+    }
+
+    /**
+     * Parses and indexes the files once, and answers queries until std-in ends or the program is stopped.
+     * <p> With --watch, files that change in the meantime are parsed again and the index is replaced, see {@link GenbankWatcher}.
+     *
+     * @param files The Genbank files to explore.
+     * @return the exit code.
+     * @throws IOException if reading queries or writing results fails.
+     * @see GenbankServer
+     */
+    private int runServer(List<File> files) throws IOException {
+        long start = System.nanoTime();
+        GenbankWatcher watcher = watch ? stats.time("ingest", () -> new GenbankWatcher(directory, files, threads, openCache(), stats, pipeline)) : null;
+        GenbankStore store = stats.time("ingest", () -> watcher != null ? watcher.store() : loadStore(files));
+        GenbankServer server = stats.time("index", () -> new GenbankServer(new GenbankIndex(store)));
+        System.err.println("Loaded " + store.entryCount() + " entries in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        reportStats();
+        try (watcher) {
+            if (watcher != null) {
+                watcher.start(server);
+            }
+            if (exclusive.port != null) {
+                server.serve(exclusive.port);
             } else {
-                System.err.println("No options selected.\n" +
-                        "Use -h or --help for help.");
+                server.repl(System.in, System.out);
             }
+        }
+        return 0;
+    }
 
-        } catch (Exception e) {
-            throw new Exception(e);
+    /**
+     * Prints the statistics of the run to std-err and writes them as JSON, if requested.
+     *
+     * @throws IOException if the JSON file cannot be written.
+     */
+    private void reportStats() throws IOException {
+        if (printStats) {
+            stats.print(System.err);
+        }
+        if (statsJson != null) {
+            Files.writeString(statsJson.toPath(), stats.toJson() + System.lineSeparator());
         }
+    }
 
-        return 0;
+    /**
+     * Checks whether results written to the output file should be gzip compressed.
+     *
+     * @return true if requested with --gzip or if the output file ends with ".gz".
+     */
+    private boolean compressOutput() {
+        return gzip || output.getName().endsWith(".gz");
     }
 
     /**
      * Writes a string to a file, if the file does not exist, it will be created.
+     * <p> The file is opened and closed for every call, use {@link GenbankOutput} to write many lines.
      *
      * @param file The file to write to.
      * @param text The text to write.
      */
+    @SuppressWarnings("unused")
     public static void writeToFile(@NotNull File file, String text) {
         text += System.lineSeparator();
         try {
@@ -302,8 +805,9 @@ public class GenbankExplorer implements Callable<Integer> {
     }
 
     public static void main(String[] args) {
-        System.out.println(System.getProperty("user.dir"));
-        int exitCode = new CommandLine(new GenbankExplorer()).execute(args);
+        CommandLine commandLine = new CommandLine(new GenbankExplorer());
+        commandLine.registerConverter(GenbankQuery.TopAuthors.Measure.class, GenbankQuery.TopAuthors.Measure::parse);
+        int exitCode = commandLine.execute(args);
         System.exit(exitCode);
     }
 }
@@ -0,0 +1,382 @@
+package net.soko;
+
+/**
+ * This class represents a search expression over the references of the Genbank files, which combines conditions on the
+ * author, title, journal, LOCUS name, year and PubMed ID of a reference with AND, OR and NOT, for example:
+ * <pre>
+ *     author:"Reilly,L.P." AND title~kinase AND NOT journal~"Unpublished"
+ *     (locus:NC_000913 OR locus:U00096) AND NOT title~"Direct Submission"
+ *     year:2015..2020 AND NOT pubmed:12345
+ * </pre>
+ * <p> A term is a field, followed by ':' for a value the field must equal, or by '~' for a text the field must contain.
+ * The year of the journal, see {@link GenbankJournal}, and the PubMed ID are numbers, which only take ':'. A year can be
+ * a range such as 2015..2020, where either end can be left out.
+ * Values are case-sensitive and need double quotes if they contain spaces or parentheses, a quote inside a quoted value is
+ * written as \". A reference matches an author term if any of its authors matches. NOT binds tightest, then AND, then OR,
+ * and parentheses group terms. The keywords are case-insensitive.
+ * <p> An expression can be evaluated in two ways, which give the same references:
+ * <ul>
+ *     <li> {@link #matches(GenbankEntry, GenbankReference)} tests a single reference while the files are parsed, </li>
+ *     <li> {@link #evaluate(ReferenceBitmaps)} combines the bitmap postings of the terms with set operations, NOT is
+ *     taken against all references, and AND NOT is a single and-not of the two bitmaps. </li>
+ * </ul>
+ * Expressions are not modified after they are parsed and can be shared between threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankExpression expression = GenbankExpression.parse("author:\"Reilly,L.P.\" AND NOT title~kinase");
+ *         Bitmap references = expression.evaluate(index.referenceBitmaps());
+ *         }
+ *         </pre>
+ *
+ * @see GenbankQuery.Search
+ * @see ReferenceBitmaps
+ */
+public abstract class GenbankExpression {
+    /**
+     * The fields of a reference that terms can match.
+     */
+    public enum Field {
+        AUTHOR, TITLE, JOURNAL, LOCUS, YEAR, PUBMED;
+
+        /**
+         * Returns whether the values of the field are numbers, which are matched exactly or by range.
+         */
+        boolean isNumeric() {
+            return this == YEAR || this == PUBMED;
+        }
+
+        /**
+         * Returns the field with a name.
+         *
+         * @param name The name of the field, case-insensitive.
+         * @return the field, or null if there is no field with that name.
+         */
+        static Field parse(String name) {
+            for (Field field : values()) {
+                if (field.toString().equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Tests whether a reference matches the expression.
+     *
+     * @param entry     The entry of the reference.
+     * @param reference The reference.
+     * @return true if the reference matches.
+     */
+    public abstract boolean matches(GenbankEntry entry, GenbankReference reference);
+
+    /**
+     * Finds the references that match the expression.
+     *
+     * @param bitmaps The postings of the terms.
+     * @return the ids of the matching references, the bitmap must not be modified.
+     */
+    public abstract Bitmap evaluate(ReferenceBitmaps bitmaps);
+
+    /**
+     * Parses an expression, see the class documentation for the syntax.
+     *
+     * @param text The expression.
+     * @return the parsed expression.
+     * @throws IllegalArgumentException if the text is not a valid expression.
+     */
+    public static GenbankExpression parse(String text) {
+        Parser parser = new Parser(text);
+        GenbankExpression expression = parser.or();
+        parser.skipSpaces();
+        if (parser.position < text.length()) {
+            throw parser.error("expected AND, OR or the end of the expression");
+        }
+        return expression;
+    }
+
+    /**
+     * A condition on one field of a reference.
+     */
+    static final class Term extends GenbankExpression {
+        private final Field field;
+        private final boolean exact;
+        private final String value;
+        /**
+         * The range of a numeric field, inclusive.
+         */
+        private final int from;
+        private final int to;
+
+        Term(Field field, boolean exact, String value, int from, int to) {
+            this.field = field;
+            this.exact = exact;
+            this.value = value;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean matches(GenbankEntry entry, GenbankReference reference) {
+            return switch (field) {
+                case AUTHOR -> exact ? reference.getAuthors().contains(value) : reference.getAuthors().stream().anyMatch(this::test);
+                case TITLE -> test(reference.getTitle());
+                case JOURNAL -> test(reference.getJournal());
+                case LOCUS -> test(entry.getLocus());
+                case YEAR -> test(reference.getCitation().year());
+                case PUBMED -> test(reference.getPubmedId());
+            };
+        }
+
+        private boolean test(String string) {
+            return exact ? string.equals(value) : string.contains(value);
+        }
+
+        /**
+         * Tests a number, 0 is an unknown year or a missing PubMed ID and never matches.
+         */
+        private boolean test(int number) {
+            return number > 0 && number >= from && number <= to;
+        }
+
+        @Override
+        public Bitmap evaluate(ReferenceBitmaps bitmaps) {
+            return field.isNumeric() ? bitmaps.range(field, from, to) : bitmaps.term(field, exact, value);
+        }
+
+        @Override
+        public String toString() {
+            if (field.isNumeric()) {
+                return field + ":" + value;
+            }
+            return field + (exact ? ":" : "~") + '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+
+    static final class And extends GenbankExpression {
+        private final GenbankExpression left;
+        private final GenbankExpression right;
+
+        And(GenbankExpression left, GenbankExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(GenbankEntry entry, GenbankReference reference) {
+            return left.matches(entry, reference) && right.matches(entry, reference);
+        }
+
+        @Override
+        public Bitmap evaluate(ReferenceBitmaps bitmaps) {
+            // A negated side is left out of the other side, instead of being complemented first.
+            if (right instanceof Not not) {
+                return left instanceof Not ? left.evaluate(bitmaps).andNot(not.operand.evaluate(bitmaps))
+                        : andNot(left, not.operand, bitmaps);
+            }
+            if (left instanceof Not not) {
+                return andNot(right, not.operand, bitmaps);
+            }
+            Bitmap matches = left.evaluate(bitmaps);
+            return matches.isEmpty() ? matches : matches.and(right.evaluate(bitmaps));
+        }
+
+        private static Bitmap andNot(GenbankExpression included, GenbankExpression excluded, ReferenceBitmaps bitmaps) {
+            Bitmap matches = included.evaluate(bitmaps);
+            return matches.isEmpty() ? matches : matches.andNot(excluded.evaluate(bitmaps));
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " AND " + right + ")";
+        }
+    }
+
+    static final class Or extends GenbankExpression {
+        private final GenbankExpression left;
+        private final GenbankExpression right;
+
+        Or(GenbankExpression left, GenbankExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(GenbankEntry entry, GenbankReference reference) {
+            return left.matches(entry, reference) || right.matches(entry, reference);
+        }
+
+        @Override
+        public Bitmap evaluate(ReferenceBitmaps bitmaps) {
+            return left.evaluate(bitmaps).or(right.evaluate(bitmaps));
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " OR " + right + ")";
+        }
+    }
+
+    static final class Not extends GenbankExpression {
+        private final GenbankExpression operand;
+
+        Not(GenbankExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean matches(GenbankEntry entry, GenbankReference reference) {
+            return !operand.matches(entry, reference);
+        }
+
+        @Override
+        public Bitmap evaluate(ReferenceBitmaps bitmaps) {
+            return bitmaps.all().andNot(operand.evaluate(bitmaps));
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+
+    /**
+     * Recursive descent parser over the text of an expression.
+     */
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        GenbankExpression or() {
+            GenbankExpression expression = and();
+            while (keyword("OR")) {
+                expression = new Or(expression, and());
+            }
+            return expression;
+        }
+
+        GenbankExpression and() {
+            GenbankExpression expression = unary();
+            while (keyword("AND")) {
+                expression = new And(expression, unary());
+            }
+            return expression;
+        }
+
+        GenbankExpression unary() {
+            if (keyword("NOT")) {
+                return new Not(unary());
+            }
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == '(') {
+                position++;
+                GenbankExpression expression = or();
+                skipSpaces();
+                if (position == text.length() || text.charAt(position) != ')') {
+                    throw error("expected )");
+                }
+                position++;
+                return expression;
+            }
+            return term();
+        }
+
+        Term term() {
+            int start = position;
+            while (position < text.length() && Character.isLetter(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a term such as author:\"Reilly,L.P.\"");
+            }
+            Field field = Field.parse(text.substring(start, position));
+            if (field == null) {
+                position = start;
+                throw error("unknown field " + text.substring(start).split("[^A-Za-z]", 2)[0] + ", expected author, title, journal, locus, year or pubmed");
+            }
+            if (position == text.length() || (text.charAt(position) != ':' && text.charAt(position) != '~')) {
+                throw error("expected : or ~ after " + field);
+            }
+            boolean exact = text.charAt(position++) == ':';
+            int valueStart = position;
+            String value = value();
+            if (!field.isNumeric()) {
+                return new Term(field, exact, value, 0, 0);
+            }
+            if (!exact) {
+                position = valueStart - 1;
+                throw error(field + " takes a number after :");
+            }
+            int dots = field == Field.YEAR ? value.indexOf("..") : -1;
+            try {
+                int from = dots < 0 ? Integer.parseInt(value) : dots == 0 ? 1 : Integer.parseInt(value.substring(0, dots));
+                int to = dots < 0 ? from : dots + 2 == value.length() ? Integer.MAX_VALUE : Integer.parseInt(value.substring(dots + 2));
+                return new Term(field, true, value, from, to);
+            } catch (NumberFormatException e) {
+                position = valueStart;
+                throw error("expected " + (field == Field.YEAR ? "a year or a range of years such as 2015..2020" : "a PubMed ID") + ", got " + value);
+            }
+        }
+
+        String value() {
+            if (position < text.length() && text.charAt(position) == '"') {
+                StringBuilder value = new StringBuilder();
+                for (position++; position < text.length(); position++) {
+                    char c = text.charAt(position);
+                    if (c == '"') {
+                        position++;
+                        return value.toString();
+                    }
+                    if (c == '\\' && position + 1 < text.length()) {
+                        c = text.charAt(++position);
+                    }
+                    value.append(c);
+                }
+                throw error("unterminated quoted value");
+            }
+            int start = position;
+            while (position < text.length() && !Character.isWhitespace(text.charAt(position)) && "()\"".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a value");
+            }
+            return text.substring(start, position);
+        }
+
+        /**
+         * Consumes a keyword if it is next, followed by a space or a parenthesis.
+         */
+        boolean keyword(String keyword) {
+            skipSpaces();
+            int end = position + keyword.length();
+            if (text.regionMatches(true, position, keyword, 0, keyword.length())
+                    && (end == text.length() || Character.isWhitespace(text.charAt(end)) || text.charAt(end) == '(')) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid expression at position " + (position + 1) + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class holds inverted indexes over the references of a {@link GenbankStore}, so author, title and locus lookups cost
+ * about the size of their result instead of the size of the corpus.
+ * <p> References and entries are numbered in the order in which they were parsed. Next to the reference to entry and
+ * entry to locus columns of the store, the index consists of:
+ * <ul>
+ *     <li> author to reference postings, </li>
+ *     <li> title to reference postings, over the distinct titles, </li>
+ *     <li> a trigram index over the distinct titles, for titles containing a given text, </li>
+ *     <li> an {@link AuthorSearch} over the distinct authors, for names that are not known exactly, built on first use, </li>
+ *     <li> a {@link CoauthorGraph} of the authors that share a publication, built on first use, </li>
+ *     <li> LOCUS name and primary accession to entry postings, for reading the records of entries, built on first use, </li>
+ *     <li> {@link ReferenceBitmaps} of the authors, titles, journals and loci, for search expressions, built on first use, </li>
+ *     <li> references sorted by the year of their journal and by PubMed ID, for range and exact lookups with a binary
+ *     search, built on first use. </li>
+ * </ul>
+ * All postings are sorted lists of ids, so the first posting of a title is its first reference in file order.
+ * The postings are keyed by the dictionary ids of the store, so the index does not hold a second copy of any string.
+ * <p> The index is built in one pass over the store once ingest is done. Afterwards it is only read and can be shared between threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankStore store = new GenbankStore();
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, store, null);
+ *         }
+ *         GenbankIndex index = new GenbankIndex(store);
+ *         Set<String> publications = index.titlesByAuthor("Reilly,L.P.");
+ *         }
+ *         </pre>
+ *
+ * @see GenbankQuery#collect(GenbankIndex)
+ */
+public class GenbankIndex {
+    /**
+     * Length of the substrings of titles that are indexed, queries shorter than this scan the distinct titles.
+     */
+    private static final int GRAM = 3;
+
+    private final GenbankStore store;
+    /**
+     * Reference postings of every author id and title id of the store.
+     */
+    private final List<IntList> authorReferences = new ArrayList<>();
+    private final List<IntList> titleReferences = new ArrayList<>();
+    /**
+     * Title id postings of every trigram, the three characters are packed into a long.
+     */
+    private final Map<Long, IntList> titleTrigrams = new HashMap<>();
+    /**
+     * Fuzzy and prefix search over the authors, built on first use.
+     */
+    private volatile AuthorSearch authorSearch;
+    /**
+     * Co-authorship graph, built on first use.
+     */
+    private volatile CoauthorGraph coauthorGraph;
+    /**
+     * Entry postings of every LOCUS name and primary accession, built on first use.
+     */
+    private volatile Map<String, IntList> entryIds;
+    /**
+     * Bitmap postings of the search expressions, built on first use.
+     */
+    private volatile ReferenceBitmaps referenceBitmaps;
+    /**
+     * References sorted by year and by PubMed ID, built on first use.
+     */
+    private volatile SortedPostings yearPostings;
+    private volatile SortedPostings pubmedPostings;
+
+    /**
+     * Builds the indexes of all references in a store.
+     *
+     * @param store The store to index, it must not change afterwards.
+     */
+    public GenbankIndex(GenbankStore store) {
+        this.store = store;
+        for (int a = 0; a < store.authors().size(); a++) {
+            authorReferences.add(new IntList(4));
+        }
+        StringDictionary titles = store.titles();
+        for (int t = 0; t < titles.size(); t++) {
+            titleReferences.add(new IntList(2));
+            indexTrigrams(titles.get(t), t);
+        }
+        // References are visited in order, so every posting list is sorted.
+        for (int r = 0; r < store.referenceCount(); r++) {
+            titleReferences.get(store.referenceTitle(r)).add(r);
+            for (int i = store.authorStart(r); i < store.authorEnd(r); i++) {
+                authorReferences.get(store.author(i)).add(r);
+            }
+        }
+    }
+
+    public GenbankStore getStore() {
+        return store;
+    }
+
+    private void indexTrigrams(String title, int id) {
+        // Title ids are indexed in increasing order, so every trigram posting list stays sorted.
+        for (int i = 0; i + GRAM <= title.length(); i++) {
+            IntList postings = titleTrigrams.computeIfAbsent(trigram(title, i), key -> new IntList(4));
+            if (postings.last() != id) {
+                postings.add(id);
+            }
+        }
+    }
+
+    private static long trigram(String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+
+    /*
+    Lookups used by the queries of the explorer.
+     */
+
+    /**
+     * Returns all distinct authors.
+     *
+     * @return an unmodifiable list of the authors, in order of first appearance.
+     */
+    public List<String> authors() {
+        return store.authors().strings();
+    }
+
+    /**
+     * Returns all distinct publication titles.
+     *
+     * @return an unmodifiable list of the titles, in order of first appearance.
+     */
+    public List<String> titles() {
+        return store.titles().strings();
+    }
+
+    /**
+     * Returns the titles of all publications by an author.
+     *
+     * @param author The exact name of the author.
+     * @return the distinct titles.
+     */
+    public Set<String> titlesByAuthor(String author) {
+        Set<String> result = new HashSet<>();
+        IntList references = referencesByAuthor(author);
+        for (int i = 0; i < references.size(); i++) {
+            result.add(store.titles().get(store.referenceTitle(references.get(i))));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the loci of all entries with a publication by an author.
+     *
+     * @param author The exact name of the author.
+     * @return the distinct loci.
+     */
+    public Set<String> lociByAuthor(String author) {
+        Set<String> result = new HashSet<>();
+        IntList references = referencesByAuthor(author);
+        for (int i = 0; i < references.size(); i++) {
+            result.add(locusOf(references.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the loci of all entries with a publication whose title contains the given text.
+     *
+     * @param text The text to look for, case-sensitive.
+     * @return the distinct loci.
+     */
+    public Set<String> lociByTitle(String text) {
+        Set<String> result = new HashSet<>();
+        IntList matches = titlesContaining(text);
+        for (int i = 0; i < matches.size(); i++) {
+            IntList references = titleReferences.get(matches.get(i));
+            for (int j = 0; j < references.size(); j++) {
+                result.add(locusOf(references.get(j)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the authors of the first publication, in file order, whose title contains the given text.
+     *
+     * @param text The text to look for, case-sensitive.
+     * @return the authors, or an empty set if no title contains the text.
+     */
+    public Set<String> authorsOfFirstTitle(String text) {
+        Set<String> result = new HashSet<>();
+        IntList matches = titlesContaining(text);
+        int first = Integer.MAX_VALUE;
+        for (int i = 0; i < matches.size(); i++) {
+            // Postings are sorted, so the first posting is the first reference with this title.
+            first = Math.min(first, titleReferences.get(matches.get(i)).get(0));
+        }
+        if (first != Integer.MAX_VALUE) {
+            for (int i = store.authorStart(first); i < store.authorEnd(first); i++) {
+                result.add(store.authors().get(store.author(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the search engine over the authors, for names that are not known exactly.
+     * <p> It is built on first use, as most runs only look up exact names, and then kept for later lookups.
+     *
+     * @return the author search, ranking authors with the same distance by their number of references.
+     */
+    public AuthorSearch authorSearch() {
+        AuthorSearch search = authorSearch;
+        if (search == null) {
+            synchronized (this) {
+                search = authorSearch;
+                if (search == null) {
+                    int[] references = new int[authorReferences.size()];
+                    for (int a = 0; a < references.length; a++) {
+                        references[a] = authorReferences.get(a).size();
+                    }
+                    search = new AuthorSearch(authors(), references);
+                    authorSearch = search;
+                }
+            }
+        }
+        return search;
+    }
+
+    /**
+     * Returns the co-authorship graph of all references, it is built on first use and then kept for later lookups.
+     *
+     * @return the graph over the author ids of the store.
+     */
+    public CoauthorGraph coauthorGraph() {
+        CoauthorGraph graph = coauthorGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = coauthorGraph;
+                if (graph == null) {
+                    graph = new CoauthorGraph(this);
+                    coauthorGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the bitmap postings of the references, they are built on first use and then kept for later expressions.
+     *
+     * @return the bitmaps over the reference ids of the store.
+     */
+    public ReferenceBitmaps referenceBitmaps() {
+        ReferenceBitmaps bitmaps = referenceBitmaps;
+        if (bitmaps == null) {
+            synchronized (this) {
+                bitmaps = referenceBitmaps;
+                if (bitmaps == null) {
+                    bitmaps = new ReferenceBitmaps(this);
+                    referenceBitmaps = bitmaps;
+                }
+            }
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Returns the entries with a LOCUS name or primary accession. The postings are built on first use and then kept for later lookups.
+     *
+     * @param id The LOCUS name or accession.
+     * @return the sorted entry ids, empty if no entry has the id.
+     */
+    public IntList entriesById(String id) {
+        Map<String, IntList> ids = entryIds;
+        if (ids == null) {
+            synchronized (this) {
+                ids = entryIds;
+                if (ids == null) {
+                    ids = new HashMap<>();
+                    for (int e = 0; e < store.entryCount(); e++) {
+                        ids.computeIfAbsent(store.locus(e), key -> new IntList(1)).add(e);
+                        IntList postings = ids.computeIfAbsent(primaryAccession(store.accession(e)), key -> new IntList(1));
+                        // Entries whose accession is their locus are listed once.
+                        if (postings.last() != e) {
+                            postings.add(e);
+                        }
+                    }
+                    entryIds = ids;
+                }
+            }
+        }
+        IntList entries = ids.get(id);
+        return entries == null ? new IntList(0) : entries;
+    }
+
+    /**
+     * Returns the references published or submitted in a range of years, the year is taken from the journal of a reference.
+     *
+     * @param from The first year of the range.
+     * @param to   The last year of the range, inclusive.
+     * @return the sorted reference ids, references without a year are never included.
+     */
+    public IntList referencesByYear(int from, int to) {
+        SortedPostings postings = yearPostings;
+        if (postings == null) {
+            synchronized (this) {
+                postings = yearPostings;
+                if (postings == null) {
+                    // Journals are interned, so every distinct journal is parsed once.
+                    StringDictionary journals = store.journals();
+                    int[] years = new int[journals.size()];
+                    for (int j = 0; j < years.length; j++) {
+                        years[j] = GenbankJournal.parse(journals.get(j)).year();
+                    }
+                    int[] keys = new int[store.referenceCount()];
+                    for (int r = 0; r < keys.length; r++) {
+                        keys[r] = years[store.referenceJournal(r)];
+                    }
+                    postings = new SortedPostings(keys);
+                    yearPostings = postings;
+                }
+            }
+        }
+        return postings.range(from, to);
+    }
+
+    /**
+     * Returns the references with a PubMed ID.
+     *
+     * @param pubmedId The PubMed ID.
+     * @return the sorted reference ids, empty if no reference has the ID.
+     */
+    public IntList referencesByPubmed(int pubmedId) {
+        SortedPostings postings = pubmedPostings;
+        if (postings == null) {
+            synchronized (this) {
+                postings = pubmedPostings;
+                if (postings == null) {
+                    int[] keys = new int[store.referenceCount()];
+                    for (int r = 0; r < keys.length; r++) {
+                        keys[r] = store.referencePubmed(r);
+                    }
+                    postings = new SortedPostings(keys);
+                    pubmedPostings = postings;
+                }
+            }
+        }
+        return postings.range(pubmedId, pubmedId);
+    }
+
+    /**
+     * Returns the primary accession of the value of an ACCESSION line, the first of the accessions it lists.
+     *
+     * @param accession The value of the ACCESSION line.
+     * @return the first word of the value.
+     */
+    static String primaryAccession(String accession) {
+        int space = accession.indexOf(' ');
+        return space < 0 ? accession : accession.substring(0, space);
+    }
+
+    /**
+     * Returns the references of an author.
+     *
+     * @param author The exact name of the author.
+     * @return the sorted reference ids, empty if the author is unknown.
+     */
+    public IntList referencesByAuthor(String author) {
+        int id = store.authors().find(author);
+        return id < 0 ? new IntList(0) : authorReferences.get(id);
+    }
+
+    /**
+     * Returns the references of an author.
+     *
+     * @param author The id of the author in the store.
+     * @return the sorted reference ids.
+     */
+    public IntList referencesByAuthor(int author) {
+        return authorReferences.get(author);
+    }
+
+    /**
+     * Returns the references with a title.
+     *
+     * @param title The id of the title in the store.
+     * @return the sorted reference ids.
+     */
+    public IntList referencesByTitle(int title) {
+        return titleReferences.get(title);
+    }
+
+    /**
+     * Finds the distinct titles that contain a text, by intersecting the trigram postings of the text and checking the candidates.
+     *
+     * @param text The text to look for, case-sensitive.
+     * @return the sorted ids of the matching titles.
+     */
+    public IntList titlesContaining(String text) {
+        StringDictionary titles = store.titles();
+        IntList result = new IntList();
+        if (text.length() < GRAM) {
+            for (int t = 0; t < titles.size(); t++) {
+                if (titles.get(t).contains(text)) {
+                    result.add(t);
+                }
+            }
+            return result;
+        }
+        List<IntList> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            IntList list = titleTrigrams.get(trigram(text, i));
+            if (list == null) {
+                return result;
+            }
+            postings.add(list);
+        }
+        // Intersecting the shortest lists first keeps the intermediate results small.
+        postings.sort(Comparator.comparingInt(IntList::size));
+        IntList candidates = postings.get(0);
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates = IntList.intersect(candidates, postings.get(i));
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            if (titles.get(candidates.get(i)).contains(text)) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    private String locusOf(int reference) {
+        return store.locus(store.referenceEntry(reference));
+    }
+
+    /**
+     * Reference ids sorted by an int key of the reference, such as its year, in two primitive arrays.
+     * The references with a key are found with a binary search for the first and last key of a range.
+     */
+    static final class SortedPostings {
+        private final int[] keys;
+        private final int[] references;
+
+        /**
+         * Sorts the references by their key.
+         *
+         * @param keys The key of every reference, references with key 0 have no key and are left out.
+         */
+        SortedPostings(int[] keys) {
+            // Pairs of key and reference id sort by key, and by id within a key.
+            long[] pairs = new long[keys.length];
+            int size = 0;
+            for (int r = 0; r < keys.length; r++) {
+                if (keys[r] > 0) {
+                    pairs[size++] = LongSet.pair(keys[r], r);
+                }
+            }
+            Arrays.sort(pairs, 0, size);
+            this.keys = new int[size];
+            this.references = new int[size];
+            for (int i = 0; i < size; i++) {
+                this.keys[i] = LongSet.first(pairs[i]);
+                this.references[i] = LongSet.second(pairs[i]);
+            }
+        }
+
+        /**
+         * Returns the references with a key in a range.
+         *
+         * @param from The first key.
+         * @param to   The last key, inclusive.
+         * @return the sorted reference ids.
+         */
+        IntList range(int from, int to) {
+            int start = firstAtLeast(from);
+            int end = to == Integer.MAX_VALUE ? keys.length : firstAtLeast(to + 1);
+            IntList result = new IntList(Math.max(end - start, 0));
+            if (start >= end) {
+                return result;
+            }
+            int[] ids = Arrays.copyOfRange(references, start, end);
+            // Ids are sorted within a key, a range of several keys is sorted again.
+            if (keys[start] != keys[end - 1]) {
+                Arrays.sort(ids);
+            }
+            for (int id : ids) {
+                result.add(id);
+            }
+            return result;
+        }
+
+        private int firstAtLeast(int key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package net.soko;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class is the reader abstraction used to open Genbank Flat Files for parsing, regardless of whether they are compressed.
+ * <p> Plain '.gbff' files are read directly, '.gz' files are decompressed on the fly while they are read,
+ * so the parser sees the same stream of bytes in both cases and no temporary copy is written to disk.
+ * Both paths read through large buffers to keep the number of system calls low on multi-gigabyte files.
+ * <p> Large uncompressed files can also be split into {@link Chunk}s on record boundaries with {@link #split(File, int)},
+ * every chunk is memory-mapped and can be parsed independently of the others.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         File file = new File("path/to/file.gbff.gz");
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, listener, null);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser
+ */
+public final class GenbankInput {
+    /**
+     * Size of the read and inflate buffers, large enough to amortize system calls on big files.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Files smaller than this are never split, parsing them is cheaper than coordinating workers.
+     */
+    public static final long SPLIT_THRESHOLD = 64L << 20;
+    /**
+     * Target upper bound for the size of a chunk, which keeps every chunk within the 2 GB limit of a single mapping.
+     */
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    /**
+     * Size of the window that is mapped while looking for the next record boundary.
+     */
+    private static final int BOUNDARY_WINDOW = 1 << 20;
+    /**
+     * A record starts with the LOCUS keyword at the start of a line.
+     */
+    private static final byte[] RECORD_START = {'\n', 'L', 'O', 'C', 'U', 'S'};
+
+    /**
+     * A byte range of an uncompressed Genbank file that starts at a record boundary and ends at the start of the next record,
+     * or at the end of the file.
+     *
+     * @param file  The file the range belongs to.
+     * @param start The offset of the first byte of the range.
+     * @param end   The offset after the last byte of the range.
+     */
+    public record Chunk(File file, long start, long end) {
+        public long length() {
+            return end - start;
+        }
+    }
+
+    private GenbankInput() {
+    }
+
+    /**
+     * Checks whether a file is a Genbank Flat File this program can read, either plain or gzip compressed.
+     *
+     * @param file The file to check.
+     * @return true if the file ends with ".gbff" or ".gz".
+     */
+    public static boolean isGenbankFile(File file) {
+        return file.getName().endsWith(".gbff") || isCompressed(file);
+    }
+
+    /**
+     * Checks whether a file is gzip compressed, based on its extension.
+     *
+     * @param file The file to check.
+     * @return true if the file ends with ".gz".
+     */
+    public static boolean isCompressed(File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * Opens a Genbank file for reading, decompressing it on the fly if it is a ".gz" file.
+     *
+     * @param file The file to open.
+     * @return a buffered stream with the uncompressed contents of the file, to be closed by the caller.
+     * @throws IOException if the file cannot be opened or is not valid gzip.
+     */
+    public static InputStream open(File file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * Opens a Genbank file for reading and updates a checksum with its raw bytes while it is read.
+     *
+     * @param file     The file to open.
+     * @param checksum Receives the raw, possibly compressed, bytes of the file as they are read, or null.
+     * @return a buffered stream with the uncompressed contents of the file, to be closed by the caller.
+     * @throws IOException if the file cannot be opened or is not valid gzip.
+     * @see GenbankCache.ContentHash
+     */
+    public static InputStream open(File file, Checksum checksum) throws IOException {
+        return open(FileChannel.open(file.toPath(), StandardOpenOption.READ), isCompressed(file), checksum);
+    }
+
+    /**
+     * Opens a channel for reading, decompressing it on the fly if needed.
+     *
+     * @param channel    The channel to read from, closed when the returned stream is closed.
+     * @param compressed Whether the channel contains gzip data.
+     * @return a buffered stream with the uncompressed contents of the channel.
+     * @throws IOException if the channel does not contain valid gzip data.
+     */
+    public static InputStream open(ReadableByteChannel channel, boolean compressed) throws IOException {
+        return open(channel, compressed, null);
+    }
+
+    /**
+     * Opens a channel for reading, decompressing it on the fly if needed, and updates a checksum with its raw bytes.
+     *
+     * @param channel    The channel to read from, closed when the returned stream is closed.
+     * @param compressed Whether the channel contains gzip data.
+     * @param checksum   Receives the raw bytes of the channel as they are read, or null.
+     * @return a buffered stream with the uncompressed contents of the channel.
+     * @throws IOException if the channel does not contain valid gzip data.
+     */
+    public static InputStream open(ReadableByteChannel channel, boolean compressed, Checksum checksum) throws IOException {
+        InputStream raw = checked(Channels.newInputStream(channel), checksum);
+        if (compressed) {
+            // The inflater reads compressed data in BUFFER_SIZE chunks, the outer buffer batches the inflated bytes.
+            return new BufferedInputStream(new GZIPInputStream(raw, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return new BufferedInputStream(raw, BUFFER_SIZE);
+    }
+
+    /**
+     * Splits an uncompressed Genbank file into chunks that each start at a "LOCUS" line, so that every chunk contains whole records.
+     * <p> The file is first cut into roughly equal parts, after which every cut is moved forward to the next record boundary.
+     * Cuts that end up in the same record are merged, so a file with a few huge records may yield fewer chunks than requested.
+     *
+     * @param file  The uncompressed file to split.
+     * @param parts The requested number of chunks, raised if needed to keep chunks below the mapping limit.
+     * @return the chunks in file order, covering the whole file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static List<Chunk> split(File file, int parts) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            parts = (int) Math.max(parts, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            long start = 0;
+            for (int part = 1; part < parts && start < size; part++) {
+                long boundary = nextRecordStart(channel, Math.max(start + 1, size / parts * part), size);
+                if (boundary >= size) {
+                    break;
+                }
+                chunks.add(new Chunk(file, start, boundary));
+                start = boundary;
+            }
+            chunks.add(new Chunk(file, start, size));
+        }
+        return chunks;
+    }
+
+    /**
+     * Opens a chunk of an uncompressed file for reading by memory-mapping its byte range.
+     * <p> Chunks too large for a single mapping are streamed from the file instead.
+     *
+     * @param chunk The chunk to open.
+     * @return a stream over the bytes of the chunk, to be closed by the caller.
+     * @throws IOException if the file cannot be read.
+     */
+    public static InputStream open(Chunk chunk) throws IOException {
+        return open(chunk, null);
+    }
+
+    /**
+     * Opens a chunk of an uncompressed file for reading, and updates a checksum with the bytes of the chunk while it is read.
+     *
+     * @param chunk    The chunk to open.
+     * @param checksum Receives the bytes of the chunk as they are read, or null.
+     * @return a stream over the bytes of the chunk, to be closed by the caller.
+     * @throws IOException if the file cannot be read.
+     */
+    public static InputStream open(Chunk chunk, Checksum checksum) throws IOException {
+        return checked(openChunk(chunk), checksum);
+    }
+
+    /**
+     * Wraps a stream so a checksum is updated with every byte that is read from it.
+     *
+     * @param in       The stream to read.
+     * @param checksum The checksum to update, or null to return the stream itself.
+     * @return the stream to read from.
+     */
+    static InputStream checked(InputStream in, Checksum checksum) {
+        return checksum == null ? in : new CheckedInputStream(in, checksum);
+    }
+
+    private static InputStream openChunk(Chunk chunk) throws IOException {
+        try (FileChannel channel = FileChannel.open(chunk.file().toPath(), StandardOpenOption.READ)) {
+            if (chunk.length() <= Integer.MAX_VALUE) {
+                // The mapping stays valid after the channel is closed.
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, chunk.start(), chunk.length()));
+            }
+        }
+        FileChannel channel = FileChannel.open(chunk.file().toPath(), StandardOpenOption.READ);
+        channel.position(chunk.start());
+        return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE) {
+            private long remaining = chunk.length();
+
+            @Override
+            public synchronized int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                remaining--;
+                return super.read();
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = super.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Finds the offset of the first "LOCUS" line that starts at or after the given offset.
+     *
+     * @param channel The channel of the file to search.
+     * @param from    The offset to start searching at, must be larger than 0.
+     * @param size    The size of the file.
+     * @return the offset of the 'L' of the next record, or the size of the file if there is none.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long nextRecordStart(FileChannel channel, long from, long size) throws IOException {
+        // Start one byte early so a record starting exactly at 'from' is found by its preceding newline.
+        long position = from - 1;
+        while (position + RECORD_START.length <= size) {
+            int length = (int) Math.min(BOUNDARY_WINDOW, size - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i + RECORD_START.length <= length; i++) {
+                if (window.get(i) == '\n' && matches(window, i)) {
+                    return position + i + 1;
+                }
+            }
+            // Windows overlap by the length of the pattern, so a boundary spanning two windows is still found.
+            position += length - RECORD_START.length + 1;
+        }
+        return size;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int index) {
+        for (int i = 1; i < RECORD_START.length; i++) {
+            if (buffer.get(index + i) != RECORD_START[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Minimal stream over a (mapped) byte buffer, bulk reads copy straight out of the buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
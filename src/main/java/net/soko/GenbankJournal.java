@@ -0,0 +1,134 @@
+package net.soko;
+
+/**
+ * The parts of the JOURNAL line of a Genbank reference.
+ * <p> Published articles are cited as "name volume (issue), pages (year)", for example "Nature 409 (6822), 860-921 (2001)",
+ * the issue is optional. Direct submissions are cited as "Submitted (dd-MMM-yyyy) address" and patents mention their date
+ * in the same format, the year is taken from that date. Other citations, such as "Thesis (1999) University", take the
+ * first year in parentheses, and some, such as "Unpublished", only have a name.
+ * Parts that are not present are null, and the year is 0.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankJournal journal = GenbankJournal.parse("Nature 409 (6822), 860-921 (2001)");
+ *         int year = journal.year();
+ *         }
+ *         </pre>
+ *
+ * @param name   The name of the journal, or the kind of citation such as "Submitted" or "Unpublished".
+ * @param volume The volume, or null.
+ * @param issue  The issue, or null.
+ * @param pages  The pages, such as "860-921", or null.
+ * @param year   The year of publication or submission, or 0 if it is not known.
+ * @see GenbankReference#getCitation()
+ */
+public record GenbankJournal(String name, String volume, String issue, String pages, int year) {
+    private static final String MONTHS = "JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC";
+
+    /**
+     * Splits the value of a JOURNAL line into its parts. The line is scanned from its end, no regular expressions are used.
+     *
+     * @param journal The value of the JOURNAL line.
+     * @return the parts of the citation, never null.
+     */
+    public static GenbankJournal parse(String journal) {
+        String text = journal.trim();
+        int year = trailingYear(text);
+        if (year == 0) {
+            int date = dateYear(text);
+            if (date == 0) {
+                date = parenthesizedYear(text);
+            }
+            int end = text.indexOf(' ');
+            int colon = text.indexOf(':');
+            // "Submitted (...) address", "Patent: ..." and "Thesis (...)" are named by their first word.
+            if (colon > 0 && (end < 0 || colon < end)) {
+                end = colon;
+            }
+            return new GenbankJournal(date == 0 || end < 0 ? text : text.substring(0, end), null, null, null, date);
+        }
+        // Without the year, "name volume (issue), pages" is left.
+        String rest = text.substring(0, text.lastIndexOf('(')).trim();
+        String pages = null;
+        int comma = rest.lastIndexOf(", ");
+        if (comma > 0 && rest.indexOf(' ', comma + 2) < 0 && hasDigit(rest, comma + 2, rest.length())) {
+            pages = rest.substring(comma + 2);
+            rest = rest.substring(0, comma).trim();
+        }
+        String issue = null;
+        int open = rest.lastIndexOf(" (");
+        if (open > 0 && rest.endsWith(")")) {
+            issue = rest.substring(open + 2, rest.length() - 1);
+            rest = rest.substring(0, open).trim();
+        }
+        String volume = null;
+        int space = rest.lastIndexOf(' ');
+        if (space > 0 && hasDigit(rest, space + 1, rest.length())) {
+            volume = rest.substring(space + 1);
+            rest = rest.substring(0, space).trim();
+        }
+        return new GenbankJournal(rest, volume, issue, pages, year);
+    }
+
+    /**
+     * Returns the year of a citation that ends with "(yyyy)".
+     *
+     * @return the year, or 0 if the citation does not end with a year.
+     */
+    private static int trailingYear(String text) {
+        int length = text.length();
+        if (length < 7 || text.charAt(length - 1) != ')' || text.charAt(length - 6) != '(' || !isDigits(text, length - 5, length - 1)) {
+            return 0;
+        }
+        return Integer.parseInt(text, length - 5, length - 1, 10);
+    }
+
+    /**
+     * Returns the year of the first date in the format dd-MMM-yyyy, as used by submissions and patents.
+     *
+     * @return the year, or 0 if there is no such date.
+     */
+    private static int dateYear(String text) {
+        for (int dash = text.indexOf('-'); dash >= 0; dash = text.indexOf('-', dash + 1)) {
+            if (dash >= 1 && dash + 9 <= text.length() && text.charAt(dash + 4) == '-' && Character.isDigit(text.charAt(dash - 1))
+                    && MONTHS.indexOf(text.substring(dash + 1, dash + 4)) % 3 == 0 && isDigits(text, dash + 5, dash + 9)
+                    && (dash + 9 == text.length() || !Character.isDigit(text.charAt(dash + 9)))) {
+                return Integer.parseInt(text, dash + 5, dash + 9, 10);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the first year in parentheses, such as "(1999)".
+     *
+     * @return the year, or 0 if there is none.
+     */
+    private static int parenthesizedYear(String text) {
+        for (int open = text.indexOf('('); open >= 0; open = text.indexOf('(', open + 1)) {
+            if (open + 6 <= text.length() && text.charAt(open + 5) == ')' && isDigits(text, open + 1, open + 5)) {
+                return Integer.parseInt(text, open + 1, open + 5, 10);
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isDigits(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasDigit(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.isDigit(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,398 @@
+package net.soko;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * This class loads a set of Genbank files into a single list of {@link GenbankEntry} objects, optionally in parallel.
+ * <p> In parallel mode every file is parsed by its own task on a bounded thread pool. Each task builds a private list,
+ * and the lists are concatenated in the original file order once all tasks are done, so no lock is shared between
+ * the workers and the result is identical to the sequential path.
+ * <p> Uncompressed files of at least {@link GenbankInput#SPLIT_THRESHOLD} bytes are additionally split on record boundaries,
+ * so the chunks of a single large file are parsed by several workers at the same time.
+ * <p> Instead of collecting entries, the files can also be streamed into {@link GenbankRecordListener}s with
+ * {@link #stream(List, int, Supplier, GenbankCache, GenbankStats, GenbankPipeline)}, in which case every task feeds its own listener and no entry outlives its record.
+ * <p> When a {@link GenbankCache} is given, files with a valid snapshot are read from the cache instead of being parsed,
+ * and the snapshots of all other files are written while they are parsed.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         List<File> files = List.of(new File("a.gbff"), new File("b.gbff.gz"));
+ *         ArrayList<GenbankEntry> entries = GenbankLoader.load(files, 4);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser
+ * @see GenbankExplorer
+ */
+public final class GenbankLoader {
+
+    private GenbankLoader() {
+    }
+
+    /**
+     * Parses all files and returns their entries in file order.
+     *
+     * @param files   The Genbank files to parse, plain or gzip compressed.
+     * @param threads The number of files to parse at the same time, 1 or less parses the files one after another.
+     * @return an ArrayList of {@link GenbankEntry} objects of all files.
+     */
+    public static ArrayList<GenbankEntry> load(List<File> files, int threads) {
+        ArrayList<GenbankEntry> entries = new ArrayList<>();
+        for (EntryCollector part : stream(files, threads, EntryCollector::new, null, null, null)) {
+            entries.addAll(part.getEntries());
+        }
+        return entries;
+    }
+
+    /**
+     * Parses all files into a compact {@link GenbankStore}, see {@link GenbankStore} for the layout.
+     * In parallel, every task fills its own store and the stores are merged in file order.
+     *
+     * @param files    The Genbank files to parse, plain or gzip compressed.
+     * @param threads  The number of tasks to run at the same time, 1 or less parses the files one after another.
+     * @param cache    The cache to use, or null to parse every file.
+     * @param stats    Collects the statistics of every file, or null.
+     * @param pipeline The pipeline to read the files with, or null.
+     * @return the store with the entries of all files.
+     * @see #stream(List, int, Supplier, GenbankCache, GenbankStats, GenbankPipeline)
+     */
+    public static GenbankStore loadStore(List<File> files, int threads, GenbankCache cache, GenbankStats stats, GenbankPipeline pipeline) {
+        List<GenbankStore> parts = stream(files, threads, GenbankStore::new, cache, stats, pipeline);
+        // In parallel, an empty list of files gives no listeners at all.
+        GenbankStore store = parts.isEmpty() ? new GenbankStore() : parts.get(0);
+        if (parts.size() > 1) {
+            for (GenbankStore part : parts.subList(1, parts.size())) {
+                store.merge(part);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Parses all files into listeners without retaining the entries.
+     * <p> Sequentially, a single listener receives the entries of all files. In parallel, every task gets a fresh listener
+     * from the factory, the returned listeners together received every entry exactly once and are ordered so that
+     * concatenating what they received gives the file order.
+     * <p> When a cache is given, files with a valid snapshot are read from it and the snapshots of the other files are
+     * written while they are parsed. Sequentially with a pipeline, the next file that is parsed is opened before the
+     * current file is parsed, so reading and decompressing it overlaps with parsing. Chunks of large files are
+     * memory-mapped and do not use the pipeline.
+     *
+     * @param files    The Genbank files to parse, plain or gzip compressed.
+     * @param threads  The number of tasks to run at the same time, 1 or less parses the files one after another.
+     * @param listener Creates the listener of a task.
+     * @param cache    The cache to use, or null to parse every file.
+     * @param stats    Collects the statistics of every file and chunk that is parsed or read from the cache, or null.
+     * @param pipeline The pipeline to read the files with, or null to read them on the thread that parses them.
+     * @param <L>      The type of listener.
+     * @return the listeners in file order, to be merged by the caller.
+     */
+    public static <L extends GenbankRecordListener> List<L> stream(List<File> files, int threads, Supplier<L> listener, GenbankCache cache,
+                                                                   GenbankStats stats, GenbankPipeline pipeline) {
+        return stream(files, threads, listener, cache, stats, pipeline, null);
+    }
+
+    /**
+     * Parses every file into a store of its own, so the entries of single files can later be replaced or removed.
+     * <p> This can be used to reparse only the files that changed, the snapshots of the other files are kept in the cache.
+     *
+     * @param files    The Genbank files to parse, plain or gzip compressed.
+     * @param threads  The number of tasks to run at the same time, 1 or less parses the files one after another.
+     * @param cache    The cache to use, or null to parse every file.
+     * @param stats    Collects the statistics of every file, or null.
+     * @param pipeline The pipeline to read the files with, or null.
+     * @return the store of every file, in file order.
+     * @see GenbankWatcher
+     */
+    public static List<GenbankStore> loadSegments(List<File> files, int threads, GenbankCache cache, GenbankStats stats, GenbankPipeline pipeline) {
+        List<Integer> parts = new ArrayList<>();
+        List<GenbankStore> stores = stream(files, threads, GenbankStore::new, cache, stats, pipeline, parts);
+        List<GenbankStore> segments = new ArrayList<>();
+        int next = 0;
+        for (int count : parts) {
+            // The chunks of a large file are parsed into stores of their own, which are merged into the first one.
+            GenbankStore segment = stores.get(next);
+            for (GenbankStore part : stores.subList(next + 1, next + count)) {
+                segment.merge(part);
+            }
+            segments.add(segment);
+            next += count;
+        }
+        return segments;
+    }
+
+    /**
+     * Parses all files into listeners and commits the snapshots of the parsed files to the cache.
+     *
+     * @param files    The Genbank files to parse, plain or gzip compressed.
+     * @param threads  The number of tasks to run at the same time, 1 or less parses the files one after another.
+     * @param listener Creates the listener of a task.
+     * @param cache    The cache to use, or null to parse every file.
+     * @param stats    Collects the statistics of every file, or null.
+     * @param pipeline The pipeline to read the files with, or null to read them on the thread that parses them.
+     * @param perFile  Receives the number of listeners of every file, or null. If given, every file gets listeners of its
+     *                 own, also when the files are parsed one after another.
+     * @param <L>      The type of listener.
+     * @return the listeners in file order.
+     * @see #stream(List, int, Supplier, GenbankCache, GenbankStats, GenbankPipeline)
+     */
+    private static <L extends GenbankRecordListener> List<L> stream(List<File> files, int threads, Supplier<L> listener, GenbankCache cache,
+                                                                    GenbankStats stats, GenbankPipeline pipeline, List<Integer> perFile) {
+        // Number of segments written per file, the snapshots of these files are committed once all tasks are done.
+        Map<File, Integer> rebuilt = new LinkedHashMap<>();
+        List<L> results = new ArrayList<>();
+        if (threads <= 1) {
+            // One listener receives the entries of all files, unless every file needs listeners of its own.
+            L single = perFile == null ? listener.get() : null;
+            if (single != null) {
+                results.add(single);
+            }
+            boolean[] cached = new boolean[files.size()];
+            for (int i = 0; i < files.size(); i++) {
+                cached[i] = cache != null && cache.isValid(files.get(i));
+            }
+            // The next file to parse is opened while the previous file is parsed, and closed if parsing fails.
+            try (ReadAhead ahead = new ReadAhead()) {
+                for (int i = 0; i < files.size(); i++) {
+                    File file = files.get(i);
+                    L target = single;
+                    if (target == null) {
+                        target = listener.get();
+                        results.add(target);
+                        perFile.add(1);
+                    }
+                    if (cached[i]) {
+                        read(file, target, cache, stats);
+                        continue;
+                    }
+                    GenbankCache.ContentHash hash = ahead.in != null ? ahead.hash : hash(cache);
+                    InputStream in = ahead.in != null ? ahead.in : open(file, pipeline, hash);
+                    ahead.in = null;
+                    for (int next = i + 1; pipeline != null && next < files.size() && ahead.in == null; next++) {
+                        if (!cached[next]) {
+                            ahead.hash = hash(cache);
+                            ahead.in = open(files.get(next), pipeline, ahead.hash);
+                        }
+                    }
+                    parse(file, in, 0, target, cache, 0, hash, stats);
+                    rebuilt.put(file, 1);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            List<Callable<L>> tasks = plan(files, threads, listener, cache, stats, pipeline, rebuilt);
+            for (File file : files) {
+                // Cached files are read by a single task, parsed files by one task per snapshot segment.
+                if (perFile != null) {
+                    perFile.add(rebuilt.getOrDefault(file, 1));
+                }
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tasks.size())));
+            try {
+                List<Future<L>> futures = new ArrayList<>();
+                for (Callable<L> task : tasks) {
+                    futures.add(executor.submit(task));
+                }
+                // Futures are joined in submission order, which keeps the results in the same order as the sequential path.
+                for (Future<L> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        if (cache != null) {
+            try {
+                for (Map.Entry<File, Integer> file : rebuilt.entrySet()) {
+                    cache.commit(file.getKey(), file.getValue());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Creates the tasks for a set of files, in file order.
+     * Files with a valid snapshot in the cache get a task that reads the snapshot, large uncompressed files get one parse
+     * task per chunk and all other files get a single parse task.
+     *
+     * @param files    The files to parse.
+     * @param threads  The number of workers, used as the number of chunks of a large file.
+     * @param listener Creates the listener of every task.
+     * @param cache    The cache to use, or null.
+     * @param stats    Collects the statistics of the tasks, or null.
+     * @param pipeline The pipeline to read whole files with, or null.
+     * @param rebuilt  Receives the number of snapshot segments that will be written for every parsed file.
+     * @return the tasks, each returning the listener it fed.
+     */
+    private static <L extends GenbankRecordListener> List<Callable<L>> plan(List<File> files, int threads, Supplier<L> listener,
+                                                                           GenbankCache cache, GenbankStats stats, GenbankPipeline pipeline,
+                                                                           Map<File, Integer> rebuilt) {
+        List<Callable<L>> tasks = new ArrayList<>();
+        for (File file : files) {
+            if (cache != null && cache.isValid(file)) {
+                tasks.add(() -> {
+                    L part = listener.get();
+                    read(file, part, cache, stats);
+                    return part;
+                });
+            } else if (!GenbankInput.isCompressed(file) && file.length() >= GenbankInput.SPLIT_THRESHOLD) {
+                try {
+                    List<GenbankInput.Chunk> chunks = GenbankInput.split(file, threads);
+                    for (int i = 0; i < chunks.size(); i++) {
+                        GenbankInput.Chunk chunk = chunks.get(i);
+                        int segment = i;
+                        tasks.add(() -> {
+                            L part = listener.get();
+                            GenbankCache.ContentHash hash = hash(cache);
+                            parse(file, GenbankInput.open(chunk, hash), chunk.start(), part, cache, segment, hash, stats);
+                            return part;
+                        });
+                    }
+                    rebuilt.put(file, chunks.size());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            } else {
+                tasks.add(() -> {
+                    L part = listener.get();
+                    GenbankCache.ContentHash hash = hash(cache);
+                    parse(file, open(file, pipeline, hash), 0, part, cache, 0, hash, stats);
+                    return part;
+                });
+                rebuilt.put(file, 1);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Opens a whole file for parsing.
+     *
+     * @param file     The file to open.
+     * @param pipeline The pipeline to read the file with, or null to read it on the thread that parses it.
+     * @param hash     Receives the raw bytes of the file as they are read, or null.
+     * @return the uncompressed contents of the file.
+     */
+    private static InputStream open(File file, GenbankPipeline pipeline, GenbankCache.ContentHash hash) {
+        try {
+            return pipeline != null ? pipeline.open(file, hash) : GenbankInput.open(file, hash);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the hash of the raw bytes of a file or chunk that is parsed, which is only needed for the snapshots of a cache.
+     *
+     * @param cache The cache to write to, or null.
+     * @return a new hash, or null if no cache is used.
+     */
+    private static GenbankCache.ContentHash hash(GenbankCache cache) {
+        return cache != null ? new GenbankCache.ContentHash() : null;
+    }
+
+    /**
+     * Parses a file or a chunk of it into a listener, writing the entries to a snapshot segment as well if a cache is given.
+     *
+     * @param file     The file to parse.
+     * @param in       The opened file or chunk of the file, it is closed once it is parsed.
+     * @param offset   The offset in the file at which the chunk starts, 0 for whole files.
+     * @param listener Receives the entries.
+     * @param cache    The cache to write to, or null.
+     * @param segment  The index of the snapshot segment to write.
+     * @param hash     The hash that is updated while the stream is read, stored with the segment, or null.
+     * @param stats    Collects the statistics of the task, or null.
+     */
+    private static void parse(File file, InputStream in, long offset, GenbankRecordListener listener, GenbankCache cache, int segment,
+                              GenbankCache.ContentHash hash, GenbankStats stats) {
+        try (in) {
+            if (cache == null) {
+                GenbankParser.parseGenbankStream(file, offset, in, listener, stats);
+                return;
+            }
+            try (GenbankCache.SegmentWriter writer = cache.segment(file, segment, hash)) {
+                GenbankRecordListener both = entry -> {
+                    writer.onEntry(entry);
+                    listener.onEntry(entry);
+                };
+                GenbankParser.parseGenbankStream(file, offset, in, both, stats);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the entries of a file from its snapshot in the cache into a listener.
+     *
+     * @param file     The file to read.
+     * @param listener Receives the entries.
+     * @param cache    The cache with a valid snapshot of the file.
+     * @param stats    Collects the statistics of the task, or null.
+     */
+    private static void read(File file, GenbankRecordListener listener, GenbankCache cache, GenbankStats stats) {
+        if (stats == null) {
+            cache.read(file, listener);
+            return;
+        }
+        try (GenbankStats.Task task = stats.task(file, true)) {
+            cache.read(file, task.track(listener));
+        }
+    }
+
+    /**
+     * Stream of the next file to parse, opened while the previous file is parsed, and the hash of its raw bytes.
+     */
+    private static final class ReadAhead implements AutoCloseable {
+        private InputStream in;
+        private GenbankCache.ContentHash hash;
+
+        /**
+         * Closes the stream if it was not handed to the parser, which stops the stages of the pipeline that read it.
+         */
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Listener that collects the entries it receives, used to load entries into memory.
+     */
+    private static final class EntryCollector implements GenbankRecordListener {
+        private final List<GenbankEntry> entries = new ArrayList<>();
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            entries.add(entry);
+        }
+
+        public List<GenbankEntry> getEntries() {
+            return entries;
+        }
+    }
+}
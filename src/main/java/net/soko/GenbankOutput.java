@@ -0,0 +1,168 @@
+package net.soko;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class is the output sink for the results of the {@link GenbankExplorer}, it writes lines to a file or to std-out.
+ * <p> The target is opened once and written through large buffers, so writing many result lines costs a few system calls
+ * instead of opening and closing the file for every line. Optionally the output is gzip compressed on the fly.
+ * Files are appended to, and created if they do not exist.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         try (GenbankOutput output = GenbankOutput.toFile(new File("authors.txt.gz"), true)) {
+ *             output.writeLine("Reilly,L.P.");
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankExplorer
+ */
+public final class GenbankOutput implements AutoCloseable {
+    private final Writer writer;
+    private final GZIPOutputStream gzip;
+    private final OutputStream buffered;
+    /**
+     * Channel of the target that records are transferred to without buffering, null if the target has no channel.
+     */
+    private final FileChannel channel;
+    /**
+     * Whether the target is owned by this sink, std-out is flushed but never closed.
+     */
+    private final boolean ownsTarget;
+
+    private GenbankOutput(OutputStream target, FileChannel channel, boolean compress, boolean ownsTarget) throws IOException {
+        this.ownsTarget = ownsTarget;
+        this.channel = compress ? null : channel;
+        this.buffered = new BufferedOutputStream(target, GenbankInput.BUFFER_SIZE);
+        this.gzip = compress ? new GZIPOutputStream(buffered, GenbankInput.BUFFER_SIZE) : null;
+        this.writer = new BufferedWriter(new OutputStreamWriter(compress ? gzip : buffered, StandardCharsets.UTF_8), GenbankInput.BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a file for appending results, the file is created if it does not exist.
+     *
+     * @param file     The file to write to.
+     * @param compress Whether to gzip compress the output, appending to a gzip file adds a new gzip member.
+     * @return the sink, to be closed once all results are written.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static GenbankOutput toFile(File file, boolean compress) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new GenbankOutput(Channels.newOutputStream(channel), channel, compress, true);
+    }
+
+    /**
+     * Opens std-out for writing results, with the same buffering as a file.
+     *
+     * @param compress Whether to gzip compress the output.
+     * @return the sink, to be closed once all results are written. Closing flushes but does not close std-out.
+     */
+    public static GenbankOutput toStdout(boolean compress) {
+        try {
+            // The channel is not closed, as closing it would close std-out.
+            return new GenbankOutput(System.out, new FileOutputStream(FileDescriptor.out).getChannel(), compress, false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a stream that is owned by the caller for writing results, such as std-out or a socket.
+     *
+     * @param out      The stream to write to.
+     * @param compress Whether to gzip compress the output.
+     * @return the sink, to be closed once all results are written. Closing flushes but does not close the stream.
+     */
+    public static GenbankOutput toStream(OutputStream out, boolean compress) {
+        try {
+            return new GenbankOutput(out, null, compress, false);
+        } catch (IOException e) {
+            // Writing the gzip header is buffered and cannot fail here.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes text without a line separator, such as a prompt.
+     *
+     * @param text The text to write.
+     * @throws IOException if the output cannot be written.
+     */
+    public void write(String text) throws IOException {
+        writer.write(text);
+    }
+
+    /**
+     * Writes a line, followed by the line separator of the platform.
+     *
+     * @param line The text to write.
+     * @throws IOException if the output cannot be written.
+     */
+    public void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write(System.lineSeparator());
+    }
+
+    /**
+     * Copies the original text of Genbank records to the output, after the lines written so far.
+     * <p> Uncompressed files and std-out receive the records with {@link GenbankRecords#copy(List, WritableByteChannel)}
+     * straight from the source files. Other targets and compressed output receive them through the buffers of this sink.
+     *
+     * @param records The records to copy, in order.
+     * @throws IOException if a record cannot be read or the output cannot be written.
+     */
+    public void transfer(List<GenbankRecords.Location> records) throws IOException {
+        if (channel != null) {
+            flush();
+            GenbankRecords.copy(records, channel);
+        } else {
+            writer.flush();
+            GenbankRecords.copy(records, Channels.newChannel(gzip != null ? gzip : buffered));
+        }
+    }
+
+    /**
+     * Flushes the lines written so far to the target, for example at the end of an answer to a client.
+     * Compressed output is only complete once the sink is closed.
+     *
+     * @throws IOException if the output cannot be written.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+        buffered.flush();
+    }
+
+    /**
+     * Flushes all buffered output, finishes the gzip stream if compressing and closes the file.
+     *
+     * @throws IOException if the output cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        buffered.flush();
+        if (ownsTarget) {
+            buffered.close();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package net.soko;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Scanner;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -16,6 +15,10 @@ import java.util.zip.GZIPInputStream;
  *         {@code
  *         File file = new File("path/to/file.gbff");
  *         ArrayList<GenbankEntry> entries = GenbankParser.parseGenbankFile(file);
+ *         // or, without keeping all entries in memory
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, entry -> System.out.println(entry.getLocus()), null);
+ *         }
  *         }
  *         </pre>
  * </p>
@@ -29,7 +32,9 @@ public class GenbankParser {
      * Parser method for a Genbank File that parses the file per entry and returns an ArrayList of {@link GenbankEntry} objects.
      * Each entry can have several references, which are stored in a {@link GenbankReference} object.
      * <p>
-     * If the file is not found, a {@link FileNotFoundException} is thrown.
+     * Both plain and gzip compressed files are accepted, compressed files are decompressed while they are parsed
+     * by {@link GenbankInput#open(File)}.
+     * If the file cannot be read, the {@link IOException} is rethrown as a {@link RuntimeException}.
      * <br>
      *
      * @param file the Genbank file to parse.
@@ -39,104 +44,168 @@ public class GenbankParser {
      */
     public static ArrayList<GenbankEntry> parseGenbankFile(File file) {
         ArrayList<GenbankEntry> entries = new ArrayList<>();
+        try (InputStream in = GenbankInput.open(file)) {
+            parseGenbankStream(file, 0, in, entries::add, null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Push-style parser method for an opened stream of a Genbank file, or of part of it such as a chunk of
+     * {@link GenbankInput#split(File, int)}. Every entry is handed to the listener as soon as its record is complete and
+     * is not retained by the parser.
+     * <p>
+     * The stream is read in a single pass by a {@link GenbankTokenizer}, which recognizes the keyword of every line on the
+     * raw bytes. Only the values that are stored in the entries are turned into Strings, all other lines are skipped.
+     * The FEATURES and ORIGIN blocks, the bulk of every record, are skipped with a raw byte search for the record terminator,
+     * unless the listener is a {@link GenbankSequenceListener}, which gets the bases of the ORIGIN block.
+     * <p>
+     * The entries get the file and the byte range of their record in the file, so the record can be read again later,
+     * see {@link GenbankRecords}.
+     *
+     * @param file     the file the stream belongs to, under which the statistics are recorded. Can be null without stats.
+     * @param offset   the offset in the uncompressed file at which the stream starts, 0 for whole files.
+     * @param in       the uncompressed stream to parse, typically opened with {@link GenbankInput#open(File)}.
+     *                 It is not closed by this method.
+     * @param listener receives the entries in stream order.
+     * @param stats    collects the statistics of the file, such as bytes read, records parsed and the time spent reading,
+     *                 parsing and in the listener, or null.
+     */
+    public static void parseGenbankStream(File file, long offset, InputStream in, GenbankRecordListener listener, GenbankStats stats) {
+        if (stats == null) {
+            parseGenbankStream(in, file, offset, listener);
+            return;
+        }
+        try (GenbankStats.Task task = stats.task(file, false)) {
+            parseGenbankStream(task.track(in), file, offset, task.track(listener));
+        }
+    }
+
+    /**
+     * Push-style parser method that also records where the record of every entry is, see {@link GenbankEntry#getOffset()}.
+     * A record runs from its LOCUS line up to the LOCUS line of the next record, or the end of the stream.
+     *
+     * @param in       the stream to parse, it is not closed by this method.
+     * @param file     the file the stream belongs to, or null.
+     * @param offset   the offset in the uncompressed file at which the stream starts.
+     * @param listener receives the entries in stream order.
+     */
+    private static void parseGenbankStream(InputStream in, File file, long offset, GenbankRecordListener listener) {
         // The current entry is used to store the current entry being parsed.
         GenbankEntry currentEntry = null;
         // The current reference is used to store the current reference being parsed. Multiple references can be stored in a single entry.
         GenbankReference currentReference = null;
+        GenbankTokenizer tokenizer = new GenbankTokenizer(in);
+        // Sequences are only read when the listener asks for them.
+        GenbankSequenceListener sequences = listener instanceof GenbankSequenceListener ? (GenbankSequenceListener) listener : null;
         try {
-            Scanner scanner = new Scanner(file);
-            String line = null;
-            if (scanner.hasNextLine()) {
-                line = scanner.nextLine();
-            }
-            while (line != null) {
-                line = line.strip();
-                if (line.startsWith("LOCUS")) {
-                    /* When encountering a new entry, indicated by the "LOCUS" tag, the current entry is added to the list of entries.
-                    and a new entry is created.*/
-                    if (currentEntry != null) {
-                        entries.add(currentEntry);
+            GenbankTokenizer.Keyword keyword;
+            while ((keyword = tokenizer.next()) != null) {
+                switch (keyword) {
+                    case LOCUS -> {
+                        /* When encountering a new entry, indicated by the "LOCUS" tag, the current entry is handed to the listener
+                        and a new entry is created. The last reference belongs to the finished entry, so every entry is self-contained
+                        and parts of a file can be parsed on their own.*/
+                        if (currentEntry != null) {
+                            if (currentReference != null) {
+                                currentEntry.getReferences().add(currentReference);
+                                currentReference = null;
+                            }
+                            currentEntry.setLength(offset + tokenizer.lineOffset() - currentEntry.getOffset());
+                            listener.onEntry(currentEntry);
+                        }
+                        currentEntry = new GenbankEntry();
+                        currentEntry.setLocus(tokenizer.firstWord());
+                        currentEntry.setFile(file);
+                        currentEntry.setOffset(offset + tokenizer.lineOffset());
                     }
-                    currentEntry = new GenbankEntry();
-                    String[] parts = line.split("\\s+");
-                    currentEntry.setLocus(parts[1]);
-                } else if (line.startsWith("ACCESSION") && currentEntry != null) {
-                    currentEntry.setAccession(line);
-                } else if (line.startsWith("DEFINITION") && currentEntry != null) {
-                    /* Definition can be multiple lines, so a StringBuilder is used to concatenate the lines,
-                     starting with 12 space indents.
-                     The tag is removed from the first line, and the rest of the lines are concatenated.
-                     This pattern is used for other fields as well but isn't able to be abstracted into a method due to high complexity of the formatting.
-                     */
-                    StringBuilder sb = new StringBuilder(line.substring(10));
-                    while (scanner.hasNextLine() && (line = scanner.nextLine()).startsWith("            ")) {
-                        sb.append(line.strip());
-                        sb.append(" ");
+                    /* Fields can span multiple lines, the tokenizer joins the continuation lines (indented by 12 spaces)
+                    with single spaces and reads ahead to the next keyword. */
+                    case ACCESSION -> {
+                        if (currentEntry != null) {
+                            currentEntry.setAccession(tokenizer.continuedValue());
+                        }
                     }
-                    currentEntry.setDefinition(sb.toString().strip());
-                } else if (line.startsWith("REFERENCE") && currentEntry != null) {
-                    if (currentReference != null) {
-                        currentEntry.getReferences().add(currentReference);
+                    case DEFINITION -> {
+                        if (currentEntry != null) {
+                            currentEntry.setDefinition(tokenizer.continuedValue());
+                        }
                     }
-                    currentReference = new GenbankReference();
-                } else if (line.startsWith("AUTHORS") && currentReference != null) {
-                    StringBuilder sb = new StringBuilder(line.substring(8));
-                    while (scanner.hasNextLine() && (line = scanner.nextLine()).startsWith("            ")) {
-                        sb.append(line.strip());
-                        sb.append(" ");
+                    case REFERENCE -> {
+                        if (currentEntry != null) {
+                            if (currentReference != null) {
+                                currentEntry.getReferences().add(currentReference);
+                            }
+                            currentReference = new GenbankReference();
+                        }
                     }
-                    // Split the authors by comma and 'and' and add them to the reference, whitespaces are accounted for in case names contain the phrase 'and'.
-                    String[] authors = sb.toString().split("(,\\s)|(\\sand\\s)");
-                    for (String author : authors) {
-                        currentReference.addAuthor(author.strip());
+                    case AUTHORS -> {
+                        if (currentReference != null) {
+                            // Authors are split by comma and 'and', whitespaces are accounted for in case names contain the phrase 'and'.
+                            tokenizer.continuedAuthors(currentReference::addAuthor);
+                        }
                     }
-                    continue;
-                } else if (line.startsWith("TITLE") && currentReference != null) {
-                    StringBuilder sb = new StringBuilder(line.substring(5));
-                    while (scanner.hasNextLine() && (line = scanner.nextLine()).startsWith("            ")) {
-                        sb.append(line.strip());
-                        sb.append(" ");
+                    case TITLE -> {
+                        if (currentReference != null) {
+                            currentReference.setTitle(tokenizer.continuedValue());
+                        }
                     }
-                    currentReference.setTitle(sb.toString().strip());
-                } else if (line.startsWith("JOURNAL") && currentReference != null) {
-                    StringBuilder sb = new StringBuilder(line.substring(7));
-                    while (scanner.hasNextLine() && (line = scanner.nextLine()).startsWith("            ")) {
-                        sb.append(line);
-                        sb.append(" ");
+                    case JOURNAL -> {
+                        if (currentReference != null) {
+                            currentReference.setJournal(tokenizer.continuedValue());
+                        }
+                    }
+                    case PUBMED -> {
+                        if (currentReference != null) {
+                            currentReference.setPubmedId(tokenizer.intValue());
+                        }
+                    }
+                    case FEATURES, ORIGIN -> {
+                        /* None of the fields after the header are stored, so the feature table and sequence are skipped
+                        up to the "//" terminator without tokenizing their lines. */
+                        if (sequences == null || currentEntry == null) {
+                            tokenizer.skipRecord();
+                        } else if (keyword == GenbankTokenizer.Keyword.FEATURES) {
+                            tokenizer.skipFeatures();
+                        } else {
+                            GenbankEntry entry = currentEntry;
+                            tokenizer.continuedSequence((bases, length) -> sequences.onSequence(entry, bases, length));
+                        }
+                    }
+                    default -> {
+                        // Lines of other keywords are not stored.
                     }
-                    currentReference.setJournal(sb.toString().strip());
-                } else if (line.startsWith("PUBMED") && currentReference != null) {
-                    currentReference.setPubmedId(Integer.parseInt(line.substring(7).strip()));
-                }
-                if (scanner.hasNextLine()) {
-                    line = scanner.nextLine();
-                } else {
-                    // If there are no more lines, set the line to null to exit the loop.
-                    line = null;
                 }
             }
             // Add reference to current entry
             if (currentReference != null) {
                 currentEntry.getReferences().add(currentReference);
             }
-        } catch (FileNotFoundException e) {
+            if (currentEntry != null) {
+                currentEntry.setLength(offset + tokenizer.offset() - currentEntry.getOffset());
+            }
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Add the last entry to the list
-        entries.add(currentEntry);
-        return entries;
+        // Hand over the last entry, a stream without any LOCUS line has no entries.
+        if (currentEntry != null) {
+            listener.onEntry(currentEntry);
+        }
     }
 
     /**
      * Method to unzip a Genbank file in case it is compressed.
      * <p>
-     *     The method creates a temporary file to store the uncompressed file which is deleted on exit,
-     *     it is called in the {@link GenbankExplorer#call()} method whenever the file ends with ".gz".
+     *     The method creates a temporary file to store the uncompressed file which is deleted on exit.
+     *     It is no longer used by {@link GenbankExplorer#call()}, which parses ".gz" files directly through {@link GenbankInput#open(File)},
+     *     but is retained for callers that need an uncompressed copy on disk.
      *     The method is based on an example found on <a href="https://www.digitalocean.com/community/tutorials/java-gzip-example-compress-decompress-file">Digital Ocean</a>
      *
      * @param file The file to be uncompressed.
      * @return The uncompressed file.
-     * @see GenbankExplorer#call()
+     * @see GenbankInput
      */
     public static File gUnzip(File file)  {
         	File newFile = null;
@@ -145,7 +214,7 @@ public class GenbankParser {
         		newFile.deleteOnExit();
         		GZIPInputStream gzipInputStream = new GZIPInputStream(new FileInputStream(file));
         		FileOutputStream fileOutputStream = new FileOutputStream(newFile);
-        		byte[] buffer = new byte[1024];
+        		byte[] buffer = new byte[GenbankInput.BUFFER_SIZE];
         		int len;
         		while ((len = gzipInputStream.read(buffer)) != -1) {
         			fileOutputStream.write(buffer, 0, len);
@@ -0,0 +1,432 @@
+package net.soko;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * This class reads and decompresses Genbank files on background threads, so the parser does not wait for I/O or inflation.
+ * <p> A file opened by the pipeline is read in stages that are linked by bounded queues of blocks:
+ * <ul>
+ *     <li> a reader thread reads the file in blocks of {@link #BLOCK_SIZE}, </li>
+ *     <li> for gzip files, an inflater thread decompresses the blocks, </li>
+ *     <li> the parser reads the decompressed blocks through the returned {@link InputStream}. </li>
+ * </ul>
+ * When a stage is ahead, it blocks on the full queue, which bounds the memory of a file to a few blocks per stage.
+ * <p> BGZF files, gzip files made of independent members that each record their compressed size (as written by bgzip),
+ * are split into members by the reader and inflated by a pool of threads. The inflated blocks are queued in file order.
+ * Other gzip files, including multi-member files without sizes, can only be inflated from start to end by one thread.
+ * <p> Files can be opened ahead of the file that is being parsed, so reading the next file overlaps with parsing this one.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         File file = new File("gbbct1.seq.gz");
+ *         try (GenbankPipeline pipeline = new GenbankPipeline(4, 4);
+ *              InputStream in = pipeline.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, listener, null);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankLoader
+ */
+public class GenbankPipeline implements AutoCloseable {
+    /**
+     * Size of the blocks passed between the stages.
+     */
+    public static final int BLOCK_SIZE = 1 << 20;
+    /**
+     * Marks the end of a queue of blocks.
+     */
+    private static final byte[] END = new byte[0];
+    /**
+     * Fixed size of the header of a gzip member, and the size of the BGZF extra subfield with the size of the member.
+     */
+    private static final int GZIP_HEADER = 12;
+    private static final int GZIP_TRAILER = 8;
+    private static final int BGZF_SUBFIELD = 6;
+
+    private final int depth;
+    private final ExecutorService stages;
+    private final ExecutorService inflaters;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param inflaters The number of threads that inflate the members of BGZF files.
+     * @param depth     The number of blocks that every queue holds before the stage that fills it blocks.
+     */
+    public GenbankPipeline(int inflaters, int depth) {
+        this.depth = Math.max(depth, 1);
+        this.stages = Executors.newCachedThreadPool(daemon("genbank-stage"));
+        this.inflaters = Executors.newFixedThreadPool(Math.max(inflaters, 1), daemon("genbank-inflater"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts reading a file on the background threads.
+     *
+     * @param file The file to read, gzip compressed if its name ends with ".gz".
+     * @return the decompressed contents of the file. Closing the stream stops the stages of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public InputStream open(File file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * Starts reading a file on the background threads, and updates a checksum with its raw bytes on the reader thread.
+     * The checksum is complete once the returned stream has been read to its end.
+     *
+     * @param file     The file to read, gzip compressed if its name ends with ".gz".
+     * @param checksum Receives the raw, possibly compressed, bytes of the file as they are read, or null.
+     * @return the decompressed contents of the file. Closing the stream stops the stages of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public InputStream open(File file, Checksum checksum) throws IOException {
+        BlockStream out = new BlockStream(depth);
+        if (!GenbankInput.isCompressed(file)) {
+            out.start(stages, () -> read(file, out, checksum));
+        } else if (isBgzf(file)) {
+            out.start(stages, () -> readBgzf(file, out, checksum));
+        } else {
+            BlockStream compressed = new BlockStream(depth);
+            out.start(stages, () -> read(file, compressed, checksum));
+            out.start(stages, () -> inflate(compressed, out));
+            out.onClose(compressed);
+        }
+        return out;
+    }
+
+    /**
+     * Stops all stages, streams that are still open return an error when they are read.
+     */
+    @Override
+    public void close() {
+        stages.shutdownNow();
+        inflaters.shutdownNow();
+    }
+
+    /**
+     * Checks whether a file starts with a BGZF member, a gzip member whose only extra subfield "BC" holds its size.
+     *
+     * @param file The gzip file.
+     * @return true if the file is BGZF.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isBgzf(File file) throws IOException {
+        byte[] header = new byte[GZIP_HEADER + BGZF_SUBFIELD];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(header);
+        } catch (EOFException e) {
+            return false;
+        }
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && header[3] == 4
+                && unsignedShort(header, 10) == BGZF_SUBFIELD && header[12] == 'B' && header[13] == 'C' && unsignedShort(header, 14) == 2;
+    }
+
+    private static int unsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int unsignedInt(byte[] bytes, int offset) {
+        return unsignedShort(bytes, offset) | unsignedShort(bytes, offset + 2) << 16;
+    }
+
+    /**
+     * Reader stage, queues the raw bytes of a file.
+     */
+    private static void read(File file, BlockStream out, Checksum checksum) throws Exception {
+        try (InputStream in = GenbankInput.checked(new FileInputStream(file), checksum)) {
+            while (true) {
+                byte[] block = in.readNBytes(BLOCK_SIZE);
+                if (block.length == 0) {
+                    break;
+                }
+                out.put(block);
+            }
+        }
+        out.put(END);
+    }
+
+    /**
+     * Inflater stage for gzip files without member sizes, queues the inflated bytes.
+     */
+    private static void inflate(BlockStream compressed, BlockStream out) throws Exception {
+        try (InputStream in = new GZIPInputStream(compressed, GenbankInput.BUFFER_SIZE)) {
+            while (true) {
+                byte[] block = in.readNBytes(BLOCK_SIZE);
+                if (block.length == 0) {
+                    break;
+                }
+                out.put(block);
+            }
+        }
+        out.put(END);
+    }
+
+    /**
+     * Reader stage for BGZF files, groups whole members into batches that are inflated by the pool.
+     * The futures of the batches are queued in file order, so the queue also bounds the number of batches in flight.
+     */
+    private void readBgzf(File file, BlockStream out, Checksum checksum) throws Exception {
+        InputStream raw = GenbankInput.checked(new FileInputStream(file), checksum);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(raw, GenbankInput.BUFFER_SIZE))) {
+            List<byte[]> batch = new ArrayList<>();
+            int batchSize = 0;
+            byte[] header = new byte[GZIP_HEADER];
+            while (true) {
+                int read = in.readNBytes(header, 0, GZIP_HEADER);
+                if (read == 0) {
+                    break;
+                } else if (read < GZIP_HEADER || (header[3] & 4) == 0) {
+                    throw new IOException("Invalid BGZF member in " + file);
+                }
+                byte[] extra = new byte[unsignedShort(header, 10)];
+                in.readFully(extra);
+                int size = memberSize(extra);
+                if (size < 0) {
+                    throw new IOException("BGZF member without size in " + file);
+                }
+                byte[] member = new byte[size];
+                System.arraycopy(header, 0, member, 0, GZIP_HEADER);
+                System.arraycopy(extra, 0, member, GZIP_HEADER, extra.length);
+                in.readFully(member, GZIP_HEADER + extra.length, size - GZIP_HEADER - extra.length);
+                batch.add(member);
+                batchSize += size;
+                if (batchSize >= BLOCK_SIZE) {
+                    submit(batch, out);
+                    batch = new ArrayList<>();
+                    batchSize = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, out);
+            }
+        }
+        out.put(END);
+    }
+
+    private void submit(List<byte[]> members, BlockStream out) throws InterruptedException {
+        out.put(inflaters.submit(() -> inflateMembers(members)));
+    }
+
+    /**
+     * Finds the "BC" subfield in the extra field of a member.
+     *
+     * @return the size of the whole member, or -1 if the member has no size.
+     */
+    private static int memberSize(byte[] extra) {
+        for (int i = 0; i + 4 <= extra.length; ) {
+            int length = unsignedShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length) {
+                return unsignedShort(extra, i + 4) + 1;
+            }
+            i += 4 + length;
+        }
+        return -1;
+    }
+
+    /**
+     * Inflates whole BGZF members, the size and checksum of every member are checked against its trailer.
+     */
+    private static byte[] inflateMembers(List<byte[]> members) throws IOException, DataFormatException {
+        int total = 0;
+        for (byte[] member : members) {
+            total += unsignedInt(member, member.length - 4);
+        }
+        byte[] result = new byte[total];
+        int position = 0;
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            for (byte[] member : members) {
+                int start = GZIP_HEADER + unsignedShort(member, 10);
+                int size = unsignedInt(member, member.length - 4);
+                inflater.reset();
+                inflater.setInput(member, start, member.length - GZIP_TRAILER - start);
+                int inflated = 0;
+                while (inflated < size && !inflater.finished()) {
+                    int n = inflater.inflate(result, position + inflated, size - inflated);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                crc.reset();
+                crc.update(result, position, inflated);
+                if (inflated != size || (int) crc.getValue() != unsignedInt(member, member.length - GZIP_TRAILER)) {
+                    throw new IOException("Corrupt BGZF member");
+                }
+                position += size;
+            }
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /**
+     * Bounded queue of blocks between two stages, read as a stream by the next stage.
+     * Blocks are queued as futures, so blocks that are still being inflated keep their place in the order.
+     */
+    private static final class BlockStream extends InputStream {
+        private final BlockingQueue<Future<byte[]>> queue;
+        private final List<Future<?>> producers = new ArrayList<>();
+        private final List<BlockStream> upstream = new ArrayList<>();
+        private byte[] block = new byte[0];
+        private int position;
+        private boolean ended;
+        /**
+         * The first failure of a stage, checked by the reader before and after it waits for a block, so it cannot be lost.
+         */
+        private volatile Exception failure;
+
+        private BlockStream(int depth) {
+            this.queue = new ArrayBlockingQueue<>(depth);
+        }
+
+        /**
+         * Runs a stage that fills this or an earlier queue, a failure of the stage is passed on to the reader of this stream.
+         */
+        private void start(ExecutorService executor, Stage stage) {
+            producers.add(executor.submit(() -> {
+                try {
+                    stage.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    // Wakes up the reader. If another stage fills the queue first, the reader takes that block instead
+                    // and then finds the failure.
+                    queue.clear();
+                    queue.offer(CompletableFuture.failedFuture(e));
+                }
+                return null;
+            }));
+        }
+
+        private void onClose(BlockStream stream) {
+            upstream.add(stream);
+        }
+
+        private void put(byte[] block) throws InterruptedException {
+            queue.put(CompletableFuture.completedFuture(block));
+        }
+
+        private void put(Future<byte[]> block) throws InterruptedException {
+            queue.put(block);
+        }
+
+        /**
+         * Makes the next block current.
+         *
+         * @return false at the end of the stream.
+         */
+        private boolean next() throws IOException {
+            while (!ended && position == block.length) {
+                checkFailure();
+                try {
+                    Future<byte[]> next = queue.take();
+                    checkFailure();
+                    block = next.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for input", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                position = 0;
+                ended = block == END;
+            }
+            return !ended;
+        }
+
+        private void checkFailure() throws IOException {
+            Exception e = failure;
+            if (e != null) {
+                throw e instanceof IOException io ? io : new IOException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? block[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(length, block.length - position);
+            System.arraycopy(block, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        /**
+         * Returns at least 1 until the end of the stream, even if the next block has not arrived yet.
+         * {@link GZIPInputStream} only looks for a next member of a multi-member file if bytes are available.
+         */
+        @Override
+        public int available() {
+            return ended ? 0 : Math.max(block.length - position, 1);
+        }
+
+        /**
+         * Stops the stages that fill this stream, and frees the blocks that were not read.
+         */
+        @Override
+        public void close() {
+            for (Future<?> producer : producers) {
+                producer.cancel(true);
+            }
+            for (BlockStream stream : upstream) {
+                stream.close();
+            }
+            queue.clear();
+            ended = true;
+        }
+    }
+
+    /**
+     * Body of a stage.
+     */
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,1152 @@
+package net.soko;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * This class represents one of the queries of the {@link GenbankExplorer}, evaluated incrementally while entries are parsed.
+ * <p> A query is a {@link GenbankRecordListener}, so it only keeps the data it needs for its result and never the entries themselves.
+ * When files are parsed in parallel every task feeds its own {@link #copy()} of the query, and the copies are combined with
+ * {@link #merge(GenbankQuery)} in file order, which gives the same result as a single query that saw all entries.
+ * <p> Alternatively, a query can {@link #collect(GenbankIndex)} its result from a {@link GenbankIndex} that was built at ingest,
+ * which gives the same result.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankQuery query = new GenbankQuery.ByAuthor("Reilly,L.P.");
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, query, null);
+ *         }
+ *         List<String> publications = query.results();
+ *         }
+ *         </pre>
+ *
+ * @see GenbankExplorer
+ * @see GenbankLoader#stream(List, int, java.util.function.Supplier, GenbankCache, GenbankStats, GenbankPipeline)
+ */
+public abstract class GenbankQuery implements GenbankRecordListener {
+    /**
+     * Hint printed when no results are found for an author, authors are matched exactly.
+     */
+    private static final String EXACT_AUTHOR_HINT = "Please type an exact match for the author's name. For example, \"Reilly,L.P.\" instead of \"Reilly\"." +
+            System.lineSeparator() + "Use --find-author Reilly to look up the exact names.";
+
+    /**
+     * Values found so far, a set is used to avoid duplicates.
+     */
+    protected final Set<String> found = new HashSet<>();
+
+    /**
+     * Creates an empty query with the same arguments, used to evaluate the query on part of the files.
+     *
+     * @return a query that has not seen any entries.
+     */
+    public abstract GenbankQuery copy();
+
+    /**
+     * Adds the results of a copy of this query, that was fed the entries following the ones this query has seen.
+     *
+     * @param other A copy of this query.
+     */
+    public void merge(GenbankQuery other) {
+        found.addAll(other.found);
+    }
+
+    /**
+     * Evaluates the query against an index instead of the parsed entries.
+     *
+     * @param index The index of all entries.
+     */
+    public abstract void collect(GenbankIndex index);
+
+    /**
+     * A query of an author or a title, which can also be told about the references that match its author or title.
+     * <p> Used by {@link GenbankBatch}, which finds the matching references of many queries in one pass instead of letting
+     * every query look at every entry.
+     *
+     * @param <Q> The type of the query itself, so its copies can be told about matches as well.
+     */
+    public interface MatchListener<Q extends GenbankQuery & MatchListener<Q>> {
+        /**
+         * Adds the result of a reference that matches the author or title of the query.
+         * The references of a query are matched in file order.
+         *
+         * @param entry     The entry of the reference.
+         * @param reference The matching reference.
+         */
+        void onMatch(GenbankEntry entry, GenbankReference reference);
+
+        /**
+         * Creates an empty query with the same arguments, see {@link GenbankQuery#copy()}.
+         *
+         * @return a query that has not seen any entries.
+         */
+        Q copy();
+    }
+
+    /**
+     * Returns the results of the query, sorted alphabetically.
+     *
+     * @return the sorted results.
+     */
+    public List<String> results() {
+        List<String> results = new ArrayList<>(found);
+        results.sort(String::compareTo);
+        return results;
+    }
+
+    /**
+     * Returns whether the query has no results, without building the list of {@link #results()}.
+     * <p> Queries that do not keep their results in {@link #found} override this.
+     *
+     * @return true if {@link #results()} is empty.
+     */
+    public boolean isEmpty() {
+        return found.isEmpty();
+    }
+
+    /**
+     * Writes the results of the query to an output, one per line.
+     * <p> Queries whose results do not fit in memory, or are not lines, write them without building the list of {@link #results()}.
+     *
+     * @param output The output to write to.
+     * @throws IOException if the output cannot be written.
+     */
+    public void writeResults(GenbankOutput output) throws IOException {
+        for (String result : results()) {
+            output.writeLine(result);
+        }
+    }
+
+    /**
+     * Returns the line printed above the results on std-out.
+     *
+     * @return the header of the results.
+     */
+    public abstract String header();
+
+    /**
+     * Returns the message printed when the query has no results.
+     *
+     * @return the message, or null if the header is printed regardless.
+     */
+    public String emptyMessage() {
+        return null;
+    }
+
+    /**
+     * Base of the queries for all distinct values of the listed files, which are sorted once all entries are seen.
+     * <p> By default the values are kept in memory. Given an {@link ExternalSortedSet}, values beyond its memory budget are
+     * sorted on disk instead, and the results are merged from its runs while they are written. All copies of the query then
+     * add to the same set, so merging the copies has nothing left to do.
+     */
+    public abstract static class DistinctQuery extends GenbankQuery {
+        private final ExternalSortedSet sorted;
+
+        /**
+         * Creates the query.
+         *
+         * @param sorted The set to sort the values in, or null to keep them in memory.
+         */
+        protected DistinctQuery(ExternalSortedSet sorted) {
+            this.sorted = sorted;
+        }
+
+        protected ExternalSortedSet sorted() {
+            return sorted;
+        }
+
+        protected void add(String value) {
+            if (sorted != null) {
+                sorted.add(value);
+            } else {
+                found.add(value);
+            }
+        }
+
+        protected void addAll(Collection<String> values) {
+            if (sorted != null) {
+                sorted.addAll(values);
+            } else {
+                found.addAll(values);
+            }
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            if (sorted == null) {
+                super.merge(other);
+            }
+        }
+
+        @Override
+        public List<String> results() {
+            if (sorted == null) {
+                return super.results();
+            }
+            List<String> results = new ArrayList<>();
+            try {
+                sorted.forEach(results::add);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return results;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sorted != null ? sorted.isEmpty() : found.isEmpty();
+        }
+
+        @Override
+        public void writeResults(GenbankOutput output) throws IOException {
+            if (sorted == null) {
+                super.writeResults(output);
+            } else {
+                sorted.forEach(output::writeLine);
+            }
+        }
+    }
+
+    /**
+     * Query for all authors in listed files.
+     */
+    public static class Authors extends DistinctQuery {
+        public Authors() {
+            this(null);
+        }
+
+        /**
+         * Creates the query.
+         *
+         * @param sorted The set to sort the authors in, or null to keep them in memory.
+         */
+        public Authors(ExternalSortedSet sorted) {
+            super(sorted);
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                addAll(reference.getAuthors());
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            addAll(index.authors());
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Authors(sorted());
+        }
+
+        @Override
+        public String header() {
+            return "Authors found:";
+        }
+    }
+
+    /**
+     * Query for all publications in listed files.
+     */
+    public static class Publications extends DistinctQuery {
+        public Publications() {
+            this(null);
+        }
+
+        /**
+         * Creates the query.
+         *
+         * @param sorted The set to sort the titles in, or null to keep them in memory.
+         */
+        public Publications(ExternalSortedSet sorted) {
+            super(sorted);
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                add(reference.getTitle());
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            addAll(index.titles());
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Publications(sorted());
+        }
+
+        @Override
+        public String header() {
+            return "Publications found:";
+        }
+    }
+
+    /**
+     * Query for all publications by an author, the author needs to be an exact match.
+     */
+    public static class ByAuthor extends GenbankQuery implements MatchListener<ByAuthor> {
+        private final String author;
+
+        public ByAuthor(String author) {
+            this.author = author;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                if (reference.getAuthors().contains(author)) {
+                    found.add(reference.getTitle());
+                }
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            found.addAll(index.titlesByAuthor(author));
+        }
+
+        @Override
+        public void onMatch(GenbankEntry entry, GenbankReference reference) {
+            found.add(reference.getTitle());
+        }
+
+        @Override
+        public ByAuthor copy() {
+            return new ByAuthor(author);
+        }
+
+        @Override
+        public String header() {
+            return "Publications by " + author + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No publications found for " + author + System.lineSeparator() + EXACT_AUTHOR_HINT;
+        }
+    }
+
+    /**
+     * Query for the authors whose name starts with, or is within a few edits of, the given text, ranked by an {@link AuthorSearch}.
+     * <p> While parsing, the query counts the references of every author, the search is built over them once all entries are seen.
+     */
+    public static class FindAuthor extends GenbankQuery {
+        /**
+         * Maximum number of authors that are listed.
+         */
+        public static final int LIMIT = 20;
+
+        private final String text;
+        private final Map<String, Integer> references = new HashMap<>();
+        private List<AuthorSearch.Match> matches;
+
+        public FindAuthor(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                for (String author : reference.getAuthors()) {
+                    references.merge(author, 1, Integer::sum);
+                }
+            }
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            ((FindAuthor) other).references.forEach((author, count) -> references.merge(author, count, Integer::sum));
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            matches = index.authorSearch().search(text, LIMIT);
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new FindAuthor(text);
+        }
+
+        /**
+         * Returns the matching authors, best match first, with their number of references.
+         *
+         * @return the ranked results.
+         */
+        @Override
+        public List<String> results() {
+            List<String> results = new ArrayList<>(matches().size());
+            for (AuthorSearch.Match match : matches()) {
+                results.add(match.author() + " (" + match.references() + (match.references() == 1 ? " reference)" : " references)"));
+            }
+            return results;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return matches().isEmpty();
+        }
+
+        /**
+         * Searches the authors that were parsed on first use, unless the matches were collected from an index.
+         */
+        private List<AuthorSearch.Match> matches() {
+            if (matches == null) {
+                List<String> authors = new ArrayList<>(references.keySet());
+                int[] counts = new int[authors.size()];
+                for (int a = 0; a < counts.length; a++) {
+                    counts[a] = references.get(authors.get(a));
+                }
+                matches = new AuthorSearch(authors, counts).search(text, LIMIT);
+            }
+            return matches;
+        }
+
+        @Override
+        public String header() {
+            return "Authors like " + text + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No authors found like " + text;
+        }
+    }
+
+    /**
+     * Query for the authors with the most publications, genomes or co-authors.
+     * <p> While parsing, authors, titles and loci are interned into int ids, and the distinct (author, title), (author, locus)
+     * and (author, co-author) pairs are kept in primitive sets. The counts are taken from the sets once all entries are seen,
+     * and the top authors are selected with a heap of k authors instead of sorting all of them.
+     * <p> Publications are distinct titles and genomes are distinct loci, so the counts of an author are the number of
+     * results of -ba and -ag for that author.
+     */
+    public static class TopAuthors extends GenbankQuery {
+        /**
+         * What the authors are ranked by, every measure is listed in the results.
+         */
+        public enum Measure {
+            PUBLICATIONS("publications"), GENOMES("genomes"), COAUTHORS("co-authors");
+
+            private final String label;
+
+            Measure(String label) {
+                this.label = label;
+            }
+
+            /**
+             * Finds a measure by its name or label in any case, such as "genomes" or "co-authors".
+             *
+             * @param text The name of the measure.
+             * @return the measure.
+             * @throws IllegalArgumentException if no measure has this name.
+             */
+            public static Measure parse(String text) {
+                for (Measure measure : values()) {
+                    if (measure.name().equalsIgnoreCase(text) || measure.label.equalsIgnoreCase(text)) {
+                        return measure;
+                    }
+                }
+                throw new IllegalArgumentException("Unknown measure " + text + ", expected publications, genomes or co-authors");
+            }
+
+            @Override
+            public String toString() {
+                return label;
+            }
+        }
+
+        private final int k;
+        private final Measure measure;
+        private final StringDictionary authors = new StringDictionary();
+        private final StringDictionary titles = new StringDictionary();
+        private final StringDictionary loci = new StringDictionary();
+        private final LongSet authorTitles = new LongSet();
+        private final LongSet authorLoci = new LongSet();
+        /**
+         * Pairs of co-authors, the lower id first.
+         */
+        private final LongSet coauthors = new LongSet();
+        private final IntList referenceAuthors = new IntList();
+        /**
+         * Author names and the counts of every measure, set by {@link #collect(GenbankIndex)} or taken from the sets.
+         */
+        private List<String> names;
+        private int[][] counts;
+
+        /**
+         * Creates the query.
+         *
+         * @param k       The number of authors to list.
+         * @param measure What to rank the authors by.
+         * @throws IllegalArgumentException if k is not positive.
+         */
+        public TopAuthors(int k, Measure measure) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("The number of authors must be positive: " + k);
+            }
+            this.k = k;
+            this.measure = measure;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            int locus = loci.add(entry.getLocus());
+            for (GenbankReference reference : entry.getReferences()) {
+                int title = titles.add(reference.getTitle());
+                referenceAuthors.clear();
+                for (String author : reference.getAuthors()) {
+                    int id = authors.add(author);
+                    authorTitles.add(LongSet.pair(id, title));
+                    authorLoci.add(LongSet.pair(id, locus));
+                    for (int i = 0; i < referenceAuthors.size(); i++) {
+                        addCoauthors(id, referenceAuthors.get(i));
+                    }
+                    referenceAuthors.add(id);
+                }
+            }
+        }
+
+        private void addCoauthors(int a, int b) {
+            coauthors.add(LongSet.pair(Math.min(a, b), Math.max(a, b)));
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            TopAuthors partial = (TopAuthors) other;
+            int[] authorIds = authors.addAll(partial.authors);
+            int[] titleIds = titles.addAll(partial.titles);
+            int[] locusIds = loci.addAll(partial.loci);
+            partial.authorTitles.forEach(pair -> authorTitles.add(LongSet.pair(authorIds[LongSet.first(pair)], titleIds[LongSet.second(pair)])));
+            partial.authorLoci.forEach(pair -> authorLoci.add(LongSet.pair(authorIds[LongSet.first(pair)], locusIds[LongSet.second(pair)])));
+            partial.coauthors.forEach(pair -> addCoauthors(authorIds[LongSet.first(pair)], authorIds[LongSet.second(pair)]));
+        }
+
+        /**
+         * Counts the distinct titles, loci and co-authors of every author from the postings of the index.
+         * Every author marks what it has counted with its own id, so no sets are needed.
+         */
+        @Override
+        public void collect(GenbankIndex index) {
+            GenbankStore store = index.getStore();
+            StringDictionary entryLoci = new StringDictionary();
+            int[] locusOf = new int[store.entryCount()];
+            for (int e = 0; e < locusOf.length; e++) {
+                locusOf[e] = entryLoci.add(store.locus(e));
+            }
+            int authorCount = store.authors().size();
+            int[] titleMark = filled(store.titles().size());
+            int[] locusMark = filled(entryLoci.size());
+            int[] authorMark = filled(authorCount);
+            counts = new int[Measure.values().length][authorCount];
+            for (int a = 0; a < authorCount; a++) {
+                IntList references = index.referencesByAuthor(a);
+                authorMark[a] = a;
+                for (int i = 0; i < references.size(); i++) {
+                    int reference = references.get(i);
+                    counts[Measure.PUBLICATIONS.ordinal()][a] += mark(titleMark, store.referenceTitle(reference), a);
+                    counts[Measure.GENOMES.ordinal()][a] += mark(locusMark, locusOf[store.referenceEntry(reference)], a);
+                    for (int j = store.authorStart(reference); j < store.authorEnd(reference); j++) {
+                        counts[Measure.COAUTHORS.ordinal()][a] += mark(authorMark, store.author(j), a);
+                    }
+                }
+            }
+            names = index.authors();
+        }
+
+        private static int[] filled(int size) {
+            int[] marks = new int[size];
+            Arrays.fill(marks, -1);
+            return marks;
+        }
+
+        /**
+         * Marks an id for an author.
+         *
+         * @return 1 if the id was not marked for the author yet, 0 otherwise.
+         */
+        private static int mark(int[] marks, int id, int author) {
+            if (marks[id] == author) {
+                return 0;
+            }
+            marks[id] = author;
+            return 1;
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new TopAuthors(k, measure);
+        }
+
+        /**
+         * Parses the argument of a top authors query in a query file: the number of authors, optionally followed by the measure.
+         *
+         * @param argument The argument, such as "10" or "10 co-authors".
+         * @return the query.
+         * @throws IllegalArgumentException if the argument is not valid.
+         */
+        public static TopAuthors parse(String argument) {
+            String[] parts = argument.trim().split("\\s+");
+            if (parts.length > 2) {
+                throw new IllegalArgumentException("Expected a number of authors and a measure, got " + argument);
+            }
+            Measure measure = parts.length > 1 ? Measure.parse(parts[1]) : Measure.PUBLICATIONS;
+            return new TopAuthors(Integer.parseInt(parts[0]), measure);
+        }
+
+        /**
+         * Returns the top authors, most first, with all their counts. Authors with the same count are sorted by name.
+         *
+         * @return the ranked results.
+         */
+        @Override
+        public List<String> results() {
+            if (counts == null) {
+                counts = new int[Measure.values().length][authors.size()];
+                authorTitles.forEach(pair -> counts[Measure.PUBLICATIONS.ordinal()][LongSet.first(pair)]++);
+                authorLoci.forEach(pair -> counts[Measure.GENOMES.ordinal()][LongSet.first(pair)]++);
+                coauthors.forEach(pair -> {
+                    counts[Measure.COAUTHORS.ordinal()][LongSet.first(pair)]++;
+                    counts[Measure.COAUTHORS.ordinal()][LongSet.second(pair)]++;
+                });
+                names = authors.strings();
+            }
+            int[] ranked = counts[measure.ordinal()];
+            Comparator<Integer> order = Comparator.<Integer>comparingInt(a -> ranked[a]).reversed().thenComparing(names::get);
+            // The head of the heap is the weakest of the best k authors so far.
+            PriorityQueue<Integer> top = new PriorityQueue<>(k + 1, order.reversed());
+            for (int a = 0; a < names.size(); a++) {
+                top.add(a);
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+            List<Integer> best = new ArrayList<>(top);
+            best.sort(order);
+            List<String> results = new ArrayList<>(best.size());
+            for (int a : best) {
+                StringBuilder line = new StringBuilder(names.get(a)).append(':');
+                for (Measure counted : Measure.values()) {
+                    line.append(counted.ordinal() == 0 ? " " : ", ").append(counts[counted.ordinal()][a]).append(' ').append(counted);
+                }
+                results.add(line.toString());
+            }
+            return results;
+        }
+
+        /**
+         * Returns whether no author was seen, k is positive so every author that was seen is listed.
+         */
+        @Override
+        public boolean isEmpty() {
+            return names != null ? names.isEmpty() : authors.size() == 0;
+        }
+
+        @Override
+        public String header() {
+            return "Top " + k + " authors by " + measure + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No authors found";
+        }
+    }
+
+    /**
+     * Base of the queries over the {@link CoauthorGraph}, which needs all references before it can be built.
+     * <p> While parsing, the entries are kept in a compact {@link GenbankStore}, which is indexed once all entries are seen.
+     * From an index, the graph of the index is used, which is built once and kept for later queries.
+     */
+    public abstract static class GraphQuery extends GenbankQuery {
+        private final GenbankStore store = new GenbankStore();
+        private List<String> results;
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            store.onEntry(entry);
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            store.merge(((GraphQuery) other).store);
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            results = evaluate(index.coauthorGraph());
+        }
+
+        /**
+         * Answers the query from the graph.
+         *
+         * @param graph The graph of all references.
+         * @return the results, in the order in which they are printed.
+         */
+        protected abstract List<String> evaluate(CoauthorGraph graph);
+
+        @Override
+        public List<String> results() {
+            if (results == null) {
+                results = evaluate(new GenbankIndex(store).coauthorGraph());
+            }
+            return results;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            // The results are kept, so they are evaluated once for both.
+            return results().isEmpty();
+        }
+    }
+
+    /**
+     * Query for the co-authors of an author, the author needs to be an exact match.
+     */
+    public static class Coauthors extends GraphQuery {
+        private final String author;
+
+        public Coauthors(String author) {
+            this.author = author;
+        }
+
+        @Override
+        protected List<String> evaluate(CoauthorGraph graph) {
+            List<String> results = new ArrayList<>();
+            for (CoauthorGraph.Neighbor neighbor : graph.neighbors(author)) {
+                results.add(neighbor.author() + " (" + neighbor.publications() + (neighbor.publications() == 1 ? " publication)" : " publications)"));
+            }
+            return results;
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Coauthors(author);
+        }
+
+        @Override
+        public String header() {
+            return "Co-authors of " + author + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No co-authors found for " + author + System.lineSeparator() + EXACT_AUTHOR_HINT;
+        }
+    }
+
+    /**
+     * Query for a shortest chain of co-authors between two authors, both need to be an exact match.
+     */
+    public static class CollaborationPath extends GraphQuery {
+        private final String from;
+        private final String to;
+
+        public CollaborationPath(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<String> evaluate(CoauthorGraph graph) {
+            return graph.shortestPath(from, to);
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new CollaborationPath(from, to);
+        }
+
+        @Override
+        public String header() {
+            return "Collaboration path from " + from + " to " + to + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No collaboration path found from " + from + " to " + to + System.lineSeparator() + EXACT_AUTHOR_HINT;
+        }
+    }
+
+    /**
+     * Query for the connected components of the co-authorship graph.
+     */
+    public static class Components extends GraphQuery {
+        /**
+         * Number of component sizes that are listed.
+         */
+        private static final int LARGEST = 10;
+
+        @Override
+        protected List<String> evaluate(CoauthorGraph graph) {
+            CoauthorGraph.Components components = graph.components();
+            StringBuilder largest = new StringBuilder();
+            for (int i = 0; i < Math.min(LARGEST, components.count()); i++) {
+                largest.append(i == 0 ? "" : ", ").append(components.sizes()[i]);
+            }
+            List<String> results = new ArrayList<>();
+            results.add("Authors: " + components.authors());
+            results.add("Co-author pairs: " + components.edges());
+            results.add("Components: " + components.count());
+            results.add("Largest component: " + components.largest() + " authors");
+            results.add("Authors without co-authors: " + components.isolated());
+            results.add("Largest component sizes: " + largest);
+            return results;
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Components();
+        }
+
+        @Override
+        public String header() {
+            return "Co-authorship components:";
+        }
+    }
+
+    /**
+     * Query for the authors of a publication, the first publication whose title contains the given text is used.
+     */
+    public static class ByPublication extends GenbankQuery implements MatchListener<ByPublication> {
+        private final String publication;
+        /**
+         * Set once a matching publication has been seen, later matches are ignored.
+         */
+        private boolean matched;
+
+        public ByPublication(String publication) {
+            this.publication = publication;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            if (matched) {
+                return;
+            }
+            for (GenbankReference reference : entry.getReferences()) {
+                if (reference.getTitle().contains(publication)) {
+                    found.addAll(reference.getAuthors());
+                    matched = true;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            found.addAll(index.authorsOfFirstTitle(publication));
+            matched = !found.isEmpty();
+        }
+
+        @Override
+        public void onMatch(GenbankEntry entry, GenbankReference reference) {
+            if (!matched) {
+                found.addAll(reference.getAuthors());
+                matched = true;
+            }
+        }
+
+        @Override
+        public ByPublication copy() {
+            return new ByPublication(publication);
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            // Only the first match in file order counts, which is the one of this query if it has one.
+            if (!matched && ((ByPublication) other).matched) {
+                found.addAll(other.found);
+                matched = true;
+            }
+        }
+
+        @Override
+        public String header() {
+            return "Authors of " + publication + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No authors found for " + publication;
+        }
+    }
+
+    /**
+     * Query for all genomes an author has worked on, the author needs to be an exact match.
+     */
+    public static class AuthorGenomes extends GenbankQuery implements MatchListener<AuthorGenomes> {
+        private final String author;
+
+        public AuthorGenomes(String author) {
+            this.author = author;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                if (reference.getAuthors().contains(author)) {
+                    found.add(entry.getLocus());
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            found.addAll(index.lociByAuthor(author));
+        }
+
+        @Override
+        public void onMatch(GenbankEntry entry, GenbankReference reference) {
+            found.add(entry.getLocus());
+        }
+
+        @Override
+        public AuthorGenomes copy() {
+            return new AuthorGenomes(author);
+        }
+
+        @Override
+        public String header() {
+            return "Genomes by " + author + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No genomes found for " + author + System.lineSeparator() + EXACT_AUTHOR_HINT;
+        }
+    }
+
+    /**
+     * Query for all genomes associated with publications whose title contains the given text.
+     */
+    public static class PublicationGenomes extends GenbankQuery implements MatchListener<PublicationGenomes> {
+        private final String publication;
+
+        public PublicationGenomes(String publication) {
+            this.publication = publication;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                if (reference.getTitle().contains(publication)) {
+                    found.add(entry.getLocus());
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            found.addAll(index.lociByTitle(publication));
+        }
+
+        @Override
+        public void onMatch(GenbankEntry entry, GenbankReference reference) {
+            found.add(entry.getLocus());
+        }
+
+        @Override
+        public PublicationGenomes copy() {
+            return new PublicationGenomes(publication);
+        }
+
+        @Override
+        public String header() {
+            return "Genomes of " + publication + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No genomes found for " + publication;
+        }
+    }
+
+    /**
+     * Query for the references that match a {@link GenbankExpression}, listed as the LOCUS name of their entry and their title.
+     * <p> While parsing, every reference is tested against the expression. From an index, the expression is evaluated over
+     * the {@link ReferenceBitmaps} of the index.
+     */
+    public static class Search extends GenbankQuery {
+        private final String text;
+        private final GenbankExpression expression;
+
+        /**
+         * Creates the query.
+         *
+         * @param text The search expression.
+         * @throws IllegalArgumentException if the expression is not valid.
+         */
+        public Search(String text) {
+            this(text, GenbankExpression.parse(text));
+        }
+
+        private Search(String text, GenbankExpression expression) {
+            this.text = text;
+            this.expression = expression;
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            for (GenbankReference reference : entry.getReferences()) {
+                if (expression.matches(entry, reference)) {
+                    found.add(entry.getLocus() + ": " + reference.getTitle());
+                }
+            }
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            GenbankStore store = index.getStore();
+            expression.evaluate(index.referenceBitmaps()).forEach(reference ->
+                    found.add(store.locus(store.referenceEntry(reference)) + ": " + store.titles().get(store.referenceTitle(reference))));
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Search(text, expression);
+        }
+
+        @Override
+        public String header() {
+            return "References matching " + text + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No references found matching " + text;
+        }
+    }
+
+    /**
+     * Query for the full records of entries by LOCUS name or primary accession, copied from their files without parsing them again.
+     * <p> The query only keeps where the matching records are, see {@link GenbankRecords}. {@link #writeResults(GenbankOutput)}
+     * copies the records straight to the output, {@link #results()} reads them into lines.
+     */
+    public static class Fetch extends GenbankQuery {
+        private final List<String> ids;
+        private final Set<String> lookup;
+        /**
+         * The matching records in file order.
+         */
+        private final List<GenbankRecords.Location> records = new ArrayList<>();
+
+        /**
+         * Creates a query for the records of one or more entries.
+         *
+         * @param ids The LOCUS names or accessions of the entries.
+         */
+        public Fetch(List<String> ids) {
+            this.ids = List.copyOf(ids);
+            this.lookup = new HashSet<>(ids);
+        }
+
+        @Override
+        public void onEntry(GenbankEntry entry) {
+            if (lookup.contains(entry.getLocus()) || lookup.contains(GenbankIndex.primaryAccession(entry.getAccession()))) {
+                GenbankRecords.Location record = GenbankRecords.Location.of(entry);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        @Override
+        public void merge(GenbankQuery other) {
+            records.addAll(((Fetch) other).records);
+        }
+
+        @Override
+        public void collect(GenbankIndex index) {
+            // Entries found by several ids are copied once, in file order.
+            IntList entries = new IntList();
+            for (String id : lookup) {
+                IntList matches = index.entriesById(id);
+                for (int i = 0; i < matches.size(); i++) {
+                    entries.add(matches.get(i));
+                }
+            }
+            int[] sorted = entries.toArray();
+            Arrays.sort(sorted);
+            GenbankStore store = index.getStore();
+            for (int i = 0; i < sorted.length; i++) {
+                int entry = sorted[i];
+                if ((i == 0 || entry != sorted[i - 1]) && store.recordFile(entry) != null) {
+                    records.add(new GenbankRecords.Location(store.recordFile(entry), store.recordOffset(entry), store.recordLength(entry)));
+                }
+            }
+        }
+
+        @Override
+        public GenbankQuery copy() {
+            return new Fetch(ids);
+        }
+
+        /**
+         * Returns where the matching records are.
+         *
+         * @return the records in file order.
+         */
+        public List<GenbankRecords.Location> records() {
+            return records;
+        }
+
+        /**
+         * Returns the lines of the matching records, read from their files.
+         *
+         * @return the lines of all records, in file order.
+         */
+        @Override
+        public List<String> results() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                GenbankRecords.copy(records, Channels.newChannel(bytes));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return new ArrayList<>(bytes.toString(StandardCharsets.UTF_8).lines().toList());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+
+        @Override
+        public void writeResults(GenbankOutput output) throws IOException {
+            output.transfer(records);
+        }
+
+        @Override
+        public String header() {
+            return "Records of " + String.join(", ", ids) + ":";
+        }
+
+        @Override
+        public String emptyMessage() {
+            return "No records found for " + String.join(", ", ids);
+        }
+    }
+}
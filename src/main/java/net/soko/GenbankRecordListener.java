@@ -0,0 +1,29 @@
+package net.soko;
+
+/**
+ * Callback that receives the entries of a Genbank file one at a time, while the file is being parsed.
+ * <p> Parsing into a listener keeps memory use bounded by a single record instead of the whole file,
+ * the listener decides which parts of an entry it keeps.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, entry -> System.out.println(entry.getLocus()), null);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser#parseGenbankStream(java.io.File, long, java.io.InputStream, GenbankRecordListener, GenbankStats)
+ * @see GenbankQuery
+ */
+@FunctionalInterface
+public interface GenbankRecordListener {
+
+    /**
+     * Called for every complete entry, in the order in which the entries appear in the file.
+     *
+     * @param entry The parsed entry, including all of its references.
+     */
+    void onEntry(GenbankEntry entry);
+}
@@ -0,0 +1,135 @@
+package net.soko;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * This class copies the original text of Genbank records out of their files, using the byte ranges that were recorded while
+ * the files were parsed, so a full record does not require parsing its file again.
+ * <p> Records of uncompressed files are copied with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+ * the operating system move the bytes straight from the file to the target when the target is a file or std-out. For other
+ * targets, such as a channel around a gzip or socket stream, the JDK copies the bytes through a buffer on the heap.
+ * Gzip compressed files cannot be read from an offset, so they are decompressed from the start up to the record. Records of the same file that are in file order are copied in a single pass over the file.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankEntry entry = store.entry(0);
+ *         GenbankRecords.Location record = new GenbankRecords.Location(entry.getFile(), entry.getOffset(), entry.getLength());
+ *         try (FileChannel out = FileChannel.open(Path.of("record.gbff"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+ *             GenbankRecords.copy(List.of(record), out);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankQuery.Fetch
+ * @see GenbankParser#parseGenbankStream(File, long, InputStream, GenbankRecordListener, GenbankStats)
+ */
+public final class GenbankRecords {
+
+    private GenbankRecords() {
+    }
+
+    /**
+     * Where the record of an entry is stored.
+     *
+     * @param file   The Genbank file, plain or gzip compressed.
+     * @param offset The offset of the LOCUS line of the record in the uncompressed contents of the file.
+     * @param length The number of bytes of the record, up to the next record.
+     */
+    public record Location(File file, long offset, long length) {
+        /**
+         * Returns the location of the record of an entry.
+         *
+         * @param entry A parsed or stored entry.
+         * @return the location, or null if the entry was not parsed from a file.
+         */
+        public static Location of(GenbankEntry entry) {
+            return entry.getFile() == null ? null : new Location(entry.getFile(), entry.getOffset(), entry.getLength());
+        }
+    }
+
+    /**
+     * Copies records to a target, in the given order.
+     *
+     * @param records The records to copy.
+     * @param target  The channel to write the records to, it is not closed.
+     * @throws IOException if a file cannot be read, is shorter than a record, or the target cannot be written.
+     */
+    public static void copy(List<Location> records, WritableByteChannel target) throws IOException {
+        File current = null;
+        FileChannel channel = null;
+        InputStream in = null;
+        // Position of the decompressed stream of the current file.
+        long position = 0;
+        try {
+            for (Location record : records) {
+                boolean compressed = GenbankInput.isCompressed(record.file());
+                boolean reopen = !record.file().equals(current) || (compressed && record.offset() < position);
+                if (reopen) {
+                    close(channel, in);
+                    channel = null;
+                    in = null;
+                    current = record.file();
+                    position = 0;
+                    if (compressed) {
+                        in = GenbankInput.open(current);
+                    } else {
+                        channel = FileChannel.open(current.toPath(), StandardOpenOption.READ);
+                    }
+                }
+                if (compressed) {
+                    in.skipNBytes(record.offset() - position);
+                    transfer(in, record, target);
+                    position = record.offset() + record.length();
+                } else {
+                    transfer(channel, record, target);
+                }
+            }
+        } finally {
+            close(channel, in);
+        }
+    }
+
+    private static void transfer(FileChannel channel, Location record, WritableByteChannel target) throws IOException {
+        long copied = 0;
+        while (copied < record.length()) {
+            long transferred = channel.transferTo(record.offset() + copied, record.length() - copied, target);
+            if (transferred <= 0) {
+                throw new IOException("Record at offset " + record.offset() + " is beyond the end of " + record.file());
+            }
+            copied += transferred;
+        }
+    }
+
+    private static void transfer(InputStream in, Location record, WritableByteChannel target) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(GenbankInput.BUFFER_SIZE, Math.max(record.length(), 1))];
+        long remaining = record.length();
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("Record at offset " + record.offset() + " is beyond the end of " + record.file());
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining()) {
+                target.write(bytes);
+            }
+            remaining -= read;
+        }
+    }
+
+    private static void close(FileChannel channel, InputStream in) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        if (in != null) {
+            in.close();
+        }
+    }
+}
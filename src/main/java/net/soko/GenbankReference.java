@@ -18,17 +18,21 @@ import java.util.Set;
 public class GenbankReference {
     /**
      * The authors of this reference.
-     * A set is used to avoid duplicates.
+     * A set is used to avoid duplicates, it is created when it is first used so views in a {@link GenbankStore} do not allocate it.
      */
-    private Set<String> authors = new HashSet<>();
+    private Set<String> authors;
     /**
      * The title of this reference.
      */
     private String title = "unknown";
     /**
-     * The journal of this reference.
+     * The journal of this reference, the value of the JOURNAL line.
      */
     private String journal = "unknown";
+    /**
+     * The parts of the journal, split on first use, as most queries do not need them.
+     */
+    private GenbankJournal citation;
     /**
      * The PubMed ID of this reference.
      */
@@ -40,7 +44,7 @@ public class GenbankReference {
      * @param author The author to add.
      */
     public void addAuthor(String author) {
-        this.authors.add(author);
+        getAuthors().add(author);
     }
 
     /*
@@ -49,6 +53,9 @@ public class GenbankReference {
      */
 
     public Set<String> getAuthors() {
+        if (authors == null) {
+            authors = new HashSet<>();
+        }
         return authors;
     }
 
@@ -65,16 +72,27 @@ public class GenbankReference {
         this.title = title;
     }
 
-    @SuppressWarnings("unused")
     public String getJournal() {
         return journal;
     }
 
     public void setJournal(String journal) {
         this.journal = journal;
+        this.citation = null;
+    }
+
+    /**
+     * Returns the name, volume, issue, pages and year of the journal.
+     *
+     * @return the parts of the journal, see {@link GenbankJournal#parse(String)}.
+     */
+    public GenbankJournal getCitation() {
+        if (citation == null) {
+            citation = GenbankJournal.parse(getJournal());
+        }
+        return citation;
     }
 
-    @SuppressWarnings("unused")
     public int getPubmedId() {
         return pubmedId;
     }
@@ -0,0 +1,33 @@
+package net.soko;
+
+/**
+ * Callback that also receives the sequence of every entry, from the ORIGIN block of its record.
+ * <p> The parser only reads the sequences for listeners of this type, for all other listeners the ORIGIN block is skipped
+ * without looking at its lines. The sequence of an entry is handed over before the entry itself, entries without an
+ * ORIGIN block have no sequence.
+ * <p> The snapshots of a {@link GenbankCache} do not hold sequences, so files have to be parsed to read them.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         SequenceStore sequences = new SequenceStore();
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, sequences, null);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser
+ * @see SequenceStore
+ */
+public interface GenbankSequenceListener extends GenbankRecordListener {
+
+    /**
+     * Called for the sequence of every entry that has one, before {@link #onEntry(GenbankEntry)} is called for the entry.
+     *
+     * @param entry  The entry the sequence belongs to, its LOCUS line and the fields above the ORIGIN block are parsed.
+     * @param bases  The bases as they appear in the file, usually lower case. The array is reused and only valid during the call.
+     * @param length The number of bases.
+     */
+    void onSequence(GenbankEntry entry, byte[] bases, int length);
+}
@@ -0,0 +1,152 @@
+package net.soko;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps the parsed and indexed Genbank files in memory and answers queries until it is stopped,
+ * so the files are parsed once instead of once per query.
+ * <p> Queries use the format of a query file of {@link GenbankBatch}, one query per line, for example "-ba Reilly,L.P.".
+ * Queries are answered from a {@link GenbankIndex}, either interactively from std-in or for clients of a local socket.
+ * Over the socket, every answer ends with an empty line. "quit" ends the session.
+ * <p> The index is never modified once it is built, so any number of clients read it at the same time without locking.
+ * Every query collects its results in its own {@link GenbankBatch}. The index is held in a volatile field and can be
+ * replaced by a new one as a whole, queries that already started finish on the index they started with.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankServer server = new GenbankServer(new GenbankIndex(GenbankLoader.loadStore(files, 4, cache, null, null)));
+ *         server.serve(4567);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankExplorer
+ */
+public class GenbankServer {
+    /**
+     * Command that ends a session.
+     */
+    private static final String QUIT = "quit";
+
+    private volatile GenbankIndex index;
+
+    public GenbankServer(GenbankIndex index) {
+        this.index = index;
+    }
+
+    public GenbankIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Replaces the index that queries are answered from, queries that are running keep using the previous index.
+     *
+     * @param index The new index.
+     */
+    public void setIndex(GenbankIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Answers a single query.
+     *
+     * @param query  The query, in the format of a line of a query file.
+     * @param output The output to write the results to.
+     * @throws IOException              if the output cannot be written.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public void answer(String query, GenbankOutput output) throws IOException {
+        GenbankBatch batch = GenbankBatch.parse(List.of(query));
+        batch.collect(index);
+        batch.write(output);
+    }
+
+    /**
+     * Answers queries read line by line from a stream until it ends or "quit" is read.
+     * A prompt is shown when the program runs in a terminal.
+     *
+     * @param in  The stream to read queries from, usually std-in.
+     * @param out The stream to write results to, usually std-out.
+     * @throws IOException if reading or writing fails.
+     */
+    public void repl(InputStream in, OutputStream out) throws IOException {
+        boolean prompt = System.console() != null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try (GenbankOutput output = GenbankOutput.toStream(out, false)) {
+            session(reader, output, prompt, false);
+        }
+    }
+
+    /**
+     * Answers queries of clients that connect to a port on the loopback address, until the program is stopped.
+     * Every client is served on its own thread.
+     *
+     * @param port The port to listen on, 0 picks a free port.
+     * @throws IOException if the port cannot be opened.
+     */
+    public void serve(int port) throws IOException {
+        ExecutorService clients = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "genbank-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Answering queries on " + server.getLocalSocketAddress());
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                clients.execute(() -> serve(socket));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            try (GenbankOutput output = GenbankOutput.toStream(socket.getOutputStream(), false)) {
+                session(reader, output, false, true);
+            }
+        } catch (IOException e) {
+            // The client went away, other clients are not affected.
+            System.err.println("Connection closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers the queries of one session, invalid queries are answered with an error message.
+     */
+    private void session(BufferedReader reader, GenbankOutput output, boolean prompt, boolean endAnswers) throws IOException {
+        while (true) {
+            if (prompt) {
+                output.write("> ");
+                output.flush();
+            }
+            String line = reader.readLine();
+            if (line == null || line.trim().equals(QUIT)) {
+                return;
+            }
+            try {
+                answer(line, output);
+            } catch (IllegalArgumentException e) {
+                output.writeLine("Invalid query: " + e.getMessage());
+            }
+            if (endAnswers) {
+                output.writeLine("");
+            }
+            output.flush();
+        }
+    }
+}
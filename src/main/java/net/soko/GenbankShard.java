@@ -0,0 +1,166 @@
+package net.soko;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class writes and reads partial indexes, so the files of a full release can be parsed by several processes or
+ * machines that share storage, and combined afterwards.
+ * <p> A shard holds the {@link GenbankStore} of a part of the files: its author, title, journal and file dictionaries, and the
+ * entry and reference columns that refer to them by id, behind a small header with the number of entries and references.
+ * The inverted indexes are not written, {@link GenbankIndex} builds them from the merged store in one pass.
+ * <p> Shards are merged by appending them to one store in file name order. The strings of every dictionary are added to the
+ * dictionaries of the store as they are read, once per shard, after which the ids in the columns are translated through
+ * an int array, see {@link GenbankStore#merge(GenbankStore)}. A merged store can be written as a shard again.
+ * <p> Shards are written to a temporary file first and moved into place once complete, so a process that lists the shards
+ * of a shared directory never reads a partial shard.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         // On every machine, with part 1 to 4:
+ *         List<File> part = GenbankShard.part(files, 1, 4);
+ *         GenbankShard.write(GenbankLoader.loadStore(part, 4, null, null, null), new File("shards/part1.gbshard"));
+ *         // Once all parts are written:
+ *         GenbankStore store = GenbankShard.merge(GenbankShard.list(new File("shards")));
+ *         GenbankIndex index = new GenbankIndex(store);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankStore
+ * @see GenbankExplorer
+ */
+public final class GenbankShard {
+    /**
+     * File name extension of shards, files with it are merged into the files of a directory.
+     */
+    public static final String SUFFIX = ".gbshard";
+    private static final int MAGIC = 0x47425331; // "GBS1"
+    private static final int VERSION = 1;
+
+    private GenbankShard() {
+    }
+
+    /**
+     * Checks whether a file is a shard by its name.
+     *
+     * @param file The file to check.
+     * @return true if the file is a regular file ending with {@link #SUFFIX}.
+     */
+    public static boolean isShardFile(File file) {
+        return file.isFile() && file.getName().endsWith(SUFFIX);
+    }
+
+    /**
+     * Returns the shards in a directory, sorted by name.
+     *
+     * @param directory The directory with the shards.
+     * @return the shard files, empty if there are none or the directory cannot be listed.
+     */
+    public static List<File> list(File directory) {
+        List<File> shards = new ArrayList<>();
+        File[] contents = directory.listFiles();
+        if (contents != null) {
+            for (File file : contents) {
+                if (isShardFile(file)) {
+                    shards.add(file);
+                }
+            }
+        }
+        shards.sort(Comparator.comparing(File::getName));
+        return shards;
+    }
+
+    /**
+     * Selects the files of one part out of a number of parts, so every file is parsed by exactly one shard.
+     * <p> The files are assigned largest first to the part with the fewest bytes so far, with ties broken by name, so every
+     * process that lists the same files selects the same parts, and the parts are of similar size.
+     *
+     * @param files The files to divide.
+     * @param part  The part to select, from 1 to parts.
+     * @param parts The number of parts.
+     * @return the files of the part, sorted by name.
+     * @throws IllegalArgumentException if the part is not between 1 and parts.
+     */
+    public static List<File> part(List<File> files, int part, int parts) {
+        if (parts < 1 || part < 1 || part > parts) {
+            throw new IllegalArgumentException("Invalid part " + part + "/" + parts + ", expected a part from 1 to the number of parts");
+        }
+        List<File> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(File::length).reversed().thenComparing(File::getName));
+        long[] sizes = new long[parts];
+        List<File> selected = new ArrayList<>();
+        for (File file : sorted) {
+            int smallest = 0;
+            for (int p = 1; p < parts; p++) {
+                if (sizes[p] < sizes[smallest]) {
+                    smallest = p;
+                }
+            }
+            sizes[smallest] += file.length();
+            if (smallest == part - 1) {
+                selected.add(file);
+            }
+        }
+        selected.sort(Comparator.comparing(File::getName));
+        return selected;
+    }
+
+    /**
+     * Writes a store to a shard, replacing the file if it exists.
+     *
+     * @param store The store to write.
+     * @param file  The shard file.
+     * @throws IOException if the shard cannot be written.
+     */
+    public static void write(GenbankStore store, File file) throws IOException {
+        Path temporary = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp").toPath();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), GenbankInput.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            store.write(out);
+        }
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a shard and appends its entries to a store.
+     *
+     * @param file  The shard file.
+     * @param store The store to append the entries to.
+     * @throws IOException if the file cannot be read or is not a shard of the current version.
+     */
+    public static void read(File file, GenbankStore store) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), GenbankInput.BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("File " + file + " is not a shard of version " + VERSION);
+            }
+            store.append(in);
+        }
+    }
+
+    /**
+     * Merges shards into one store, in the given order.
+     *
+     * @param shards The shard files.
+     * @return the store with the entries of all shards.
+     * @throws IOException if a shard cannot be read.
+     */
+    public static GenbankStore merge(List<File> shards) throws IOException {
+        GenbankStore store = new GenbankStore();
+        for (File shard : shards) {
+            read(shard, store);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,424 @@
+package net.soko;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class collects ingest and query metrics of a run of the {@link GenbankExplorer}, printed with --stats.
+ * <p> Per file it records the bytes read, the records and references parsed and the time of the parse tasks, split into
+ * the time spent reading and decompressing the input, handing entries to the listener, and parsing, which is the rest.
+ * Per run it records the time of every phase, such as ingest, query and write.
+ * <p> Every parse task counts into its own {@link Task}, which is added to the totals of its file when the task is done,
+ * so parallel tasks do not contend on shared counters. Tasks and phases are also recorded as {@link GenbankEvents}
+ * for the JDK Flight Recorder.
+ * <p> The times of a file are summed over its tasks, so for a file split into chunks they are the time of all threads together.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankStats stats = new GenbankStats();
+ *         stats.time("ingest", () -> GenbankLoader.stream(files, 4, query::copy, null, stats, null));
+ *         stats.print(System.err);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser#parseGenbankStream(File, long, java.io.InputStream, GenbankRecordListener, GenbankStats)
+ */
+public class GenbankStats {
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES_PER_MB = 1 << 20;
+
+    private final Map<File, FileStats> files = new LinkedHashMap<>();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Starts a parse task of a file, or a chunk of a file.
+     *
+     * @param file   The file that is parsed.
+     * @param cached Whether the entries are read from the cache.
+     * @return the task, to be closed when the task is done.
+     */
+    public Task task(File file, boolean cached) {
+        return new Task(file, cached);
+    }
+
+    /**
+     * Starts a phase of the run, the time of phases with the same name is added up.
+     *
+     * @param name The name of the phase.
+     * @return the phase, to be closed when the phase is done.
+     */
+    public Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Runs a phase of the run that computes a value, and adds its time to the phases with the same name.
+     *
+     * @param name The name of the phase.
+     * @param work The work of the phase.
+     * @param <T>  The type of the value.
+     * @return the value computed by the work.
+     * @throws IOException if the work throws it.
+     */
+    public <T> T time(String name, Work<T> work) throws IOException {
+        Phase phase = phase(name);
+        try {
+            return work.call();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Runs a phase of the run, and adds its time to the phases with the same name.
+     *
+     * @param name   The name of the phase.
+     * @param action The work of the phase.
+     * @throws IOException if the work throws it.
+     * @see #time(String, Work)
+     */
+    public void time(String name, Action action) throws IOException {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the totals of every file, in the order in which their first task was done.
+     *
+     * @return a copy of the file totals.
+     */
+    public synchronized List<FileStats> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Returns the time of every phase in nanoseconds, in the order in which the phases were first done.
+     *
+     * @return a copy of the phase times.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    private synchronized void add(Task task) {
+        FileStats stats = files.computeIfAbsent(task.file, FileStats::new);
+        stats.cached |= task.cached;
+        stats.bytesRead += task.bytesRead;
+        stats.records += task.records;
+        stats.references += task.references;
+        stats.totalNanos += task.totalNanos;
+        stats.readNanos += task.readNanos;
+        stats.listenerNanos += task.listenerNanos;
+    }
+
+    private synchronized void add(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Prints a table of the files followed by the phases.
+     *
+     * @param out The stream to print to, usually std-err so the statistics do not mix with the results.
+     */
+    public void print(PrintStream out) {
+        out.println("Genbank statistics");
+        out.printf("%-32s %12s %12s %9s %11s %9s %9s %11s %9s %11s%n", "file", "size", "bytes read", "records", "references",
+                "read ms", "parse ms", "listener ms", "MB/s", "records/s");
+        long read = 0;
+        long parse = 0;
+        long listener = 0;
+        for (FileStats file : getFiles()) {
+            out.printf(Locale.ROOT, "%-32s %12d %12d %9d %11d %9.1f %9.1f %11.1f %9.1f %11.0f%n",
+                    file.getFile().getName() + (file.isCached() ? " (cache)" : ""), file.getSize(), file.getBytesRead(),
+                    file.getRecords(), file.getReferences(), millis(file.getReadNanos()), millis(file.getParseNanos()),
+                    millis(file.getListenerNanos()), file.megabytesPerSecond(), file.recordsPerSecond());
+            read += file.getReadNanos();
+            parse += file.getParseNanos();
+            listener += file.getListenerNanos();
+        }
+        out.printf(Locale.ROOT, "Tasks (ms): read/decompress %.1f, parse %.1f, listener %.1f%n", millis(read), millis(parse), millis(listener));
+        StringBuilder line = new StringBuilder("Phases (ms):");
+        getPhases().forEach((name, nanos) -> line.append(String.format(Locale.ROOT, " %s %.1f,", name, millis(nanos))));
+        line.setLength(line.length() - 1);
+        out.println(line);
+    }
+
+    /**
+     * Returns the statistics as a JSON object with a "files" array and a "phases" object, all times are in milliseconds.
+     *
+     * @return the JSON text.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"files\":[");
+        List<FileStats> fileStats = getFiles();
+        for (int i = 0; i < fileStats.size(); i++) {
+            FileStats file = fileStats.get(i);
+            json.append(i == 0 ? "" : ",").append('{');
+            json.append("\"file\":").append(quote(file.getFile().getPath()));
+            json.append(",\"cached\":").append(file.isCached());
+            json.append(",\"size\":").append(file.getSize());
+            json.append(",\"bytesRead\":").append(file.getBytesRead());
+            json.append(",\"records\":").append(file.getRecords());
+            json.append(",\"references\":").append(file.getReferences());
+            json.append(String.format(Locale.ROOT, ",\"readMs\":%.3f,\"parseMs\":%.3f,\"listenerMs\":%.3f,\"mbPerSecond\":%.3f,\"recordsPerSecond\":%.1f",
+                    millis(file.getReadNanos()), millis(file.getParseNanos()), millis(file.getListenerNanos()),
+                    file.megabytesPerSecond(), file.recordsPerSecond()));
+            json.append('}');
+        }
+        json.append("],\"phases\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+            json.append(separator).append(quote(phase.getKey())).append(String.format(Locale.ROOT, ":%.3f", millis(phase.getValue())));
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Totals of all tasks of a file.
+     */
+    public static final class FileStats {
+        private final File file;
+        private boolean cached;
+        private long bytesRead;
+        private long records;
+        private long references;
+        private long totalNanos;
+        private long readNanos;
+        private long listenerNanos;
+
+        private FileStats(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns whether the entries of the file were read from the cache, in which case no bytes are read by the parser.
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /**
+         * Returns the size of the file on disk, compressed for compressed files.
+         */
+        public long getSize() {
+            return file.length();
+        }
+
+        /**
+         * Returns the uncompressed bytes read by the parser.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getReferences() {
+            return references;
+        }
+
+        public long getReadNanos() {
+            return readNanos;
+        }
+
+        public long getListenerNanos() {
+            return listenerNanos;
+        }
+
+        /**
+         * Returns the time of the tasks that was not spent reading or in the listener, which is the time of the parser itself.
+         */
+        public long getParseNanos() {
+            return Math.max(0, totalNanos - readNanos - listenerNanos);
+        }
+
+        public double megabytesPerSecond() {
+            return totalNanos == 0 ? 0 : bytesRead / BYTES_PER_MB / (totalNanos / 1e9);
+        }
+
+        public double recordsPerSecond() {
+            return totalNanos == 0 ? 0 : records / (totalNanos / 1e9);
+        }
+    }
+
+    /**
+     * Counters of a single parse task, only used by the thread of the task.
+     */
+    public final class Task implements AutoCloseable {
+        private final File file;
+        private final boolean cached;
+        private final long start = System.nanoTime();
+        private final GenbankEvents.FileParsed event = new GenbankEvents.FileParsed();
+        private long bytesRead;
+        private long records;
+        private long references;
+        private long totalNanos;
+        private long readNanos;
+        private long listenerNanos;
+
+        private Task(File file, boolean cached) {
+            this.file = file;
+            this.cached = cached;
+            event.begin();
+        }
+
+        /**
+         * Wraps the input of the task, to count the bytes read and the time spent reading them.
+         *
+         * @param in The uncompressed input of the parser.
+         * @return the wrapped input.
+         */
+        public InputStream track(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    long start = System.nanoTime();
+                    int b = super.read();
+                    readNanos += System.nanoTime() - start;
+                    bytesRead += b < 0 ? 0 : 1;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    long start = System.nanoTime();
+                    int read = super.read(buffer, offset, length);
+                    readNanos += System.nanoTime() - start;
+                    bytesRead += Math.max(read, 0);
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Wraps the listener of the task, to count the records and references and the time spent in the listener.
+         *
+         * @param listener The listener of the task.
+         * @return the wrapped listener.
+         */
+        public GenbankRecordListener track(GenbankRecordListener listener) {
+            GenbankRecordListener tracked = entry -> {
+                records++;
+                references += entry.getReferences().size();
+                long start = System.nanoTime();
+                listener.onEntry(entry);
+                listenerNanos += System.nanoTime() - start;
+            };
+            if (!(listener instanceof GenbankSequenceListener sequences)) {
+                return tracked;
+            }
+            // The wrapper of a sequence listener is a sequence listener too, so the parser still reads the sequences.
+            return new GenbankSequenceListener() {
+                @Override
+                public void onSequence(GenbankEntry entry, byte[] bases, int length) {
+                    long start = System.nanoTime();
+                    sequences.onSequence(entry, bases, length);
+                    listenerNanos += System.nanoTime() - start;
+                }
+
+                @Override
+                public void onEntry(GenbankEntry entry) {
+                    tracked.onEntry(entry);
+                }
+            };
+        }
+
+        /**
+         * Adds the counters to the totals of the file and records the event of the task.
+         */
+        @Override
+        public void close() {
+            totalNanos = System.nanoTime() - start;
+            add(this);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = file.getPath();
+                event.cached = cached;
+                event.bytesRead = bytesRead;
+                event.records = records;
+                event.references = references;
+                event.readTime = readNanos;
+                event.listenerTime = listenerNanos;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The work of a phase that computes a value, see {@link #time(String, Work)}.
+     *
+     * @param <T> The type of the value.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * The work of a phase, see {@link #time(String, Action)}.
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws IOException;
+    }
+
+    /**
+     * A timed phase of the run, to be closed when the phase is done.
+     */
+    public final class Phase implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final GenbankEvents.Phase event = new GenbankEvents.Phase();
+
+        private Phase(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            add(name, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.name = name;
+                event.commit();
+            }
+        }
+    }
+}
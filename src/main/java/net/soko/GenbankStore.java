@@ -0,0 +1,598 @@
+package net.soko;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * This class is a compact, dictionary-encoded store of parsed entries and references.
+ * <p> Authors, titles and journals are interned into {@link StringDictionary}s, and entries and references are stored as
+ * columns of primitive ints that refer to them. The authors of all references are kept in one int array, every reference
+ * only stores where its authors start. Compared to a {@link GenbankReference} with its own HashSet of author Strings,
+ * a reference costs a few ints plus four bytes per author.
+ * <p> Every entry also keeps the file and byte range of its record, so the full record can be read again, see {@link GenbankRecords}.
+ * <p> {@link #entry(int)} and {@link #entries()} return {@link GenbankEntry} and {@link GenbankReference} views over the store,
+ * so code written against the getters of those classes keeps working. Views are created on demand and cannot be modified.
+ * <p> The store is filled as a {@link GenbankRecordListener}. Stores filled by parallel parse tasks are combined with
+ * {@link #merge(GenbankStore)} in file order.
+ * <p> A store can also be written to a {@link GenbankShard} and appended to another store from there, with the same id mapping
+ * as {@link #merge(GenbankStore)}.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankStore store = new GenbankStore();
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, store, null);
+ *         }
+ *         for (GenbankEntry entry : store.entries()) {
+ *             System.out.println(entry.getLocus());
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankIndex
+ */
+public class GenbankStore implements GenbankRecordListener {
+    private final StringDictionary authors = new StringDictionary();
+    private final StringDictionary titles = new StringDictionary();
+    private final StringDictionary journals = new StringDictionary();
+    /**
+     * Paths of the files the entries were parsed from.
+     */
+    private final StringDictionary files = new StringDictionary();
+    /**
+     * Entry columns. Loci, accessions and definitions are mostly unique, so they are not interned.
+     */
+    private final List<String> loci = new ArrayList<>();
+    private final List<String> accessions = new ArrayList<>();
+    private final List<String> definitions = new ArrayList<>();
+    /**
+     * Where the record of every entry is: the id of its file, -1 if unknown, and its byte range in the uncompressed file.
+     */
+    private final IntList entryFiles = new IntList();
+    private final LongList entryOffsets = new LongList();
+    private final LongList entryLengths = new LongList();
+    /**
+     * The references of entry e are the references from entryReferenceStart[e] to entryReferenceStart[e + 1].
+     */
+    private final IntList entryReferenceStart = IntList.of(0);
+    /**
+     * Reference columns.
+     */
+    private final IntList referenceEntry = new IntList();
+    private final IntList referenceTitle = new IntList();
+    private final IntList referenceJournal = new IntList();
+    private final IntList referencePubmed = new IntList();
+    /**
+     * The author ids of reference r are stored from referenceAuthorStart[r] to referenceAuthorStart[r + 1] in referenceAuthors.
+     */
+    private final IntList referenceAuthorStart = IntList.of(0);
+    private final IntList referenceAuthors = new IntList();
+
+    @Override
+    public void onEntry(GenbankEntry entry) {
+        int entryId = loci.size();
+        loci.add(entry.getLocus());
+        accessions.add(entry.getAccession());
+        definitions.add(entry.getDefinition());
+        entryFiles.add(entry.getFile() == null ? -1 : files.add(entry.getFile().getPath()));
+        entryOffsets.add(entry.getOffset());
+        entryLengths.add(entry.getLength());
+        for (GenbankReference reference : entry.getReferences()) {
+            referenceEntry.add(entryId);
+            referenceTitle.add(titles.add(reference.getTitle()));
+            referenceJournal.add(journals.add(reference.getJournal()));
+            referencePubmed.add(reference.getPubmedId());
+            for (String author : reference.getAuthors()) {
+                referenceAuthors.add(authors.add(author));
+            }
+            referenceAuthorStart.add(referenceAuthors.size());
+        }
+        entryReferenceStart.add(referenceEntry.size());
+    }
+
+    /**
+     * Appends the entries of a store filled with the files following the ones of this store.
+     * The dictionaries of the other store are added to the dictionaries of this store once, after which its columns are
+     * copied through the resulting id mappings.
+     *
+     * @param other The store to append.
+     */
+    public void merge(GenbankStore other) {
+        int entryOffset = loci.size();
+        int referenceOffset = referenceEntry.size();
+        int[] authorMapping = authors.addAll(other.authors);
+        int[] titleMapping = titles.addAll(other.titles);
+        int[] journalMapping = journals.addAll(other.journals);
+        int[] fileMapping = files.addAll(other.files);
+        loci.addAll(other.loci);
+        accessions.addAll(other.accessions);
+        definitions.addAll(other.definitions);
+        for (int e = 0; e < other.entryFiles.size(); e++) {
+            int file = other.entryFiles.get(e);
+            entryFiles.add(file < 0 ? -1 : fileMapping[file]);
+            entryOffsets.add(other.entryOffsets.get(e));
+            entryLengths.add(other.entryLengths.get(e));
+        }
+        for (int e = 1; e < other.entryReferenceStart.size(); e++) {
+            entryReferenceStart.add(referenceOffset + other.entryReferenceStart.get(e));
+        }
+        for (int r = 0; r < other.referenceEntry.size(); r++) {
+            referenceEntry.add(entryOffset + other.referenceEntry.get(r));
+            referenceTitle.add(titleMapping[other.referenceTitle.get(r)]);
+            referenceJournal.add(journalMapping[other.referenceJournal.get(r)]);
+            referencePubmed.add(other.referencePubmed.get(r));
+            for (int i = other.referenceAuthorStart.get(r); i < other.referenceAuthorStart.get(r + 1); i++) {
+                referenceAuthors.add(authorMapping[other.referenceAuthors.get(i)]);
+            }
+            referenceAuthorStart.add(referenceAuthors.size());
+        }
+    }
+
+    /**
+     * Writes the dictionaries and columns of the store, to be read with {@link #append(DataInput)}.
+     * <p> The dictionaries come first, followed by every entry with its references, which refer to the dictionaries by id.
+     * The paths of the record files are written as absolute paths, so the store can be read from another working directory.
+     *
+     * @param out The output to write to.
+     * @throws IOException if the store cannot be written.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(entryCount());
+        out.writeInt(referenceCount());
+        writeStrings(out, authors.strings());
+        writeStrings(out, titles.strings());
+        writeStrings(out, journals.strings());
+        out.writeInt(files.size());
+        for (String file : files.strings()) {
+            writeString(out, new File(file).getAbsolutePath());
+        }
+        for (int e = 0; e < entryCount(); e++) {
+            writeString(out, loci.get(e));
+            writeString(out, accessions.get(e));
+            writeString(out, definitions.get(e));
+            out.writeInt(entryFiles.get(e));
+            out.writeLong(entryOffsets.get(e));
+            out.writeLong(entryLengths.get(e));
+            out.writeInt(referenceEnd(e) - referenceStart(e));
+            for (int r = referenceStart(e); r < referenceEnd(e); r++) {
+                out.writeInt(referenceTitle.get(r));
+                out.writeInt(referenceJournal.get(r));
+                out.writeInt(referencePubmed.get(r));
+                out.writeInt(authorEnd(r) - authorStart(r));
+                for (int i = authorStart(r); i < authorEnd(r); i++) {
+                    out.writeInt(referenceAuthors.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the entries of a store written with {@link #write(DataOutput)}.
+     * Every string of the written dictionaries is added to the dictionaries of this store as it is read, after which the
+     * columns are copied through the resulting id mappings, without building a second store first.
+     *
+     * @param in The input to read from.
+     * @throws IOException if the store cannot be read.
+     */
+    void append(DataInput in) throws IOException {
+        int entries = in.readInt();
+        in.readInt();
+        int[] authorMapping = readStrings(in, authors);
+        int[] titleMapping = readStrings(in, titles);
+        int[] journalMapping = readStrings(in, journals);
+        int[] fileMapping = readStrings(in, files);
+        for (int e = 0; e < entries; e++) {
+            int entryId = loci.size();
+            loci.add(readString(in));
+            accessions.add(readString(in));
+            definitions.add(readString(in));
+            int file = in.readInt();
+            entryFiles.add(file < 0 ? -1 : fileMapping[file]);
+            entryOffsets.add(in.readLong());
+            entryLengths.add(in.readLong());
+            int references = in.readInt();
+            for (int r = 0; r < references; r++) {
+                referenceEntry.add(entryId);
+                referenceTitle.add(titleMapping[in.readInt()]);
+                referenceJournal.add(journalMapping[in.readInt()]);
+                referencePubmed.add(in.readInt());
+                int count = in.readInt();
+                for (int a = 0; a < count; a++) {
+                    referenceAuthors.add(authorMapping[in.readInt()]);
+                }
+                referenceAuthorStart.add(referenceAuthors.size());
+            }
+            entryReferenceStart.add(referenceEntry.size());
+        }
+    }
+
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    /**
+     * Reads a dictionary and adds its strings to another dictionary.
+     *
+     * @return the id in the other dictionary for every id of the dictionary that was read.
+     */
+    private static int[] readStrings(DataInput in, StringDictionary dictionary) throws IOException {
+        int[] mapping = new int[in.readInt()];
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = dictionary.add(readString(in));
+        }
+        return mapping;
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+    Column accessors, used by the indexes.
+     */
+
+    public int entryCount() {
+        return loci.size();
+    }
+
+    public int referenceCount() {
+        return referenceEntry.size();
+    }
+
+    public StringDictionary authors() {
+        return authors;
+    }
+
+    public StringDictionary titles() {
+        return titles;
+    }
+
+    public StringDictionary journals() {
+        return journals;
+    }
+
+    public String locus(int entry) {
+        return loci.get(entry);
+    }
+
+    public String accession(int entry) {
+        return accessions.get(entry);
+    }
+
+    /**
+     * Returns the file the record of an entry was parsed from.
+     *
+     * @param entry The id of the entry.
+     * @return the file, or null if it is not known.
+     */
+    public File recordFile(int entry) {
+        int file = entryFiles.get(entry);
+        return file < 0 ? null : new File(files.get(file));
+    }
+
+    /**
+     * Returns the offset of the record of an entry in the uncompressed contents of its file, see {@link #recordFile(int)}.
+     *
+     * @param entry The id of the entry.
+     * @return the offset of the LOCUS line of the record.
+     */
+    public long recordOffset(int entry) {
+        return entryOffsets.get(entry);
+    }
+
+    public long recordLength(int entry) {
+        return entryLengths.get(entry);
+    }
+
+    public int referenceStart(int entry) {
+        return entryReferenceStart.get(entry);
+    }
+
+    public int referenceEnd(int entry) {
+        return entryReferenceStart.get(entry + 1);
+    }
+
+    public int referenceEntry(int reference) {
+        return referenceEntry.get(reference);
+    }
+
+    public int referenceTitle(int reference) {
+        return referenceTitle.get(reference);
+    }
+
+    public int referenceJournal(int reference) {
+        return referenceJournal.get(reference);
+    }
+
+    public int referencePubmed(int reference) {
+        return referencePubmed.get(reference);
+    }
+
+    public int authorStart(int reference) {
+        return referenceAuthorStart.get(reference);
+    }
+
+    public int authorEnd(int reference) {
+        return referenceAuthorStart.get(reference + 1);
+    }
+
+    /**
+     * Returns the author id at a position in the shared author array, see {@link #authorStart(int)}.
+     *
+     * @param index The position in the author array.
+     * @return the author id.
+     */
+    public int author(int index) {
+        return referenceAuthors.get(index);
+    }
+
+    /*
+    Views for code that works with GenbankEntry and GenbankReference objects.
+     */
+
+    /**
+     * Returns a read-only view of an entry.
+     *
+     * @param entry The id of the entry.
+     * @return the view.
+     */
+    public GenbankEntry entry(int entry) {
+        return new StoredEntry(entry);
+    }
+
+    /**
+     * Returns a read-only view of a reference.
+     *
+     * @param reference The id of the reference.
+     * @return the view.
+     */
+    public GenbankReference reference(int reference) {
+        return new StoredReference(reference);
+    }
+
+    /**
+     * Returns all entries as a read-only list of views, the views are created when they are accessed.
+     *
+     * @return the entries in file order.
+     */
+    public List<GenbankEntry> entries() {
+        return new ViewList<>(entryCount()) {
+            @Override
+            public GenbankEntry get(int index) {
+                return entry(index);
+            }
+        };
+    }
+
+    /**
+     * Read-only list of views that are created on access.
+     */
+    private abstract static class ViewList<T> extends AbstractList<T> implements RandomAccess {
+        private final int size;
+
+        private ViewList(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * View of an entry, the fields inherited from {@link GenbankEntry} are not used.
+     */
+    private final class StoredEntry extends GenbankEntry {
+        private final int id;
+
+        private StoredEntry(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getAccession() {
+            return accessions.get(id);
+        }
+
+        @Override
+        public String getLocus() {
+            return loci.get(id);
+        }
+
+        @Override
+        public String getDefinition() {
+            return definitions.get(id);
+        }
+
+        @Override
+        public File getFile() {
+            return recordFile(id);
+        }
+
+        @Override
+        public long getOffset() {
+            return entryOffsets.get(id);
+        }
+
+        @Override
+        public long getLength() {
+            return entryLengths.get(id);
+        }
+
+        @Override
+        public List<GenbankReference> getReferences() {
+            int start = referenceStart(id);
+            return new ViewList<>(referenceEnd(id) - start) {
+                @Override
+                public GenbankReference get(int index) {
+                    return reference(start + index);
+                }
+            };
+        }
+
+        @Override
+        public void setAccession(String accession) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setLocus(String locus) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setDefinition(String definition) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setReferences(List<GenbankReference> references) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setFile(File file) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setOffset(long offset) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+
+        @Override
+        public void setLength(long length) {
+            throw new UnsupportedOperationException("Stored entries cannot be modified");
+        }
+    }
+
+    /**
+     * View of a reference, the fields inherited from {@link GenbankReference} are not used.
+     */
+    private final class StoredReference extends GenbankReference {
+        private final int id;
+
+        private StoredReference(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Set<String> getAuthors() {
+            return new AuthorSet(authorStart(id), authorEnd(id));
+        }
+
+        @Override
+        public String getTitle() {
+            return titles.get(referenceTitle.get(id));
+        }
+
+        @Override
+        public String getJournal() {
+            return journals.get(referenceJournal.get(id));
+        }
+
+        @Override
+        public int getPubmedId() {
+            return referencePubmed.get(id);
+        }
+
+        @Override
+        public void addAuthor(String author) {
+            throw new UnsupportedOperationException("Stored references cannot be modified");
+        }
+
+        @Override
+        public void setAuthors(Set<String> authors) {
+            throw new UnsupportedOperationException("Stored references cannot be modified");
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw new UnsupportedOperationException("Stored references cannot be modified");
+        }
+
+        @Override
+        public void setJournal(String journal) {
+            throw new UnsupportedOperationException("Stored references cannot be modified");
+        }
+
+        @Override
+        public void setPubmedId(int pubmedId) {
+            throw new UnsupportedOperationException("Stored references cannot be modified");
+        }
+    }
+
+    /**
+     * Read-only set view over a range of the shared author array.
+     * Authors of a reference are distinct, because they were collected in a set while parsing.
+     */
+    private final class AuthorSet extends AbstractSet<String> {
+        private final int start;
+        private final int end;
+
+        private AuthorSet(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int id = o instanceof String ? authors.find((String) o) : -1;
+            for (int i = start; i < end && id >= 0; i++) {
+                if (referenceAuthors.get(i) == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int next = start;
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return authors.get(referenceAuthors.get(next++));
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
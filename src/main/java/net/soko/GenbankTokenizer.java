@@ -0,0 +1,499 @@
+package net.soko;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This tokenizer splits uncompressed Genbank data into lines and recognizes the keyword of every line, working directly on bytes.
+ * <p> Genbank Flat Files use a fixed layout in which columns 1-12 hold the keyword of a line and the value starts at column 13.
+ * A line whose first 12 columns are blank continues the value of the keyword above it. The tokenizer uses this layout to
+ * classify lines by comparing bytes, and only creates a String when the parser asks for the value of a line it keeps.
+ * Values that span several lines are joined with single spaces in a reusable byte buffer before the String is created.
+ * <p> The feature table and the sequence, which make up most of a record, can be skipped with {@link #skipRecord()}
+ * without looking at their lines at all. When the sequence is needed, {@link #skipFeatures()} stops at the ORIGIN line
+ * instead, and {@link #continuedSequence(Sequence)} collects the bases of the sequence lines.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         GenbankTokenizer tokenizer = new GenbankTokenizer(GenbankInput.open(file));
+ *         GenbankTokenizer.Keyword keyword;
+ *         while ((keyword = tokenizer.next()) != null) {
+ *             if (keyword == GenbankTokenizer.Keyword.DEFINITION) {
+ *                 String definition = tokenizer.continuedValue();
+ *             }
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankParser
+ */
+public final class GenbankTokenizer {
+    /**
+     * Zero based column at which the value of a line starts, lines indented this far are continuation lines.
+     */
+    private static final int VALUE_COLUMN = 12;
+    /**
+     * View of the read buffer as little-endian longs, used to search for line terminators eight bytes at a time.
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * The line types the parser is interested in.
+     */
+    public enum Keyword {
+        LOCUS, DEFINITION, ACCESSION, REFERENCE, AUTHORS, TITLE, JOURNAL, PUBMED, FEATURES, ORIGIN,
+        /**
+         * The "//" line that terminates a record.
+         */
+        TERMINATOR("//"),
+        /**
+         * A line indented by 12 or more spaces, continuing the value of the keyword above it.
+         */
+        CONTINUATION(null),
+        /**
+         * Any other line, such as keywords that are not used, feature table lines and sequence lines.
+         */
+        OTHER(null);
+
+        private static final Keyword[] NAMED = {LOCUS, DEFINITION, ACCESSION, REFERENCE, AUTHORS, TITLE, JOURNAL, PUBMED, FEATURES, ORIGIN, TERMINATOR};
+        private final byte[] name;
+
+        Keyword() {
+            this.name = name().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        Keyword(String name) {
+            this.name = name == null ? null : name.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final InputStream in;
+    /**
+     * Read buffer, grows only when a single line is longer than the buffer.
+     */
+    private byte[] buffer = new byte[GenbankInput.BUFFER_SIZE];
+    /**
+     * Start of the unread data in the buffer.
+     */
+    private int position;
+    /**
+     * End of the valid data in the buffer.
+     */
+    private int limit;
+    private boolean endOfStream;
+    /**
+     * Number of bytes of the stream that were moved out of the buffer, the offset of the first byte of the buffer.
+     */
+    private long consumed;
+    /**
+     * Bounds of the current line in the buffer, the end excludes the line terminator.
+     */
+    private int lineStart;
+    private int lineEnd;
+    /**
+     * Start of the value of the current line, after the keyword and the whitespace following it.
+     */
+    private int valueStart;
+    private Keyword keyword;
+    /**
+     * Set when the current line was read ahead while collecting a multi-line value and has not been returned by {@link #next()} yet.
+     */
+    private boolean pending;
+    /**
+     * Reusable buffer in which the lines of a multi-line value are joined.
+     */
+    private byte[] value = new byte[256];
+    private int valueLength;
+
+    /**
+     * Creates a tokenizer over a stream of uncompressed Genbank data.
+     *
+     * @param in The stream to read, it is not closed by the tokenizer.
+     */
+    public GenbankTokenizer(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return the keyword of the line, or null at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    public Keyword next() throws IOException {
+        if (pending) {
+            pending = false;
+            return keyword;
+        }
+        keyword = readLine() ? classify() : null;
+        return keyword;
+    }
+
+    /**
+     * Returns the offset of the start of the current line in the stream, such as the start of a record for a LOCUS line.
+     *
+     * @return the number of bytes of the stream before the current line.
+     */
+    public long lineOffset() {
+        return consumed + lineStart;
+    }
+
+    /**
+     * Returns the number of bytes of the stream that were read, up to and including the current line.
+     * At the end of the stream, this is the length of the stream.
+     *
+     * @return the offset after the current line.
+     */
+    public long offset() {
+        return consumed + position;
+    }
+
+    /**
+     * Returns the first word of the value of the current line, such as the locus name of a LOCUS line.
+     *
+     * @return the first word, or an empty String if the line has no value.
+     */
+    public String firstWord() {
+        int end = valueStart;
+        while (end < lineEnd && buffer[end] != ' ') {
+            end++;
+        }
+        return new String(buffer, valueStart, end - valueStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the value of the current line as a number, such as the identifier of a PUBMED line.
+     *
+     * @return the leading digits of the value as an int, or 0 if the value does not start with a digit.
+     */
+    public int intValue() {
+        int result = 0;
+        for (int i = valueStart; i < lineEnd && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            result = result * 10 + buffer[i] - '0';
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the current line together with all of its continuation lines, joined by single spaces.
+     * <p> The line after the value is read ahead and is returned by the next call to {@link #next()}.
+     *
+     * @return the full value.
+     * @throws IOException if the stream cannot be read.
+     */
+    public String continuedValue() throws IOException {
+        collectValue();
+        return new String(value, 0, valueLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips the rest of the current record, such as the feature table and the sequence, up to its "//" line.
+     * <p> Only the line terminators are searched for, eight bytes at a time, and the start of the following line is checked
+     * for "//" or for a "LOCUS" line in case the terminator is missing. The line that stops the skip is returned by the next
+     * call to {@link #next()}.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    public void skipRecord() throws IOException {
+        while (true) {
+            int newline = indexOfNewline(position);
+            if (newline < 0) {
+                position = limit;
+                if (endOfStream) {
+                    return;
+                }
+                fill();
+                continue;
+            }
+            // Make sure the start of the next line is in the buffer before checking it.
+            if (newline + 6 > limit && !endOfStream) {
+                position = newline;
+                fill();
+                continue;
+            }
+            position = newline + 1;
+            if (startsWith(position, Keyword.TERMINATOR.name) || startsWith(position, Keyword.LOCUS.name)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips the feature table of the current record up to its ORIGIN line, or up to the "//" or "LOCUS" line if the record has no
+     * sequence. The line that stops the skip is returned by the next call to {@link #next()}.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    public void skipFeatures() throws IOException {
+        while (readLine()) {
+            if (lineEnd > lineStart && buffer[lineStart] != ' ' && classify() != Keyword.OTHER) {
+                pending = true;
+                return;
+            }
+        }
+        keyword = null;
+        pending = true;
+    }
+
+    /**
+     * Collects the bases of the sequence lines that follow an ORIGIN line, up to the "//" line of the record.
+     * <p> Sequence lines start with the position of their first base, followed by the bases in groups of ten, so only the
+     * letters of every line are kept. The line after the sequence is read ahead and is returned by the next call to {@link #next()}.
+     *
+     * @param sequence Receives the bases as they appear in the file. The array is reused and only valid during the call.
+     * @throws IOException if the stream cannot be read.
+     */
+    public void continuedSequence(Sequence sequence) throws IOException {
+        valueLength = 0;
+        while (readLine()) {
+            // A sequence line starts with a space, a record without a "//" line ends at the next LOCUS line.
+            if (lineEnd > lineStart && buffer[lineStart] != ' ' && classify() != Keyword.OTHER) {
+                pending = true;
+                sequence.accept(value, valueLength);
+                return;
+            }
+            if (valueLength + lineEnd - lineStart > value.length) {
+                value = Arrays.copyOf(value, Math.max(value.length * 2, valueLength + lineEnd - lineStart));
+            }
+            for (int i = lineStart; i < lineEnd; i++) {
+                byte b = buffer[i];
+                if ((b | 0x20) >= 'a' && (b | 0x20) <= 'z') {
+                    value[valueLength++] = b;
+                }
+            }
+        }
+        keyword = null;
+        pending = true;
+        sequence.accept(value, valueLength);
+    }
+
+    /**
+     * Receives the bases of a sequence, see {@link #continuedSequence(Sequence)}.
+     */
+    @FunctionalInterface
+    public interface Sequence {
+        void accept(byte[] bases, int length);
+    }
+
+    private boolean startsWith(int start, byte[] name) {
+        return start + name.length <= limit && Arrays.equals(name, 0, name.length, buffer, start, start + name.length);
+    }
+
+    /**
+     * Finds the next line terminator in the buffer using SWAR (SIMD within a register): every long is XOR-ed with newlines,
+     * so bytes that were a newline become zero, and the lowest zero byte is found with the classic has-zero-byte bit trick.
+     *
+     * @param from The index to start searching at.
+     * @return the index of the next newline, or -1 if there is none before the limit.
+     */
+    private int indexOfNewline(int from) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = (long) LONGS.get(buffer, i) ^ NEWLINES;
+            long zeros = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+        return indexOf((byte) '\n', i);
+    }
+
+    /**
+     * Splits the value of an AUTHORS line and its continuation lines into single authors.
+     * <p> Authors are separated by ", " and the last author by " and ", the separators themselves are not part of a name.
+     * A String is only created for every author, not for the full value.
+     *
+     * @param author Receives every author, in order of appearance.
+     * @throws IOException if the stream cannot be read.
+     */
+    public void continuedAuthors(Consumer<String> author) throws IOException {
+        collectValue();
+        int start = 0;
+        int i = 0;
+        while (i < valueLength) {
+            int separator = separatorLength(i);
+            if (separator > 0) {
+                emit(start, i, author);
+                i += separator;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        emit(start, valueLength, author);
+    }
+
+    /**
+     * Returns the length of the author separator at the given index of the value, or 0 if there is none.
+     */
+    private int separatorLength(int i) {
+        if (value[i] == ',' && i + 1 < valueLength && value[i + 1] == ' ') {
+            return 2;
+        }
+        if (value[i] == ' ' && i + 4 < valueLength && value[i + 1] == 'a' && value[i + 2] == 'n' && value[i + 3] == 'd' && value[i + 4] == ' ') {
+            return 5;
+        }
+        return 0;
+    }
+
+    private void emit(int start, int end, Consumer<String> author) {
+        while (start < end && value[start] == ' ') {
+            start++;
+        }
+        while (end > start && value[end - 1] == ' ') {
+            end--;
+        }
+        if (end > start) {
+            author.accept(new String(value, start, end - start, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Joins the value of the current line and its continuation lines into the value buffer.
+     */
+    private void collectValue() throws IOException {
+        valueLength = 0;
+        appendValue();
+        while (readLine()) {
+            if (classify() != Keyword.CONTINUATION) {
+                pending = true;
+                return;
+            }
+            appendValue();
+        }
+        // The stream ended inside the value, the next call to next() reports the end of the stream.
+        keyword = null;
+        pending = true;
+    }
+
+    private void appendValue() {
+        int end = lineEnd;
+        while (end > valueStart && buffer[end - 1] == ' ') {
+            end--;
+        }
+        int length = end - valueStart;
+        if (length == 0) {
+            return;
+        }
+        if (valueLength + length + 1 > value.length) {
+            value = Arrays.copyOf(value, Math.max(value.length * 2, valueLength + length + 1));
+        }
+        if (valueLength > 0) {
+            value[valueLength++] = ' ';
+        }
+        System.arraycopy(buffer, valueStart, value, valueLength, length);
+        valueLength += length;
+    }
+
+    /**
+     * Determines the keyword and the start of the value of the current line.
+     */
+    private Keyword classify() {
+        int column = lineStart;
+        while (column < lineEnd && buffer[column] == ' ') {
+            column++;
+        }
+        if (column == lineEnd) {
+            valueStart = lineEnd;
+            return keyword = Keyword.OTHER;
+        }
+        if (column - lineStart >= VALUE_COLUMN) {
+            valueStart = column;
+            return keyword = Keyword.CONTINUATION;
+        }
+        int wordEnd = column;
+        while (wordEnd < lineEnd && buffer[wordEnd] != ' ') {
+            wordEnd++;
+        }
+        valueStart = wordEnd;
+        while (valueStart < lineEnd && buffer[valueStart] == ' ') {
+            valueStart++;
+        }
+        return keyword = lookup(column, wordEnd);
+    }
+
+    private Keyword lookup(int start, int end) {
+        int length = end - start;
+        for (Keyword candidate : Keyword.NAMED) {
+            byte[] name = candidate.name;
+            if (name.length == length && name[0] == buffer[start] && Arrays.equals(name, 0, length, buffer, start, end)) {
+                return candidate;
+            }
+        }
+        return Keyword.OTHER;
+    }
+
+    /**
+     * Reads the next line into lineStart and lineEnd, refilling the buffer as needed.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean readLine() throws IOException {
+        int newline = indexOf((byte) '\n', position);
+        while (newline < 0) {
+            if (endOfStream) {
+                if (position == limit) {
+                    return false;
+                }
+                // The last line of the stream has no line terminator.
+                setLine(position, limit);
+                position = limit;
+                return true;
+            }
+            int searched = limit - position;
+            fill();
+            newline = indexOf((byte) '\n', position + searched);
+        }
+        setLine(position, newline);
+        position = newline + 1;
+        return true;
+    }
+
+    private void setLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the unread data to the front of the buffer and reads more data after it, growing the buffer if it is full.
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            consumed += position;
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+}
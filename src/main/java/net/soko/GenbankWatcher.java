@@ -0,0 +1,248 @@
+package net.soko;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * This class keeps the index of a {@link GenbankServer} up to date with the Genbank files in a directory while the server runs,
+ * so files that are added, changed or removed do not need a restart.
+ * <p> Every file is kept in a {@link GenbankStore} of its own. A {@link WatchService} reports which files of the directory
+ * were created, modified or deleted, and only those files are parsed again or dropped. The stores of all files are then
+ * merged into a new store, which is indexed and handed to the server with {@link GenbankServer#setIndex(GenbankIndex)}.
+ * Queries that are running finish on the index they started with.
+ * <p> Only the changed files are parsed, but every update merges the stores of all files and indexes the merged store
+ * from scratch, so its cost grows linearly with the number of entries that are loaded, not with the size of the change.
+ * Merging copies int columns and indexing does not parse any text, so this is much cheaper than parsing all files again.
+ * The indexes that are built on first use, such as the author search, are built again for the new index.
+ * The entries are held twice, once per file and once merged.
+ * <p> Files are often written in several steps, so changes are collected until the directory has been quiet for
+ * {@link #QUIET_MILLIS} ms. A file that cannot be parsed, for example because it is still being copied, keeps its previous
+ * entries until it changes again.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         try (GenbankWatcher watcher = new GenbankWatcher(directory, files, 4, cache, null, null)) {
+ *             GenbankServer server = new GenbankServer(new GenbankIndex(watcher.store()));
+ *             watcher.start(server);
+ *             server.serve(4567);
+ *         }
+ *         }
+ *         </pre>
+ *
+ * @see GenbankLoader#loadSegments(List, int, GenbankCache, GenbankStats, GenbankPipeline)
+ * @see GenbankExplorer
+ */
+public class GenbankWatcher implements AutoCloseable {
+    /**
+     * Time without new events after which the collected changes are loaded.
+     */
+    static final long QUIET_MILLIS = 500;
+
+    private final File directory;
+    private final int threads;
+    private final GenbankCache cache;
+    private final GenbankPipeline pipeline;
+    private final WatchService service;
+    /**
+     * The store of every file, in the order in which the files were first loaded. Only the watch thread changes it once it is started.
+     */
+    private final Map<File, GenbankStore> segments = new LinkedHashMap<>();
+    private Thread thread;
+
+    /**
+     * Starts watching a directory and loads its Genbank files, one store per file.
+     * The directory is watched before the files are loaded, so files that change in the meantime are loaded again.
+     *
+     * @param directory The directory with the Genbank files.
+     * @param files     The Genbank files in the directory.
+     * @param threads   The number of tasks to parse files with, 1 or less parses the files one after another.
+     * @param cache     The cache to use, or null to parse every file.
+     * @param stats     Collects the statistics of the first load, or null.
+     * @param pipeline  The pipeline to read the files with, or null.
+     * @throws IOException if the directory cannot be watched.
+     */
+    public GenbankWatcher(File directory, List<File> files, int threads, GenbankCache cache, GenbankStats stats, GenbankPipeline pipeline) throws IOException {
+        this.directory = directory;
+        this.threads = threads;
+        this.cache = cache;
+        this.pipeline = pipeline;
+        Path path = directory.toPath();
+        service = path.getFileSystem().newWatchService();
+        path.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        List<GenbankStore> stores = GenbankLoader.loadSegments(files, threads, cache, stats, pipeline);
+        for (int i = 0; i < files.size(); i++) {
+            segments.put(files.get(i), stores.get(i));
+        }
+        if (cache != null) {
+            cache.prune(directory, files);
+        }
+    }
+
+    /**
+     * Merges the stores of all files that are loaded into one store, in file order.
+     *
+     * @return a new store with the entries of all files.
+     */
+    public GenbankStore store() {
+        GenbankStore store = new GenbankStore();
+        for (GenbankStore segment : segments.values()) {
+            store.merge(segment);
+        }
+        return store;
+    }
+
+    /**
+     * Starts a daemon thread that loads changed files and replaces the index of the server after every change.
+     *
+     * @param server The server to update.
+     */
+    public void start(GenbankServer server) {
+        thread = new Thread(() -> watch(server), "genbank-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for changes until the watcher is closed, and applies them in batches.
+     */
+    private void watch(GenbankServer server) {
+        try {
+            while (true) {
+                Set<File> changed = new LinkedHashSet<>();
+                WatchKey key = service.take();
+                while (key != null) {
+                    if (!collect(key, changed)) {
+                        System.err.println("Directory " + directory + " can no longer be watched");
+                        return;
+                    }
+                    key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (!changed.isEmpty()) {
+                    try {
+                        update(changed, server);
+                    } catch (RuntimeException e) {
+                        // The server keeps its previous index, the next change merges and indexes the stores of all files again.
+                        System.err.println("Directory " + directory + " could not be updated, keeping the previous index: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // The watcher was closed.
+        }
+    }
+
+    /**
+     * Adds the Genbank files of the events of a key to the changed files.
+     * <p> If events were lost, all files that are loaded or present are considered changed. Files that did not change are
+     * then read from the cache, if there is one.
+     *
+     * @return false if the directory can no longer be watched.
+     */
+    private boolean collect(WatchKey key, Set<File> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed.addAll(segments.keySet());
+                File[] contents = directory.listFiles();
+                if (contents != null) {
+                    for (File file : contents) {
+                        if (GenbankInput.isGenbankFile(file)) {
+                            changed.add(file);
+                        }
+                    }
+                }
+            } else {
+                File file = directory.toPath().resolve((Path) event.context()).toFile();
+                if (GenbankInput.isGenbankFile(file)) {
+                    changed.add(file);
+                }
+            }
+        }
+        return key.reset();
+    }
+
+    /**
+     * Loads the changed files that exist, drops the ones that were removed and hands a new index to the server.
+     *
+     * @param changed The files that were created, modified or deleted.
+     * @param server  The server to update.
+     */
+    private void update(Set<File> changed, GenbankServer server) {
+        GenbankEvents.Update event = new GenbankEvents.Update();
+        event.begin();
+        long start = System.nanoTime();
+        List<File> loaded = new ArrayList<>();
+        int removed = 0;
+        for (File file : changed) {
+            if (file.isFile()) {
+                loaded.add(file);
+            } else if (segments.remove(file) != null) {
+                removed++;
+            }
+        }
+        try {
+            List<GenbankStore> stores = GenbankLoader.loadSegments(loaded, threads, cache, null, pipeline);
+            for (int i = 0; i < loaded.size(); i++) {
+                segments.put(loaded.get(i), stores.get(i));
+            }
+        } catch (RuntimeException e) {
+            // Load the files one by one, so a single file that cannot be parsed yet does not hold back the others.
+            for (File file : List.copyOf(loaded)) {
+                try {
+                    segments.put(file, GenbankLoader.loadSegments(List.of(file), threads, cache, null, pipeline).get(0));
+                } catch (RuntimeException fileException) {
+                    System.err.println("File " + file + " could not be loaded, keeping its previous entries: " + fileException.getMessage());
+                    loaded.remove(file);
+                }
+            }
+        }
+        if (loaded.isEmpty() && removed == 0) {
+            return;
+        }
+        if (cache != null) {
+            cache.prune(directory, new ArrayList<>(segments.keySet()));
+        }
+        GenbankStore store = store();
+        server.setIndex(new GenbankIndex(store));
+        event.filesLoaded = loaded.size();
+        event.filesRemoved = removed;
+        event.entries = store.entryCount();
+        event.commit();
+        System.err.println("Loaded " + loaded.size() + " and removed " + removed + " files, " + store.entryCount() + " entries in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Stops watching the directory, waiting for an update that is running to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
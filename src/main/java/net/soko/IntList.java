@@ -0,0 +1,112 @@
+package net.soko;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for postings and other id lists without boxing every value.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         IntList references = new IntList();
+ *         references.add(42);
+ *         int first = references.get(0);
+ *         }
+ *         </pre>
+ */
+public final class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Creates a list holding a copy of the given values.
+     *
+     * @param values The values of the list.
+     * @return the list.
+     */
+    public static IntList of(int... values) {
+        IntList list = new IntList(values.length);
+        System.arraycopy(values, 0, list.values, 0, values.length);
+        list.size = values.length;
+        return list;
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the last value of the list.
+     *
+     * @return the last value, or -1 if the list is empty.
+     */
+    public int last() {
+        return size == 0 ? -1 : values[size - 1];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Intersects two lists sorted in ascending order.
+     *
+     * @param a The first sorted list.
+     * @param b The second sorted list.
+     * @return the values present in both lists, sorted.
+     */
+    public static IntList intersect(IntList a, IntList b) {
+        IntList result = new IntList(Math.min(a.size, b.size));
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.values[i] < b.values[j]) {
+                i++;
+            } else if (a.values[i] > b.values[j]) {
+                j++;
+            } else {
+                result.add(a.values[i]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+}
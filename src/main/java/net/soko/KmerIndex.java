@@ -0,0 +1,354 @@
+package net.soko;
+
+import java.util.Arrays;
+
+/**
+ * This class is a sampled k-mer index over the sequences of a {@link SequenceStore}, for motif and exact subsequence search.
+ * <p> Every k-mer of {@link #K} bases that starts at a multiple of {@link #STEP} in the store, lies within one sequence and
+ * only has A, C, G and T, is indexed by its 2K bit code. The positions are kept in one int array, grouped by code
+ * with an offset per code, so the positions of a k-mer are one contiguous, sorted range. Sampling every {@link #STEP}th
+ * position keeps the index at 4 / {@link #STEP} bytes per base, on top of the quarter of a byte per base of the store.
+ * <p> A motif of at least K + STEP - 1 bases contains a sampled k-mer of every occurrence: the occurrence at s contains
+ * the k-mer at offset d for every d with s + d a multiple of STEP, which is a different residue of d for every residue of s.
+ * For every residue, the k-mer of the motif with the fewest positions among the offsets of that residue is looked up, and
+ * every position is verified against the whole motif in the store. Every occurrence is found for exactly one residue.
+ * Shorter motifs, and motifs that have an IUPAC code in every k-mer of some residue, are matched with a scan of the store.
+ * <p> Motifs are written with the IUPAC codes: A, C, G, T, U, R, Y, S, W, K, M, B, D, H, V and N, case-insensitive.
+ * A base of the sequence that is not A, C, G or T, such as an N, is only matched by N.
+ * Motifs are matched on the strand of the sequences in the files.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         KmerIndex index = new KmerIndex(sequences);
+ *         long[] matches = index.find(KmerIndex.Motif.parse("GAATTCNNNNNNNNNNNNGAATTC"));
+ *         }
+ *         </pre>
+ *
+ * @see SequenceStore
+ */
+public final class KmerIndex {
+    /**
+     * Length of the indexed k-mers, the offsets of all 4^K codes take 4^(K+1) bytes.
+     */
+    public static final int K = 11;
+    /**
+     * Distance between the start positions of the indexed k-mers, a power of two.
+     */
+    public static final int STEP = 8;
+    private static final int MASK = (1 << 2 * K) - 1;
+
+    private final SequenceStore sequences;
+    /**
+     * The positions of the k-mers with code c are positions[offsets[c]] to positions[offsets[c + 1]], divided by STEP.
+     */
+    private final int[] offsets = new int[(1 << 2 * K) + 1];
+    private final int[] positions;
+
+    /**
+     * Builds the index of all sequences of a store.
+     * <p> The codes of the sampled k-mers are first written in order of position, after which they are counted per code and
+     * their positions are placed, in two tight loops over that array. Rolling over the bases and scattering into the
+     * offsets in the same loop leaves the CPU too little work to overlap the cache misses of the scattered writes.
+     *
+     * @param sequences The sequences to index.
+     */
+    public KmerIndex(SequenceStore sequences) {
+        this.sequences = sequences;
+        if (sequences.size() / STEP >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many bases to index: " + sequences.size());
+        }
+        // The code of the k-mer at every multiple of STEP, or -1 if it is not indexed.
+        int[] codes = new int[(int) ((sequences.size() + STEP - 1) / STEP)];
+        Arrays.fill(codes, -1);
+        forEachKmer((code, position) -> codes[(int) (position / STEP)] = code);
+        for (int code : codes) {
+            if (code >= 0) {
+                offsets[code + 1]++;
+            }
+        }
+        for (int c = 0; c < MASK + 1; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        positions = new int[offsets[MASK + 1]];
+        int[] next = Arrays.copyOf(offsets, MASK + 1);
+        // Positions are visited in ascending order, so every range ends up sorted.
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] >= 0) {
+                positions[next[codes[i]]++] = i;
+            }
+        }
+    }
+
+    public SequenceStore getSequences() {
+        return sequences;
+    }
+
+    /**
+     * Returns the number of bytes taken by the index.
+     *
+     * @return the number of bytes of the offsets and positions.
+     */
+    public long memory() {
+        return (long) Integer.BYTES * (offsets.length + positions.length);
+    }
+
+    /**
+     * Finds all occurrences of a motif.
+     *
+     * @param motif The motif to find.
+     * @return the positions in the store at which the occurrences start, sorted.
+     */
+    public long[] find(Motif motif) {
+        int length = motif.length();
+        // For every residue, the offset of the k-mer to look up.
+        int[] lookups = new int[STEP];
+        for (int residue = 0; residue < STEP; residue++) {
+            lookups[residue] = -1;
+            for (int offset = residue; offset + K <= length; offset += STEP) {
+                int code = motif.code(offset);
+                if (code >= 0 && (lookups[residue] < 0 || count(code) < count(motif.code(lookups[residue])))) {
+                    lookups[residue] = offset;
+                }
+            }
+            if (lookups[residue] < 0) {
+                return scan(motif);
+            }
+        }
+        LongList matches = new LongList();
+        for (int offset : lookups) {
+            int code = motif.code(offset);
+            for (int i = offsets[code]; i < offsets[code + 1]; i++) {
+                long start = (long) positions[i] * STEP - offset;
+                if (start >= 0 && matches(motif, start)) {
+                    matches.add(start);
+                }
+            }
+        }
+        long[] sorted = matches.toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Finds all occurrences of a motif with a scan of every sequence.
+     * <p> Motifs of up to 64 bases are matched with the bit-parallel Shift-And algorithm: bit i of the state is set while the
+     * last i + 1 bases match the first i + 1 positions of the motif, so every base costs a shift and a mask. Longer motifs
+     * are tested at every start position.
+     *
+     * @param motif The motif to find.
+     * @return the positions in the store at which the occurrences start, sorted.
+     */
+    public long[] scan(Motif motif) {
+        LongList matches = new LongList();
+        int length = motif.length();
+        if (length > Long.SIZE) {
+            for (int s = 0; s < sequences.count(); s++) {
+                for (long start = sequences.start(s); start + length <= sequences.end(s); start++) {
+                    if (matches(motif, start)) {
+                        matches.add(start);
+                    }
+                }
+            }
+            return matches.toArray();
+        }
+        // The positions of the motif every code matches, and at which an exception matches.
+        long[] masks = new long[4];
+        long exceptions = 0;
+        for (int i = 0; i < length; i++) {
+            for (int code = 0; code < 4; code++) {
+                masks[code] |= (long) (motif.masks[i] >>> code & 1) << i;
+            }
+            exceptions |= motif.masks[i] == Motif.ANY ? 1L << i : 0;
+        }
+        long match = 1L << length - 1;
+        int run = 0;
+        for (int s = 0; s < sequences.count(); s++) {
+            long state = 0;
+            long position = sequences.start(s);
+            long end = sequences.end(s);
+            while (position < end) {
+                while (run < sequences.exceptionCount() && sequences.exceptionEnd(run) <= position) {
+                    run++;
+                }
+                boolean exception = run < sequences.exceptionCount() && sequences.exceptionStart(run) <= position;
+                long stop = exception ? Math.min(end, sequences.exceptionEnd(run)) : run < sequences.exceptionCount() ? Math.min(end, sequences.exceptionStart(run)) : end;
+                for (; position < stop; position++) {
+                    state = (state << 1 | 1) & (exception ? exceptions : masks[sequences.code(position)]);
+                    if ((state & match) != 0) {
+                        matches.add(position - length + 1);
+                    }
+                }
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Returns the number of indexed positions of a k-mer.
+     */
+    private int count(int code) {
+        return offsets[code + 1] - offsets[code];
+    }
+
+    /**
+     * Tests whether a motif occurs at a position, within the sequence of that position.
+     * The bounds are checked before any base is read, as the motif may reach past the last base of the store.
+     */
+    private boolean matches(Motif motif, long start) {
+        int length = motif.length();
+        if (start + length > sequences.end(sequenceAt(start))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((motif.masks[i] >>> sequences.code(start + i) & 1) == 0) {
+                return false;
+            }
+        }
+        // The codes of exceptions are A, so the exceptions in the range only match N.
+        for (int run = sequences.nextException(start); run < sequences.exceptionCount() && sequences.exceptionStart(run) < start + length; run++) {
+            long end = Math.min(sequences.exceptionEnd(run), start + length);
+            for (long position = Math.max(sequences.exceptionStart(run), start); position < end; position++) {
+                if (motif.masks[(int) (position - start)] != Motif.ANY) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the sequence that contains a position.
+     *
+     * @param position The position in the store.
+     * @return the id of the sequence.
+     */
+    public int sequenceAt(long position) {
+        int low = 0;
+        int high = sequences.count() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (sequences.start(middle) <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Passes the code and position of every k-mer that is indexed, in order of position.
+     */
+    private void forEachKmer(Kmer kmer) {
+        int run = 0;
+        for (int s = 0; s < sequences.count(); s++) {
+            long position = sequences.start(s);
+            long end = sequences.end(s);
+            // Every stretch of bases between two runs of exceptions is rolled over on its own.
+            while (position < end) {
+                while (run < sequences.exceptionCount() && sequences.exceptionEnd(run) <= position) {
+                    run++;
+                }
+                if (run < sequences.exceptionCount() && sequences.exceptionStart(run) <= position) {
+                    position = sequences.exceptionEnd(run);
+                    continue;
+                }
+                long stop = run < sequences.exceptionCount() ? Math.min(end, sequences.exceptionStart(run)) : end;
+                roll(position, stop, kmer);
+                position = stop;
+            }
+        }
+    }
+
+    /**
+     * Passes the sampled k-mers of a stretch of bases without exceptions.
+     */
+    private void roll(long from, long to, Kmer kmer) {
+        int code = 0;
+        for (long position = from; position < to; position++) {
+            code = (code << 2 | sequences.code(position)) & MASK;
+            long start = position - K + 1;
+            if (start >= from && (start & STEP - 1) == 0) {
+                kmer.accept(code, start);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Kmer {
+        void accept(int code, long position);
+    }
+
+    /**
+     * A motif of IUPAC codes, stored as the set of bases every position matches.
+     */
+    public static final class Motif {
+        /**
+         * The mask of N, which also matches bases that are not A, C, G or T.
+         */
+        static final int ANY = 0b1111;
+        private static final String CODES = "ACGTURYSWKMBDHVN";
+        private static final int[] MASKS = {0b0001, 0b0010, 0b0100, 0b1000, 0b1000, 0b0101, 0b1010, 0b0110, 0b1001, 0b1100, 0b0011,
+                0b1110, 0b1101, 0b1011, 0b0111, ANY};
+
+        private final String text;
+        /**
+         * Bit c of the mask of a position is set if the base with code c matches it.
+         */
+        private final int[] masks;
+
+        private Motif(String text, int[] masks) {
+            this.text = text;
+            this.masks = masks;
+        }
+
+        /**
+         * Parses a motif.
+         *
+         * @param text The IUPAC codes of the motif.
+         * @return the motif.
+         * @throws IllegalArgumentException if the motif is empty or has a letter that is not an IUPAC code.
+         */
+        public static Motif parse(String text) {
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Invalid motif: the motif is empty");
+            }
+            int[] masks = new int[text.length()];
+            for (int i = 0; i < masks.length; i++) {
+                int code = CODES.indexOf(Character.toUpperCase(text.charAt(i)));
+                if (code < 0) {
+                    throw new IllegalArgumentException("Invalid motif " + text + ": " + text.charAt(i) + " at position " + (i + 1) + " is not one of " + CODES);
+                }
+                masks[i] = MASKS[code];
+            }
+            return new Motif(text, masks);
+        }
+
+        public int length() {
+            return masks.length;
+        }
+
+        /**
+         * Returns the code of the k-mer of the motif at an offset.
+         *
+         * @param offset The offset of the k-mer in the motif.
+         * @return the 2K bit code, or -1 if the k-mer has a code that matches more than one base.
+         */
+        int code(int offset) {
+            int code = 0;
+            for (int i = offset; i < offset + K; i++) {
+                if (Integer.bitCount(masks[i]) != 1) {
+                    return -1;
+                }
+                code = code << 2 | Integer.numberOfTrailingZeros(masks[i]);
+            }
+            return code;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
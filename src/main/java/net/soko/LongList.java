@@ -0,0 +1,52 @@
+package net.soko;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, used for columns of file offsets without boxing every value.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         LongList offsets = new LongList();
+ *         offsets.add(1L << 40);
+ *         long first = offsets.get(0);
+ *         }
+ *         </pre>
+ *
+ * @see IntList
+ */
+public final class LongList {
+    private long[] values;
+    private int size;
+
+    public LongList() {
+        this(8);
+    }
+
+    public LongList(int capacity) {
+        values = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
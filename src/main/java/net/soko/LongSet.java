@@ -0,0 +1,125 @@
+package net.soko;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hash set of non-negative primitive longs, used for pairs of ids packed into a long without boxing every pair.
+ * <p> The values are kept in one array with open addressing and linear probing, the array doubles when it is half full.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         LongSet pairs = new LongSet();
+ *         boolean added = pairs.add(LongSet.pair(3, 7));
+ *         pairs.forEach(pair -> System.out.println(LongSet.first(pair) + " " + LongSet.second(pair)));
+ *         }
+ *         </pre>
+ */
+public final class LongSet {
+    private static final long EMPTY = -1;
+
+    private long[] values;
+    private int size;
+
+    public LongSet() {
+        this(16);
+    }
+
+    public LongSet(int capacity) {
+        values = new long[Integer.highestOneBit(Math.max(capacity, 8) - 1) << 2];
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Packs two non-negative ints into a long.
+     *
+     * @param first  The first int, in the upper half.
+     * @param second The second int, in the lower half.
+     * @return the pair.
+     */
+    public static long pair(int first, int second) {
+        return (long) first << 32 | second;
+    }
+
+    public static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    public static int second(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value The value to add, it must not be negative.
+     * @return true if the value was not in the set yet.
+     */
+    public boolean add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values cannot be negative: " + value);
+        }
+        int slot = slot(value, values.length);
+        while (values[slot] != EMPTY) {
+            if (values[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+        values[slot] = value;
+        if (++size * 2 > values.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        int slot = slot(value, values.length);
+        while (values[slot] != EMPTY) {
+            if (values[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every value of the set to a consumer, in no particular order.
+     *
+     * @param consumer Receives the values.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (long value : values) {
+            if (value != EMPTY) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] old = values;
+        values = new long[old.length * 2];
+        Arrays.fill(values, EMPTY);
+        for (long value : old) {
+            if (value != EMPTY) {
+                int slot = slot(value, values.length);
+                while (values[slot] != EMPTY) {
+                    slot = (slot + 1) & (values.length - 1);
+                }
+                values[slot] = value;
+            }
+        }
+    }
+
+    private static int slot(long value, int length) {
+        // Mix the bits, pairs of small ids differ in few bits.
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (length - 1);
+    }
+}
@@ -0,0 +1,167 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick automaton that finds which of many patterns occur in a text, in one pass over the text.
+ * <p> The patterns are stored in a trie whose states have a failure link to the longest proper suffix that is also in the trie.
+ * Matching follows the trie and falls back along the failure links on a mismatch, so the cost of matching a text is linear
+ * in its length plus the number of matches, no matter how many patterns there are.
+ * <p> The edges of all states are kept in flat arrays sorted by character, an edge is found with a binary search.
+ * The matcher is not modified after it is built and can be shared between threads.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         PatternMatcher matcher = new PatternMatcher(List.of("kinase", "genome"));
+ *         matcher.match("Complete genome of a kinase", pattern -> System.out.println(pattern));
+ *         }
+ *         </pre>
+ *
+ * @see GenbankBatch
+ */
+public final class PatternMatcher {
+    /**
+     * The edges of state s are the edges from edgeStart[s] to edgeStart[s + 1], sorted by character.
+     */
+    private final int[] edgeStart;
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+    /**
+     * Failure link of every state, the root fails to itself.
+     */
+    private final int[] fail;
+    /**
+     * The pattern that ends in a state, or -1 if none does.
+     */
+    private final int[] pattern;
+    /**
+     * The nearest state along the failure links that ends a pattern, or -1 if there is none.
+     */
+    private final int[] output;
+
+    /**
+     * Builds the automaton for a list of patterns, a pattern is reported by its index in the list.
+     *
+     * @param patterns The distinct, non-empty patterns to look for, case-sensitive.
+     * @throws IllegalArgumentException if a pattern is empty or occurs twice.
+     */
+    public PatternMatcher(List<String> patterns) {
+        // Build the trie, states are numbered in order of creation and the root is state 0.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        IntList ends = new IntList();
+        trie.add(new TreeMap<>());
+        ends.add(-1);
+        for (int p = 0; p < patterns.size(); p++) {
+            String text = patterns.get(p);
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Patterns cannot be empty");
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                Integer next = trie.get(state).get(text.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(text.charAt(i), next);
+                    trie.add(new TreeMap<>());
+                    ends.add(-1);
+                }
+                state = next;
+            }
+            if (ends.get(state) >= 0) {
+                throw new IllegalArgumentException("Pattern occurs twice: " + text);
+            }
+            ends.set(state, p);
+        }
+
+        // Flatten the trie into arrays.
+        int states = trie.size();
+        edgeStart = new int[states + 1];
+        edgeChar = new char[states - 1];
+        edgeTarget = new int[states - 1];
+        int edge = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edge;
+            for (Map.Entry<Character, Integer> entry : trie.get(s).entrySet()) {
+                edgeChar[edge] = entry.getKey();
+                edgeTarget[edge] = entry.getValue();
+                edge++;
+            }
+        }
+        edgeStart[states] = edge;
+        pattern = ends.toArray();
+
+        // Compute the failure and output links breadth first, so the links of shorter prefixes are known.
+        fail = new int[states];
+        output = new int[states];
+        output[0] = -1;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTarget[e];
+                int link = 0;
+                if (state != 0) {
+                    int f = fail[state];
+                    while (f != 0 && step(f, edgeChar[e]) < 0) {
+                        f = fail[f];
+                    }
+                    link = Math.max(step(f, edgeChar[e]), 0);
+                }
+                fail[child] = link;
+                output[child] = pattern[link] >= 0 ? link : output[link];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Follows the edge of a state for a character.
+     *
+     * @return the next state, or -1 if the state has no edge for the character.
+     */
+    private int step(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char found = edgeChar[middle];
+            if (found < c) {
+                low = middle + 1;
+            } else if (found > c) {
+                high = middle - 1;
+            } else {
+                return edgeTarget[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reports every occurrence of a pattern in a text, a pattern that occurs more than once is reported more than once.
+     *
+     * @param text      The text to search.
+     * @param onPattern Called with the index of the pattern for every occurrence.
+     */
+    public void match(String text, IntConsumer onPattern) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            for (int s = pattern[state] >= 0 ? state : output[state]; s > 0; s = output[s]) {
+                onPattern.accept(pattern[s]);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Postings of every author, title, journal and LOCUS name of a {@link GenbankIndex}, stored as {@link Bitmap}s of reference ids,
+ * for the {@link GenbankExpression}s of the explorer. Years and PubMed IDs are looked up in the sorted indexes of the
+ * {@link GenbankIndex} instead, as they are matched by range.
+ * <p> A term is looked up in the dictionaries of the store. Exact terms take the bitmap of their string, terms that contain
+ * a text take the union of the bitmaps of all matching strings. Titles are matched with the trigram index of the
+ * {@link GenbankIndex}, the other dictionaries are scanned, as they are much smaller than the number of references.
+ * The expressions then combine the bitmaps of their terms with word-level set operations.
+ * <p> The bitmaps are built in one pass over the references of the store, and are only read afterwards.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         ReferenceBitmaps bitmaps = index.referenceBitmaps();
+ *         Bitmap reilly = bitmaps.term(GenbankExpression.Field.AUTHOR, true, "Reilly,L.P.");
+ *         Bitmap kinases = bitmaps.term(GenbankExpression.Field.TITLE, false, "kinase");
+ *         Bitmap both = reilly.and(kinases);
+ *         }
+ *         </pre>
+ *
+ * @see GenbankIndex#referenceBitmaps()
+ */
+public final class ReferenceBitmaps {
+    private final GenbankIndex index;
+    private final Bitmap[] authors;
+    private final Bitmap[] titles;
+    private final Bitmap[] journals;
+    private final Map<String, Bitmap> loci = new HashMap<>();
+    private final Bitmap all;
+
+    /**
+     * Builds the bitmaps of all references of an index.
+     *
+     * @param index The index of the references.
+     */
+    public ReferenceBitmaps(GenbankIndex index) {
+        this.index = index;
+        GenbankStore store = index.getStore();
+        authors = new Bitmap[store.authors().size()];
+        for (int a = 0; a < authors.length; a++) {
+            authors[a] = Bitmap.of(index.referencesByAuthor(a));
+        }
+        titles = new Bitmap[store.titles().size()];
+        for (int t = 0; t < titles.length; t++) {
+            titles[t] = Bitmap.of(index.referencesByTitle(t));
+        }
+        journals = new Bitmap[store.journals().size()];
+        for (int j = 0; j < journals.length; j++) {
+            journals[j] = new Bitmap();
+        }
+        // References are visited in order, so every bitmap is appended to.
+        for (int r = 0; r < store.referenceCount(); r++) {
+            journals[store.referenceJournal(r)].add(r);
+        }
+        for (int e = 0; e < store.entryCount(); e++) {
+            Bitmap references = loci.computeIfAbsent(store.locus(e), key -> new Bitmap());
+            for (int r = store.referenceStart(e); r < store.referenceEnd(e); r++) {
+                references.add(r);
+            }
+        }
+        all = Bitmap.range(store.referenceCount());
+    }
+
+    /**
+     * Returns all references, the complement of a bitmap is taken against it.
+     *
+     * @return the bitmap of all reference ids.
+     */
+    public Bitmap all() {
+        return all;
+    }
+
+    /**
+     * Returns the references that match a term.
+     *
+     * @param field The field to match.
+     * @param exact Whether the field needs to equal the value, otherwise it needs to contain it. Case-sensitive.
+     * @param value The value to match.
+     * @return the bitmap of the matching references, it must not be modified.
+     */
+    public Bitmap term(GenbankExpression.Field field, boolean exact, String value) {
+        GenbankStore store = index.getStore();
+        return switch (field) {
+            case AUTHOR -> lookup(store.authors(), authors, exact, value);
+            case TITLE -> exact ? lookup(store.titles(), titles, true, value) : union(titles, index.titlesContaining(value));
+            case JOURNAL -> lookup(store.journals(), journals, exact, value);
+            case LOCUS -> exact ? loci.getOrDefault(value, new Bitmap()) : Bitmap.union(containing(loci, value));
+            case YEAR, PUBMED -> throw new IllegalArgumentException(field + " is matched by range");
+        };
+    }
+
+    /**
+     * Returns the references whose year or PubMed ID is in a range, looked up in the sorted indexes of the {@link GenbankIndex}.
+     *
+     * @param field The year or PubMed ID.
+     * @param from  The first value of the range.
+     * @param to    The last value of the range, inclusive.
+     * @return the bitmap of the matching references.
+     */
+    public Bitmap range(GenbankExpression.Field field, int from, int to) {
+        return switch (field) {
+            case YEAR -> Bitmap.of(index.referencesByYear(from, to));
+            case PUBMED -> Bitmap.of(from == to ? index.referencesByPubmed(from) : new IntList(0));
+            default -> throw new IllegalArgumentException(field + " is not a number");
+        };
+    }
+
+    private static Bitmap lookup(StringDictionary strings, Bitmap[] bitmaps, boolean exact, String value) {
+        if (exact) {
+            int id = strings.find(value);
+            return id < 0 ? new Bitmap() : bitmaps[id];
+        }
+        IntList ids = new IntList();
+        for (int id = 0; id < strings.size(); id++) {
+            if (strings.get(id).contains(value)) {
+                ids.add(id);
+            }
+        }
+        return union(bitmaps, ids);
+    }
+
+    private static Bitmap union(Bitmap[] bitmaps, IntList ids) {
+        List<Bitmap> matches = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            matches.add(bitmaps[ids.get(i)]);
+        }
+        return Bitmap.union(matches);
+    }
+
+    private static List<Bitmap> containing(Map<String, Bitmap> bitmaps, String value) {
+        List<Bitmap> matches = new ArrayList<>();
+        bitmaps.forEach((string, bitmap) -> {
+            if (string.contains(value)) {
+                matches.add(bitmap);
+            }
+        });
+        return matches;
+    }
+}
@@ -0,0 +1,314 @@
+package net.soko;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores the sequences of the entries off-heap, packed at two bits per base, keyed by their LOCUS name.
+ * <p> The bases A, C, G and T are stored as the codes 0 to 3, four bases to a byte, in direct {@link ByteBuffer}s of at most
+ * {@link #PAGE_BASES} bases, so the sequences take about a quarter of a byte per base outside of the Java heap, and the total
+ * number of bases is not limited by the size of a single buffer. Sequences are stored one after another, a base is addressed
+ * by its position in the store.
+ * <p> Bases that are not A, C, G or T, such as N and the other IUPAC codes, are stored as A in the packed data and are kept
+ * in a list of exceptions: runs of the same letter with their start and length, as unknown bases usually come in long runs.
+ * The letters are kept as they appear in the file, so the sequences can be decoded without changes besides their case.
+ * <p> The store is filled as a {@link GenbankSequenceListener}, stores filled by parallel parse tasks are combined with
+ * {@link #merge(SequenceStore)} in file order. Once filled, the store is only read, see {@link KmerIndex}.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         SequenceStore sequences = new SequenceStore();
+ *         try (InputStream in = GenbankInput.open(file)) {
+ *             GenbankParser.parseGenbankStream(file, 0, in, sequences, null);
+ *         }
+ *         int id = sequences.find("NC_000913");
+ *         String start = sequences.bases(id, 0, 60);
+ *         }
+ *         </pre>
+ *
+ * @see KmerIndex
+ * @see GenbankSequenceListener
+ */
+public final class SequenceStore implements GenbankSequenceListener {
+    /**
+     * Number of bases of a full page, pages grow up to this size.
+     */
+    static final int PAGE_BASES = 1 << 26;
+    private static final int PAGE_SHIFT = 26;
+    private static final int FIRST_PAGE_BYTES = 1 << 12;
+    private static final String DECODE = "acgt";
+    /**
+     * The code of every ASCII letter, or -1 for letters that are stored as exceptions.
+     */
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        Arrays.fill(CODES, (byte) -1);
+        for (int code = 0; code < 4; code++) {
+            CODES[DECODE.charAt(code)] = (byte) code;
+            CODES[Character.toUpperCase(DECODE.charAt(code))] = (byte) code;
+        }
+    }
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    /**
+     * Number of bases in the store.
+     */
+    private long size;
+    private final List<String> loci = new ArrayList<>();
+    /**
+     * The id of the first sequence of every LOCUS name.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+    /**
+     * The bases of sequence s are the bases from starts[s] to starts[s + 1].
+     */
+    private final LongList starts = new LongList();
+    /**
+     * Runs of bases that are not A, C, G or T, in order of their position.
+     */
+    private final LongList exceptionStarts = new LongList();
+    private final IntList exceptionLengths = new IntList();
+    private final IntList exceptionBases = new IntList();
+
+    public SequenceStore() {
+        starts.add(0);
+    }
+
+    @Override
+    public void onSequence(GenbankEntry entry, byte[] bases, int length) {
+        int id = loci.size();
+        loci.add(entry.getLocus());
+        ids.putIfAbsent(entry.getLocus(), id);
+        long start = size;
+        for (int i = 0; i < length; i++) {
+            byte base = bases[i];
+            int code = base >= 0 ? CODES[base] : -1;
+            if (code < 0) {
+                addException(start, base);
+                code = 0;
+            }
+            put(code);
+        }
+        starts.add(size);
+    }
+
+    @Override
+    public void onEntry(GenbankEntry entry) {
+        // Only the sequences are stored.
+    }
+
+    /**
+     * Appends the sequences of a store filled with the files following the ones of this store.
+     *
+     * @param other The store to append.
+     */
+    public void merge(SequenceStore other) {
+        long offset = size;
+        for (int s = 0; s < other.count(); s++) {
+            ids.putIfAbsent(other.loci.get(s), loci.size());
+            loci.add(other.loci.get(s));
+            starts.add(offset + other.starts.get(s + 1));
+        }
+        for (long position = 0; position < other.size; position++) {
+            put(other.code(position));
+        }
+        for (int e = 0; e < other.exceptionStarts.size(); e++) {
+            exceptionStarts.add(offset + other.exceptionStarts.get(e));
+            exceptionLengths.add(other.exceptionLengths.get(e));
+            exceptionBases.add(other.exceptionBases.get(e));
+        }
+    }
+
+    /**
+     * Returns the number of sequences.
+     *
+     * @return the number of entries with a sequence.
+     */
+    public int count() {
+        return loci.size();
+    }
+
+    /**
+     * Returns the total number of bases of all sequences.
+     *
+     * @return the number of bases.
+     */
+    public long size() {
+        return size;
+    }
+
+    public String locus(int sequence) {
+        return loci.get(sequence);
+    }
+
+    /**
+     * Returns the id of the sequence of an entry.
+     *
+     * @param locus The LOCUS name of the entry.
+     * @return the id of the first sequence with that name, or -1 if there is none.
+     */
+    public int find(String locus) {
+        return ids.getOrDefault(locus, -1);
+    }
+
+    /**
+     * Returns the position in the store of the first base of a sequence.
+     *
+     * @param sequence The id of the sequence.
+     * @return the position of the first base.
+     */
+    public long start(int sequence) {
+        return starts.get(sequence);
+    }
+
+    public long end(int sequence) {
+        return starts.get(sequence + 1);
+    }
+
+    /**
+     * Returns the code of the base at a position: 0 to 3 for A, C, G and T, and 0 for exceptions.
+     *
+     * @param position The position in the store.
+     * @return the two bit code of the base.
+     */
+    public int code(long position) {
+        int offset = (int) (position & (PAGE_BASES - 1));
+        return (pages.get((int) (position >>> PAGE_SHIFT)).get(offset >>> 2) >>> ((offset & 3) << 1)) & 3;
+    }
+
+    /**
+     * Returns the letter of the base at a position.
+     *
+     * @param position The position in the store.
+     * @return the base, lower case for A, C, G and T, or the letter of the exception as it appears in the file.
+     */
+    public char base(long position) {
+        int exception = exception(position);
+        return exception < 0 ? DECODE.charAt(code(position)) : (char) exceptionBases.get(exception);
+    }
+
+    /**
+     * Decodes a part of a sequence.
+     *
+     * @param sequence The id of the sequence.
+     * @param from     The offset of the first base in the sequence.
+     * @param to       The offset after the last base, it is limited to the length of the sequence.
+     * @return the bases.
+     */
+    public String bases(int sequence, long from, long to) {
+        long end = Math.min(start(sequence) + to, end(sequence));
+        StringBuilder bases = new StringBuilder();
+        for (long position = start(sequence) + from; position < end; position++) {
+            bases.append(base(position));
+        }
+        return bases.toString();
+    }
+
+    /**
+     * Returns the number of runs of exceptions, see {@link #exceptionStart(int)}.
+     *
+     * @return the number of runs.
+     */
+    public int exceptionCount() {
+        return exceptionStarts.size();
+    }
+
+    /**
+     * Returns the position of the first base of a run of exceptions, the runs are sorted by position.
+     *
+     * @param run The index of the run.
+     * @return the position in the store.
+     */
+    public long exceptionStart(int run) {
+        return exceptionStarts.get(run);
+    }
+
+    public long exceptionEnd(int run) {
+        return exceptionStarts.get(run) + exceptionLengths.get(run);
+    }
+
+    /**
+     * Finds the first run of exceptions that ends after a position.
+     *
+     * @param position The position in the store.
+     * @return the index of the run, or {@link #exceptionCount()} if all runs end before the position.
+     */
+    public int nextException(long position) {
+        int low = 0;
+        int high = exceptionStarts.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (exceptionEnd(middle) <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of bytes taken by the packed bases and the exceptions.
+     *
+     * @return the number of bytes, most of which are off-heap.
+     */
+    public long memory() {
+        long bytes = 0;
+        for (ByteBuffer page : pages) {
+            bytes += page.capacity();
+        }
+        return bytes + (long) exceptionStarts.size() * (Long.BYTES + 2 * Integer.BYTES);
+    }
+
+    /**
+     * Returns the run of exceptions that contains a position.
+     *
+     * @return the index of the run, or -1 if the base at the position is A, C, G or T.
+     */
+    private int exception(long position) {
+        int run = nextException(position);
+        return run < exceptionStarts.size() && exceptionStarts.get(run) <= position ? run : -1;
+    }
+
+    /**
+     * Records the exception at the end of the store, extending the last run if it is the same letter in the same sequence.
+     *
+     * @param sequenceStart The position of the first base of the sequence that is being added.
+     */
+    private void addException(long sequenceStart, byte base) {
+        int last = exceptionStarts.size() - 1;
+        if (last >= 0 && exceptionEnd(last) == size && exceptionBases.get(last) == base && exceptionStarts.get(last) >= sequenceStart) {
+            exceptionLengths.set(last, exceptionLengths.get(last) + 1);
+        } else {
+            exceptionStarts.add(size);
+            exceptionLengths.add(1);
+            exceptionBases.add(base);
+        }
+    }
+
+    /**
+     * Appends the code of a base, growing the last page or starting a new one as needed.
+     */
+    private void put(int code) {
+        int page = (int) (size >>> PAGE_SHIFT);
+        int offset = (int) (size & (PAGE_BASES - 1));
+        if (page == pages.size()) {
+            pages.add(ByteBuffer.allocateDirect(FIRST_PAGE_BYTES));
+        } else if (offset >>> 2 == pages.get(page).capacity()) {
+            // Pages double until they are full, so small stores stay small. New buffers are zeroed.
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(pages.get(page).capacity() * 2, PAGE_BASES >>> 2));
+            grown.put(pages.get(page).clear());
+            pages.set(page, grown);
+        }
+        ByteBuffer buffer = pages.get(page);
+        int index = offset >>> 2;
+        buffer.put(index, (byte) (buffer.get(index) | code << ((offset & 3) << 1)));
+        size++;
+    }
+}
@@ -0,0 +1,84 @@
+package net.soko;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary that interns strings and assigns them dense int ids in order of first appearance.
+ * <p> Structures that refer to the same strings many times, such as author names, store the id instead of the string,
+ * so every distinct string is kept once.
+ *
+ * <p> <strong> Example usage</strong> :
+ * <pre>
+ *         {@code
+ *         StringDictionary authors = new StringDictionary();
+ *         int id = authors.add("Reilly,L.P.");
+ *         String author = authors.get(id);
+ *         }
+ *         </pre>
+ */
+public final class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Returns the id of a string, adding the string if it is not in the dictionary yet.
+     *
+     * @param string The string to intern.
+     * @return the id of the string.
+     */
+    public int add(String string) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = strings.size();
+            ids.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of a string without adding it.
+     *
+     * @param string The string to look up.
+     * @return the id of the string, or -1 if it is not in the dictionary.
+     */
+    public int find(String string) {
+        Integer id = ids.get(string);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return strings.get(id);
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Returns all strings, the index of a string in the list is its id.
+     *
+     * @return an unmodifiable view of the strings.
+     */
+    public List<String> strings() {
+        return Collections.unmodifiableList(strings);
+    }
+
+    /**
+     * Adds all strings of another dictionary and returns how its ids map to the ids of this dictionary.
+     *
+     * @param other The dictionary to add.
+     * @return an array with the id in this dictionary for every id of the other dictionary.
+     */
+    public int[] addAll(StringDictionary other) {
+        int[] mapping = new int[other.size()];
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = add(other.strings.get(i));
+        }
+        return mapping;
+    }
+}
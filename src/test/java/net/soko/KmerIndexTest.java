@@ -0,0 +1,65 @@
+package net.soko;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Tests of {@link KmerIndex} on stores that end on the boundary of a page of packed bases.
+ *
+ * @see SequenceStore
+ */
+class KmerIndexTest {
+    /**
+     * Number of bases that fill the first page of a {@link SequenceStore} exactly, four bases to a byte.
+     */
+    private static final int FIRST_PAGE_BASES = 4096 * 4;
+
+    @Test
+    void motifReachingPastTheLastPageIsNotFound() {
+        String bases = random(FIRST_PAGE_BASES);
+        KmerIndex index = new KmerIndex(store(bases));
+        String tail = bases.substring(bases.length() - 18).toUpperCase();
+        assertArrayEquals(new long[0], index.find(KmerIndex.Motif.parse(tail + "NNNNNNNNNNNN")));
+        assertArrayEquals(new long[0], index.scan(KmerIndex.Motif.parse(tail + "NNNNNNNNNNNN")));
+    }
+
+    @Test
+    void motifEndingOnTheLastBaseIsFound() {
+        String bases = random(FIRST_PAGE_BASES);
+        KmerIndex index = new KmerIndex(store(bases));
+        String tail = bases.substring(bases.length() - 18).toUpperCase();
+        long[] expected = occurrences(bases, tail);
+        assertArrayEquals(expected, index.find(KmerIndex.Motif.parse(tail)));
+        assertArrayEquals(expected, index.scan(KmerIndex.Motif.parse(tail)));
+    }
+
+    private static SequenceStore store(String bases) {
+        SequenceStore store = new SequenceStore();
+        GenbankEntry entry = new GenbankEntry();
+        entry.setLocus("PAGE");
+        byte[] letters = bases.getBytes(StandardCharsets.US_ASCII);
+        store.onSequence(entry, letters, letters.length);
+        return store;
+    }
+
+    private static String random(int length) {
+        Random random = new Random(42);
+        StringBuilder bases = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            bases.append("acgt".charAt(random.nextInt(4)));
+        }
+        return bases.toString();
+    }
+
+    private static long[] occurrences(String bases, String motif) {
+        LongList found = new LongList();
+        for (int start = bases.indexOf(motif.toLowerCase()); start >= 0; start = bases.indexOf(motif.toLowerCase(), start + 1)) {
+            found.add(start);
+        }
+        return found.toArray();
+    }
+}